@@ -0,0 +1,94 @@
+package com.example.TTECHT.service.impl;
+
+import com.example.TTECHT.service.stub.StandInImageService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Serves the {@link StandInImageService} used by the image-service-stub profile from an in-process
+ * HTTP server, at the paths of the image service endpoints used by the watermark pipeline
+ * ({@code /embed}, {@code /extract}, {@code /detect}, {@code /detect/batch} and {@code /upload}).
+ *
+ * Every call waits for the configured latency. Uploaded images were never embedded by the stand-in,
+ * so detection never matches and the matching loop always runs through every candidate.
+ */
+class ImageServiceStub implements AutoCloseable {
+
+    static final String BASE_PATH = "/api/images";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StandInImageService standInImageService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    ImageServiceStub(long latencyMs, int threads) throws IOException {
+        this.standInImageService = new StandInImageService(
+                new MockEnvironment().withProperty("image-service-stub.latency-ms", String.valueOf(latencyMs)),
+                objectMapper);
+        // Without TCP_NODELAY delayed ACKs add ~40 ms to every call and hide the configured latency
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext(BASE_PATH + "/extract", handler("extract", standInImageService::extract));
+        server.createContext(BASE_PATH + "/embed", handler("embed", standInImageService::embed));
+        server.createContext(BASE_PATH + "/detect/batch", handler("detect-batch", standInImageService::detectBatch));
+        server.createContext(BASE_PATH + "/detect", handler("detect", standInImageService::detect));
+        server.createContext(BASE_PATH + "/upload", handler("upload", standInImageService::upload));
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + BASE_PATH;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private HttpHandler handler(String endpoint, Function<JsonNode, ObjectNode> responder) {
+        return exchange -> {
+            try (exchange) {
+                JsonNode request;
+                try (InputStream in = exchange.getRequestBody()) {
+                    request = objectMapper.readTree(in);
+                }
+                TimeUnit.MILLISECONDS.sleep(standInImageService.nextLatencyMs(endpoint));
+                if (standInImageService.shouldFail(endpoint)) {
+                    respond(exchange, 503, objectMapper.writeValueAsBytes(standInImageService.failure(endpoint)));
+                } else {
+                    respond(exchange, 200, objectMapper.writeValueAsBytes(responder.apply(request)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                respond(exchange, 500, e.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.TTECHT.service.impl;
+
+import com.example.TTECHT.entity.Product;
+import com.example.TTECHT.entity.ProductImage;
+import com.example.TTECHT.entity.WatermarkMetadata;
+import com.example.TTECHT.entity.watermark.Watermark;
+import com.example.TTECHT.repository.ProductColorRepository;
+import com.example.TTECHT.repository.ProductImageJobRepository;
+import com.example.TTECHT.repository.ProductImageRepository;
+import com.example.TTECHT.repository.ProductRepository;
+import com.example.TTECHT.repository.ProductSizeRepository;
+import com.example.TTECHT.repository.WatermarkMetadataRepository;
+import com.example.TTECHT.repository.user.SellerRepository;
+import com.example.TTECHT.repository.user.UserRepository;
+import com.example.TTECHT.repository.watermark.WatermarkDetectionHistoryRepository;
+import com.example.TTECHT.repository.watermark.WatermarkRepository;
+import com.example.TTECHT.service.CategoryService;
+import com.example.TTECHT.service.blob.ContentBlobStore;
+import com.example.TTECHT.service.external.WatermarkService;
+import com.example.TTECHT.service.cache.ProductDetailCache;
+import com.example.TTECHT.service.cluster.NodeIdentity;
+import com.example.TTECHT.service.search.ProductSearchIndex;
+import com.example.TTECHT.service.watermark.DebugCapture;
+import com.example.TTECHT.service.watermark.PerceptualHashIndex;
+import com.example.TTECHT.service.watermark.StoreFairScheduler;
+import com.example.TTECHT.service.watermark.WatermarkCandidateSnapshot;
+import com.example.TTECHT.service.watermark.WatermarkDetectionCache;
+import com.example.TTECHT.service.watermark.WatermarkDetectionResult;
+import com.example.TTECHT.service.watermark.WatermarkImageCache;
+import com.example.TTECHT.service.watermark.WatermarkMetadataMatcher;
+import com.example.TTECHT.service.watermark.WatermarkMetadataRegistry;
+import com.example.TTECHT.service.watermark.WatermarkRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmarks the watermark matching loop of {@link ProductServiceImpl} against {@link ImageServiceStub}.
+ *
+ * Repositories are mocked; the catalog is {@code candidates} stored images of other products, each
+ * with its own metadata, and {@code watermarks} store watermarks. Detection never matches, so every
+ * candidate is extracted and verified before the upload is embedded - the worst case per upload.
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec -Djmh.args="WatermarkMatchingBenchmark -p candidates=10,1000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class WatermarkMatchingBenchmark {
+
+    private static final String STORE_NAME = "benchmark-store";
+
+    @Param({"10", "1000", "10000"})
+    public int candidates;
+
+    @Param({"10"})
+    public int watermarks;
+
+    @Param({"0", "2"})
+    public long latencyMs;
+
+    @Param({"8"})
+    public int concurrency;
+
+    // 0 measures uncached detection; a positive size shows repeat uploads of the same image
+    @Param({"0"})
+    public int detectCacheEntries;
+
+    private ImageServiceStub stub;
+    private CloseableHttpClient httpClient;
+    private ThreadPoolTaskExecutor executor;
+    private ProductServiceImpl productService;
+    private Product product;
+    private List<String> images;
+    private String extractedWatermark;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stub = new ImageServiceStub(latencyMs, 64);
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(64)
+                        .setMaxConnPerRoute(64)
+                        .build())
+                .build();
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        DebugCapture debugCapture = new DebugCapture(new ObjectMapper(), new SimpleMeterRegistry());
+        WatermarkService watermarkService = new WatermarkService(restTemplate, restTemplate, debugCapture);
+        ReflectionTestUtils.setField(watermarkService, "watermarkServiceUrl", stub.baseUrl());
+        ReflectionTestUtils.setField(watermarkService, "imageServiceUrl", stub.baseUrl());
+        ReflectionTestUtils.setField(watermarkService, "uploadServiceUrl", stub.baseUrl());
+        ReflectionTestUtils.setField(watermarkService, "detectBatchSize", 50);
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(16);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(256);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        WatermarkMetadataMatcher matcher = new WatermarkMetadataMatcher(watermarkService, executor);
+        ReflectionTestUtils.setField(matcher, "concurrency", concurrency);
+        ReflectionTestUtils.setField(matcher, "timeoutMs", TimeUnit.MINUTES.toMillis(10));
+
+        String watermarkImage = randomBase64(2048, 1);
+        WatermarkRepository watermarkRepository = mock(WatermarkRepository.class);
+        List<Watermark> storeWatermarks = new ArrayList<>();
+        for (long id = 1; id <= watermarks; id++) {
+            storeWatermarks.add(new Watermark(id, id == 1 ? STORE_NAME : "store-" + id, watermarkImage));
+        }
+        when(watermarkRepository.findAll()).thenReturn(storeWatermarks);
+        WatermarkDetectionCache detectionCache = new WatermarkDetectionCache(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(detectionCache, "maxEntries", detectCacheEntries);
+        WatermarkRegistry watermarkRegistry = new WatermarkRegistry(watermarkRepository, new WatermarkImageCache(),
+                detectionCache, mock(RedisTemplate.class), new NodeIdentity());
+        watermarkRegistry.load();
+
+        // Catalog: one image per product, each with its own metadata and no perceptual hash
+        ProductImageRepository productImageRepository = mock(ProductImageRepository.class);
+        List<Object[]> catalog = LongStream.rangeClosed(1, candidates)
+                .mapToObj(id -> new Object[]{id, id, id, null})
+                .toList();
+        when(productImageRepository.findCandidateRows()).thenReturn(catalog);
+        when(productImageRepository.findPerceptualHashes()).thenReturn(List.of());
+        when(productImageRepository.findFirstByContentHash(anyString())).thenReturn(Optional.empty());
+        when(productImageRepository.save(any(ProductImage.class))).thenAnswer(invocation -> {
+            ProductImage saved = invocation.getArgument(0);
+            saved.setImageId(-1L); // Replaces the same snapshot entry every time
+            return saved;
+        });
+        PerceptualHashIndex perceptualHashIndex = new PerceptualHashIndex(productImageRepository);
+        perceptualHashIndex.rebuild();
+        WatermarkCandidateSnapshot candidateSnapshot = new WatermarkCandidateSnapshot(productImageRepository, perceptualHashIndex,
+                mock(RedisTemplate.class), new NodeIdentity());
+        candidateSnapshot.load();
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        WatermarkMetadataRepository watermarkMetadataRepository = mock(WatermarkMetadataRepository.class);
+        when(watermarkMetadataRepository.findAllById(any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .map(id -> WatermarkMetadata.builder()
+                            .metadataId(id)
+                            .metadataHash(Long.toString(id))
+                            .jsonImage(objectMapper.createObjectNode().put("unique_id", id).put("alpha", 0.6))
+                            .build())
+                    .toList();
+        });
+        when(watermarkMetadataRepository.findByMetadataHash(anyString())).thenReturn(Optional.of(
+                WatermarkMetadata.builder().metadataId(-1L).metadataHash("benchmark").build()));
+        WatermarkMetadataRegistry metadataRegistry = new WatermarkMetadataRegistry(watermarkMetadataRepository,
+                mock(JdbcTemplate.class), mock(PlatformTransactionManager.class));
+
+        productService = new ProductServiceImpl(
+                mock(ProductRepository.class),
+                mock(ProductColorRepository.class),
+                mock(ProductSizeRepository.class),
+                productImageRepository,
+                watermarkRegistry,
+                mock(WatermarkDetectionHistoryRepository.class),
+                mock(CategoryService.class),
+                mock(UserRepository.class),
+                watermarkService,
+                mock(SellerRepository.class),
+                matcher,
+                debugCapture,
+                mock(ContentBlobStore.class),
+                metadataRegistry,
+                candidateSnapshot,
+                mock(StoreFairScheduler.class),
+                detectionCache,
+                mock(ProductImageJobRepository.class),
+                mock(ApplicationEventPublisher.class),
+                mock(ProductDetailCache.class),
+                mock(ProductSearchIndex.class),
+                mock(PlatformTransactionManager.class),
+                new NodeIdentity());
+
+        product = new Product();
+        product.setProductId(0L);
+        images = List.of(randomBase64(64 * 1024, 2));
+        extractedWatermark = randomBase64(2048, 3);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        httpClient.close();
+        stub.close();
+    }
+
+    /**
+     * One uploaded image through match, verify, embed, upload and save
+     */
+    @Benchmark
+    public void processProductImages() {
+        productService.processProductImages(product, images, STORE_NAME);
+    }
+
+    /**
+     * One extracted watermark verified against every store watermark
+     */
+    @Benchmark
+    public WatermarkDetectionResult checkWatermarkInDatabase() {
+        return productService.checkWatermarkInDatabase(extractedWatermark);
+    }
+
+    private static String randomBase64(int bytes, long seed) {
+        byte[] data = new byte[bytes];
+        new Random(seed).nextBytes(data);
+        return Base64.getEncoder().encodeToString(data);
+    }
+}
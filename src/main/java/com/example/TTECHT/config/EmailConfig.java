@@ -1,16 +1,9 @@
 package com.example.TTECHT.config;
 
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
 
 @Configuration
 public class EmailConfig {
-    @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
-    }
-    
 //    @Bean
 //    public JavaMailSender javaMailSender() {
 //        return new JavaMailSenderImpl();
@@ -0,0 +1,121 @@
+package com.example.TTECHT.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outbound HTTP clients, one per remote service.
+ *
+ * Every destination gets its own connection pool, which doubles as its bulkhead: a caller waits at
+ * most {@code acquire-timeout-ms} for a free connection and then fails, so a slow image service
+ * cannot hold up uploads or mail. The templates are built from Boot's RestTemplateBuilder so each
+ * call is recorded in the {@code http.client.requests} timer, and the pool usage is published as
+ * {@code httpcomponents.httpclient.pool.*} gauges tagged with the client name.
+ *
+ * Settings are read from {@code http.client.<name>.*}:
+ * max-connections, connect-timeout-ms, read-timeout-ms and acquire-timeout-ms.
+ */
+@Configuration
+@Slf4j
+public class HttpClientConfig {
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final List<CloseableHttpClient> clients = new ArrayList<>();
+
+    public HttpClientConfig(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Client for the image service (/extract, /embed, /detect and watermarking)
+     */
+    @Bean(name = "imageServiceRestTemplate")
+    public RestTemplate imageServiceRestTemplate(RestTemplateBuilder builder) {
+        return pooledRestTemplate(builder, "image-service", 32, 120000);
+    }
+
+    /**
+     * Client for the upload service (Cloudinary uploads)
+     */
+    @Bean(name = "uploadServiceRestTemplate")
+    public RestTemplate uploadServiceRestTemplate(RestTemplateBuilder builder) {
+        return pooledRestTemplate(builder, "upload-service", 16, 60000);
+    }
+
+    /**
+     * Client for the Mailgun API
+     */
+    @Bean(name = "mailgunRestTemplate")
+    public RestTemplate mailgunRestTemplate(RestTemplateBuilder builder) {
+        return pooledRestTemplate(builder, "mailgun", 4, 15000);
+    }
+
+    private RestTemplate pooledRestTemplate(RestTemplateBuilder builder, String name,
+                                            int defaultMaxConnections, long defaultReadTimeoutMs) {
+        String prefix = "http.client." + name;
+        int maxConnections = environment.getProperty(prefix + ".max-connections", Integer.class, defaultMaxConnections);
+        long connectTimeoutMs = environment.getProperty(prefix + ".connect-timeout-ms", Long.class, 5000L);
+        long readTimeoutMs = environment.getProperty(prefix + ".read-timeout-ms", Long.class, defaultReadTimeoutMs);
+        long acquireTimeoutMs = environment.getProperty(prefix + ".acquire-timeout-ms", Long.class, 10000L);
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(acquireTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                .build();
+        clients.add(httpClient);
+
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+        log.info("HTTP client {}: max {} connections, connect timeout {} ms, read timeout {} ms",
+                name, maxConnections, connectTimeoutMs, readTimeoutMs);
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        return builder.requestFactory(() -> requestFactory).build();
+    }
+
+    @PreDestroy
+    public void closeClients() {
+        for (CloseableHttpClient client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                log.warn("Failed to close HTTP client: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.TTECHT.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ImageIngestionConfig {
+
+    @Value("${product.image-ingestion.pool-size:4}")
+    private int poolSize;
+
+    @Value("${product.image-ingestion.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${product.import.pool-size:2}")
+    private int importPoolSize;
+
+    @Value("${product.import.queue-capacity:10}")
+    private int importQueueCapacity;
+
+    /**
+     * Worker pool that runs uploaded product images through the watermark pipeline.
+     * Work is handed over by the StoreFairScheduler, which never runs more than pool-size tasks at
+     * once and applies queue-capacity itself.
+     */
+    @Bean(name = "imageIngestionExecutor")
+    public ThreadPoolTaskExecutor imageIngestionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("img-ingest-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Runs bulk product imports; an import beyond queue-capacity is rejected with 429
+     */
+    @Bean(name = "productImportExecutor")
+    public ThreadPoolTaskExecutor productImportExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(importPoolSize);
+        executor.setMaxPoolSize(importPoolSize);
+        executor.setQueueCapacity(importQueueCapacity);
+        executor.setThreadNamePrefix("product-import-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.TTECHT.config;
+
+import com.example.TTECHT.exception.TooManyRequestsException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ProductExportConfig {
+
+    @Value("${product.export.pool-size:2}")
+    private int poolSize;
+
+    @Value("${product.export.queue-capacity:4}")
+    private int queueCapacity;
+
+    /**
+     * Runs the streamed catalog exports of GET /api/products/all, apart from the default MVC async
+     * pool; an export beyond queue-capacity is rejected with 429
+     */
+    @Bean(name = "productExportExecutor")
+    public ThreadPoolTaskExecutor productExportExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("product-export-");
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            throw new TooManyRequestsException("Too many product exports are running, please try again later", 60L);
+        });
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
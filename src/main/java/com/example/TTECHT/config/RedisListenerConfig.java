@@ -0,0 +1,33 @@
+package com.example.TTECHT.config;
+
+import com.example.TTECHT.service.cache.ProductDetailCache;
+import com.example.TTECHT.service.search.ProductSearchIndex;
+import com.example.TTECHT.service.watermark.WatermarkCandidateSnapshot;
+import com.example.TTECHT.service.watermark.WatermarkRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+public class RedisListenerConfig {
+
+    /**
+     * Single subscription for every in-memory copy that follows the changes made on other nodes
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       ProductDetailCache productDetailCache,
+                                                                       ProductSearchIndex productSearchIndex,
+                                                                       WatermarkRegistry watermarkRegistry,
+                                                                       WatermarkCandidateSnapshot watermarkCandidateSnapshot) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(productDetailCache, new ChannelTopic(ProductDetailCache.CHANNEL));
+        container.addMessageListener(productSearchIndex, new ChannelTopic(ProductSearchIndex.CHANNEL));
+        container.addMessageListener(watermarkRegistry, new ChannelTopic(WatermarkRegistry.CHANNEL));
+        container.addMessageListener(watermarkCandidateSnapshot, new ChannelTopic(WatermarkCandidateSnapshot.CHANNEL));
+        return container;
+    }
+}
@@ -57,6 +57,7 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.PUT, "/api/products/**", "/api/categories/**").authenticated()
                 .requestMatchers(HttpMethod.PATCH, "/api/products/**").authenticated()
                 .requestMatchers(HttpMethod.DELETE, "/api/products/**", "/api/categories/**").authenticated()
+                .requestMatchers("/actuator/metrics", "/actuator/metrics/**").hasRole("ADMIN")
                 .anyRequest().authenticated());
         httpSecurity.oauth2ResourceServer(oauth2 -> oauth2.jwt(jwtConfigurer -> jwtConfigurer
                         .decoder(customJwtDecoder)
@@ -0,0 +1,29 @@
+package com.example.TTECHT.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.web.SecurityFilterChain;
+
+@Configuration
+@Profile("image-service-stub")
+public class StandInImageServiceConfig {
+
+    /**
+     * The stand-in endpoints are called by this application's own service clients without a token
+     */
+    @Bean
+    @Order(0)
+    public SecurityFilterChain standInImageServiceFilterChain(HttpSecurity httpSecurity,
+                                                              @Value("${image-service-stub.path:/stub/images}") String path) throws Exception {
+        return httpSecurity
+                .securityMatcher(path + "/**")
+                .csrf(AbstractHttpConfigurer::disable)
+                .authorizeHttpRequests(request -> request.anyRequest().permitAll())
+                .build();
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.TTECHT.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class WatermarkMatchingConfig {
+
+    @Value("${watermark.matching.pool-size:16}")
+    private int poolSize;
+
+    @Value("${watermark.matching.queue-capacity:256}")
+    private int queueCapacity;
+
+    /**
+     * Shared pool for the /extract calls fanned out while matching uploaded images.
+     * When the queue is full the caller runs the call itself, which throttles new uploads.
+     */
+    @Bean(name = "watermarkMatchingExecutor")
+    public ThreadPoolTaskExecutor watermarkMatchingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("wm-match-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
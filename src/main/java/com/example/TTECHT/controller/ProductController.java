@@ -2,20 +2,49 @@ package com.example.TTECHT.controller;
 
 import com.example.TTECHT.dto.ProductCreateDTO;
 import com.example.TTECHT.dto.ProductDTO;
+import com.example.TTECHT.dto.repsonse.CursorPageResponse;
+import com.example.TTECHT.dto.repsonse.ProductImageJobResponse;
+import com.example.TTECHT.dto.repsonse.ProductImportErrorResponse;
+import com.example.TTECHT.dto.repsonse.ProductImportResponse;
+import com.example.TTECHT.service.ProductImageIngestionService;
+import com.example.TTECHT.service.ProductImportService;
 import com.example.TTECHT.service.ProductService;
 import com.example.TTECHT.service.external.WatermarkService;
+import com.example.TTECHT.service.search.ProductListingCursor;
+import com.example.TTECHT.service.search.ProductSearchIndex;
+import com.example.TTECHT.service.watermark.ImagePayload;
+import com.example.TTECHT.service.watermark.ImageUploadSpooler;
 import com.example.TTECHT.dto.watermark.WatermarkResponseDTO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
@@ -34,11 +63,21 @@ import java.util.Map;
 @RestController
 @RequestMapping("/api/products")
 @RequiredArgsConstructor
+@Slf4j
 @CrossOrigin(origins = "*") // Configure as needed for your frontend
 public class ProductController {
 
     private final ProductService productService;
     private final WatermarkService watermarkService;
+    private final ProductImageIngestionService productImageIngestionService;
+    private final ImageUploadSpooler imageUploadSpooler;
+    private final ProductImportService productImportService;
+    private final ObjectMapper objectMapper;
+    // Resolved by name, see ProductExportConfig
+    private final ThreadPoolTaskExecutor productExportExecutor;
+
+    @Value("${product.export.timeout-ms:1800000}")
+    private long exportTimeoutMs;
 
     /**
      * 1. GET /api/products - Get all products with pagination
@@ -72,7 +111,7 @@ public class ProductController {
     /**
      * 3. POST /api/products - Create new product
      */
-    @PostMapping
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
     @PreAuthorize("hasRole('SELLER') or hasRole('ADMIN')")
     public ResponseEntity<ProductDTO> createProduct(
             @Valid @RequestBody ProductCreateDTO productCreateDTO,
@@ -122,11 +161,25 @@ public class ProductController {
     }
 
     /**
-     * 7. GET /api/products/search - Search products by name
+     * 7. GET /api/products/search - Search products by name, brand, store, category and description
+     * (/api/products/search?name=ao thun&categoryId=1&storeName=abc&minPrice=10&maxPrice=20&sort=recent&limit=50)
+     * Every word must match the start of a word in the product; sort is sold (default) or recent.
+     * While the search index is still loading after a start, words are matched against the name, brand
+     * and description only, and accents must be typed as they are stored ("ao" does not find "Áo")
      */
     @GetMapping("/search")
-    public ResponseEntity<List<ProductDTO>> searchProductsByName(@RequestParam String name) {
-        List<ProductDTO> products = productService.searchProductsByName(name);
+    public ResponseEntity<List<ProductDTO>> searchProductsByName(
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) String storeName,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "sold") String sort,
+            @RequestParam(defaultValue = "100") int limit) {
+        ProductSearchIndex.SortOrder sortOrder = "recent".equalsIgnoreCase(sort)
+                ? ProductSearchIndex.SortOrder.RECENT : ProductSearchIndex.SortOrder.SOLD;
+        List<ProductDTO> products = productService.searchCatalog(name, categoryId, storeName, minPrice, maxPrice,
+                sortOrder, Math.max(1, Math.min(limit, 500)));
         return ResponseEntity.ok(products);
     }
 
@@ -199,14 +252,91 @@ public class ProductController {
     }
     
     /**
-     * 14. GET /api/products/all - Get all products without pagination
+     * 14. GET /api/products/all - Get all products without pagination, streamed as a JSON array
+     * Send Accept: application/x-ndjson to get one product per line instead. Products are read and
+     * written in chunks, so memory use does not depend on the size of the catalog. Exports run on their
+     * own bounded pool with their own timeout; a failure once streaming has started aborts the connection
      */
     @GetMapping("/all")
-    public ResponseEntity<List<ProductDTO>> getAllProductsWithoutPagination() {
-        List<ProductDTO> allProducts = productService.getAllProductsWithoutPagination();
-        return ResponseEntity.ok(allProducts);
+    public WebAsyncTask<Void> getAllProductsWithoutPagination(HttpServletResponse response) {
+        // Flush once per chunk rather than after every product
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return exportTask(response, MediaType.APPLICATION_JSON, out -> {
+            // Never complete the array or close the servlet stream on close, so a failed export stays truncated
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                generator.writeStartArray();
+                productService.exportAllProducts(chunk -> {
+                    try {
+                        for (ProductDTO product : chunk) {
+                            writer.writeValue(generator, product);
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        });
     }
-    
+
+    @GetMapping(value = "/all", produces = "application/x-ndjson")
+    public WebAsyncTask<Void> exportAllProductsNdjson(HttpServletResponse response) {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        return exportTask(response, MediaType.parseMediaType("application/x-ndjson"), out ->
+                productService.exportAllProducts(chunk -> {
+                    try {
+                        for (ProductDTO product : chunk) {
+                            out.write(writer.writeValueAsBytes(product));
+                            out.write('\n');
+                        }
+                        out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+    }
+
+    /**
+     * Run an export on the export pool, writing straight to the response. A failure is logged and
+     * rethrown; as the response is already committed the container then aborts the connection, so
+     * the client never mistakes a partial export for a complete one.
+     */
+    private WebAsyncTask<Void> exportTask(HttpServletResponse response, MediaType contentType, StreamingResponseBody body) {
+        WebAsyncTask<Void> task = new WebAsyncTask<>(exportTimeoutMs, productExportExecutor, () -> {
+            response.setContentType(contentType.toString());
+            try {
+                OutputStream exportStream = new FilterOutputStream(response.getOutputStream()) {
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        out.write(bytes, offset, length);
+                    }
+
+                    // Both exports flush once per chunk; stop there once a timeout has cancelled the task
+                    @Override
+                    public void flush() throws IOException {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Product export was cancelled");
+                        }
+                        super.flush();
+                    }
+                };
+                body.writeTo(exportStream);
+                exportStream.flush();
+            } catch (Exception e) {
+                log.error("Product export failed, aborting the response: {}", e.getMessage(), e);
+                throw e;
+            }
+            return null;
+        });
+        task.onTimeout(() -> {
+            throw new IllegalStateException("Product export did not finish within " + exportTimeoutMs + " ms");
+        });
+        return task;
+    }
+
     /**
      * 15. GET /api/products/user/{userId} - Get products by user/seller ID
      */
@@ -216,6 +346,117 @@ public class ProductController {
         return ResponseEntity.ok(userProducts);
     }
     
+    /**
+     * 16. GET /api/products/{id}/image-jobs - Get watermark processing progress of the product images
+     */
+    @GetMapping("/{id}/image-jobs")
+    public ResponseEntity<List<ProductImageJobResponse>> getProductImageJobs(@PathVariable Long id) {
+        List<ProductImageJobResponse> jobs = productImageIngestionService.getImageJobs(id);
+        return ResponseEntity.ok(jobs);
+    }
+    
+    /**
+     * 17. POST /api/products (multipart/form-data) - Create new product with uploaded image files
+     * The "product" part holds the product JSON and the "images" parts the image files (max 4),
+     * which are streamed to the watermark pipeline instead of being sent as base64 strings
+     */
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('SELLER') or hasRole('ADMIN')")
+    public ResponseEntity<ProductDTO> createProductWithUploads(
+            @Valid @RequestPart("product") ProductCreateDTO productCreateDTO,
+            @RequestPart(value = "images", required = false) List<MultipartFile> images,
+            Authentication authentication) {
+        if (images != null && images.size() > 4) {
+            throw new RuntimeException("Maximum 4 images allowed per product");
+        }
+        List<ImagePayload> payloads = imageUploadSpooler.spool(images);
+        try {
+            ProductDTO createdProduct = productService.createProduct(productCreateDTO, payloads, authentication.getName());
+            return ResponseEntity.status(201).body(createdProduct);
+        } catch (RuntimeException e) {
+            payloads.forEach(ImagePayload::discard);
+            throw e;
+        }
+    }
+    
+    /**
+     * 18. POST /api/products/import - Bulk import products from NDJSON (one product JSON per line) or CSV
+     * The body is stored and imported in the background; poll the returned import for progress
+     */
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"})
+    @PreAuthorize("hasRole('SELLER') or hasRole('ADMIN')")
+    public ResponseEntity<ProductImportResponse> importProducts(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body,
+            Authentication authentication) {
+        String format = contentType.startsWith("text/csv")
+                ? ProductImportService.FORMAT_CSV : ProductImportService.FORMAT_NDJSON;
+        ProductImportResponse productImport = productImportService.startImport(body, format, authentication.getName());
+        return ResponseEntity.status(202).body(productImport);
+    }
+
+    /**
+     * 19. GET /api/products/import/{importId} - Get progress of a bulk import
+     */
+    @GetMapping("/import/{importId}")
+    @PreAuthorize("hasRole('SELLER') or hasRole('ADMIN')")
+    public ResponseEntity<ProductImportResponse> getProductImport(
+            @PathVariable Long importId,
+            Authentication authentication) {
+        return ResponseEntity.ok(productImportService.getImport(importId, authentication.getName()));
+    }
+
+    /**
+     * 20. GET /api/products/import/{importId}/errors - Get the rejected rows of a bulk import, by row number
+     */
+    @GetMapping("/import/{importId}/errors")
+    @PreAuthorize("hasRole('SELLER') or hasRole('ADMIN')")
+    public ResponseEntity<CursorPageResponse<ProductImportErrorResponse>> getProductImportErrors(
+            @PathVariable Long importId,
+            @RequestParam(required = false) Integer afterRow,
+            @RequestParam(defaultValue = "100") int limit,
+            Authentication authentication) {
+        return ResponseEntity.ok(productImportService.getImportErrors(importId, authentication.getName(),
+                afterRow, Math.max(1, Math.min(limit, 1000))));
+    }
+    
+    /**
+     * 21. GET /api/products/search/ranked - Full-text product search, best matches first
+     * Words match by prefix in the name, brand and description; the name also matches as a substring.
+     * Matches are only counted with includeTotal=true; otherwise totalElements only tells whether a next page exists
+     */
+    @GetMapping("/search/ranked")
+    public ResponseEntity<Page<ProductDTO>> searchProductsRanked(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) String storeName,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        Pageable pageable = PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, 100)));
+        return ResponseEntity.ok(productService.searchProducts(q, categoryId, storeName, pageable, includeTotal));
+    }
+
+    /**
+     * 22. GET /api/products/scroll - Product listing and filtered search one keyset page at a time
+     * (/api/products/scroll?sort=newest&limit=20&cursor=...&name=shirt&categoryId=1&storeName=shop&includeTotal=true)
+     * sort is newest (default), best_selling, price_asc or price_desc. Pass the returned nextCursor to get
+     * the next page; each page costs the same however deep it is. The total is only computed on request,
+     * and is the planner estimate when there are no filters
+     */
+    @GetMapping("/scroll")
+    public ResponseEntity<CursorPageResponse<ProductDTO>> scrollProducts(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) String storeName,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        return ResponseEntity.ok(productService.getProductsPage(name, categoryId, storeName,
+                ProductListingCursor.Order.fromParam(sort), cursor, Math.max(1, Math.min(limit, 100)), includeTotal));
+    }
+
     /**
      * Test endpoint for watermark service - For development/testing only
      */
@@ -1,17 +1,31 @@
 package com.example.TTECHT.controller;
 
+import com.example.TTECHT.dto.repsonse.CursorPageResponse;
+import com.example.TTECHT.dto.repsonse.WatermarkDetectionHistorySummaryResponse;
 import com.example.TTECHT.entity.watermark.WatermarkDetectionHistory;
 import com.example.TTECHT.repository.watermark.WatermarkDetectionHistoryRepository;
+import com.example.TTECHT.service.blob.ContentBlobStore;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
 
 /**
  * Watermark Detection History Controller
@@ -26,6 +40,9 @@ import java.util.List;
 public class WatermarkDetectionHistoryController {
 
     private final WatermarkDetectionHistoryRepository watermarkDetectionHistoryRepository;
+    private final ContentBlobStore contentBlobStore;
+
+    private static final int MAX_SUMMARY_PAGE_SIZE = 100;
 
     /**
      * GET /api/watermark-history - Get all watermark detection history
@@ -62,6 +79,60 @@ public class WatermarkDetectionHistoryController {
         }
     }
     
+    /**
+     * GET /api/watermark-history/summaries - Get detection history newest first, one keyset page at a time
+     * (/api/watermark-history/summaries?limit=20&cursor=...&productId=1 or &storeName=shop)
+     * Pass the returned nextCursor to get the next page; each page costs the same however much history exists
+     */
+    @GetMapping("/summaries")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CursorPageResponse<WatermarkDetectionHistorySummaryResponse>> getWatermarkDetectionHistorySummaries(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) String storeName) {
+        if (productId != null && storeName != null) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_SUMMARY_PAGE_SIZE));
+        // One extra row tells whether another page exists
+        Limit fetchLimit = Limit.of(pageSize + 1);
+
+        List<WatermarkDetectionHistorySummaryResponse> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = productId != null ? watermarkDetectionHistoryRepository.findSummariesByProductId(productId, fetchLimit)
+                : storeName != null ? watermarkDetectionHistoryRepository.findSummariesByStoreName(storeName, fetchLimit)
+                : watermarkDetectionHistoryRepository.findSummaries(fetchLimit);
+        } else {
+            LocalDateTime timestamp;
+            Long detectionId;
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                timestamp = LocalDateTime.parse(parts[0]);
+                detectionId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            rows = productId != null ? watermarkDetectionHistoryRepository.findSummariesByProductIdBefore(productId, timestamp, detectionId, fetchLimit)
+                : storeName != null ? watermarkDetectionHistoryRepository.findSummariesByStoreNameBefore(storeName, timestamp, detectionId, fetchLimit)
+                : watermarkDetectionHistoryRepository.findSummariesBefore(timestamp, detectionId, fetchLimit);
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<WatermarkDetectionHistorySummaryResponse> items = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            WatermarkDetectionHistorySummaryResponse last = items.get(items.size() - 1);
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (last.getDetectionTimestamp() + "|" + last.getDetectionId()).getBytes(StandardCharsets.UTF_8));
+        }
+        return ResponseEntity.ok(CursorPageResponse.<WatermarkDetectionHistorySummaryResponse>builder()
+            .items(items)
+            .nextCursor(nextCursor)
+            .hasMore(hasMore)
+            .build());
+    }
+    
     /**
      * GET /api/watermark-history/{id} - Get specific watermark detection history by ID
      */
@@ -130,17 +201,38 @@ public class WatermarkDetectionHistoryController {
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Void> deleteWatermarkDetectionHistory(@PathVariable Long id) {
         try {
-            if (watermarkDetectionHistoryRepository.existsById(id)) {
-                watermarkDetectionHistoryRepository.deleteById(id);
-                return ResponseEntity.ok().build();
-            } else {
-                return ResponseEntity.notFound().build();
-            }
+            return watermarkDetectionHistoryRepository.findById(id)
+                .map(history -> {
+                    watermarkDetectionHistoryRepository.delete(history);
+                    // Blobs are shared between rows, only drop the ones nothing references anymore
+                    Stream.of(history.getDetectedImageHash(), history.getWatermarkHash(), history.getExtractedWatermarkHash())
+                        .filter(Objects::nonNull)
+                        .distinct()
+                        .forEach(hash -> contentBlobStore.deleteIfUnreferenced(hash,
+                            watermarkDetectionHistoryRepository::existsByBlobHash));
+                    return ResponseEntity.ok().<Void>build();
+                })
+                .orElse(ResponseEntity.notFound().build());
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
     }
     
+    /**
+     * GET /api/watermark-history/blobs/{hash} - Download an image referenced by a detection history record
+     */
+    @GetMapping("/blobs/{hash}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Resource> getWatermarkDetectionHistoryBlob(@PathVariable String hash) {
+        return contentBlobStore.find(hash)
+            .map(file -> ResponseEntity.ok()
+                .contentType(MediaType.TEXT_PLAIN)
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable())
+                .eTag(hash)
+                .<Resource>body(new FileSystemResource(file)))
+            .orElse(ResponseEntity.notFound().build());
+    }
+    
     /**
      * GET /api/watermark-history/count - Get total count of watermark detection records
      */
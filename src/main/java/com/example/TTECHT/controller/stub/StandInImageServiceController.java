@@ -0,0 +1,68 @@
+package com.example.TTECHT.controller.stub;
+
+import com.example.TTECHT.service.stub.StandInImageService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Image service and upload endpoints served by {@link StandInImageService} under the
+ * image-service-stub profile. Injected latency is waited out asynchronously, so slow calls do not
+ * hold request threads.
+ */
+@RestController
+@RequestMapping(value = "${image-service-stub.path:/stub/images}", produces = MediaType.APPLICATION_JSON_VALUE)
+@Profile("image-service-stub")
+@RequiredArgsConstructor
+public class StandInImageServiceController {
+
+    private final StandInImageService standInImageService;
+
+    @PostMapping("/embed")
+    public CompletableFuture<ResponseEntity<ObjectNode>> embed(@RequestBody JsonNode request) {
+        return respond("embed", request, standInImageService::embed);
+    }
+
+    @PostMapping("/extract")
+    public CompletableFuture<ResponseEntity<ObjectNode>> extract(@RequestBody JsonNode request) {
+        return respond("extract", request, standInImageService::extract);
+    }
+
+    @PostMapping("/detect")
+    public CompletableFuture<ResponseEntity<ObjectNode>> detect(@RequestBody JsonNode request) {
+        return respond("detect", request, standInImageService::detect);
+    }
+
+    @PostMapping("/detect/batch")
+    public CompletableFuture<ResponseEntity<ObjectNode>> detectBatch(@RequestBody JsonNode request) {
+        return respond("detect-batch", request, standInImageService::detectBatch);
+    }
+
+    @PostMapping("/upload")
+    public CompletableFuture<ResponseEntity<ObjectNode>> upload(@RequestBody JsonNode request) {
+        return respond("upload", request, standInImageService::upload);
+    }
+
+    private CompletableFuture<ResponseEntity<ObjectNode>> respond(String endpoint, JsonNode request,
+                                                                  Function<JsonNode, ObjectNode> handler) {
+        long latencyMs = standInImageService.nextLatencyMs(endpoint);
+        return CompletableFuture.supplyAsync(() -> {
+            if (standInImageService.shouldFail(endpoint)) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(standInImageService.failure(endpoint));
+            }
+            return ResponseEntity.ok(handler.apply(request));
+        }, CompletableFuture.delayedExecutor(latencyMs, TimeUnit.MILLISECONDS));
+    }
+}
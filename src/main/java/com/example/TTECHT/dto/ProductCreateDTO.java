@@ -1,5 +1,6 @@
 package com.example.TTECHT.dto;
 
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
@@ -17,20 +18,26 @@ import java.util.List;
 @AllArgsConstructor
 public class ProductCreateDTO {
 
+    // Limits of the product, product_color and product_size columns, so a bad row is rejected before it reaches the database
+
     @NotNull(message = "StoreName is required")
+    @Size(max = 255, message = "StoreName must be at most 255 characters")
     private String storeName;
     
     @NotNull(message = "Category ID is required")
     private Long categoryId;
     
     @NotBlank(message = "Product name is required")
+    @Size(max = 255, message = "Product name must be at most 255 characters")
     private String name;
 
     @NotBlank(message = "Description is required")
+    @Size(max = 255, message = "Description must be at most 255 characters")
     private String description;
     
     @NotNull(message = "Price is required")
     @Positive(message = "Price must be positive")
+    @Digits(integer = 8, fraction = 2, message = "Price must have at most 8 digits before and 2 after the decimal point")
     private BigDecimal price;
     
     @NotNull(message = "Stock quantity is required")
@@ -38,11 +45,12 @@ public class ProductCreateDTO {
     private Integer stockQuantity;
     
     // Changed from single fields to arrays
-    private List<String> colors; // Can be null, e.g., ["Red", "Blue", "Green"]
+    private List<@Size(max = 255, message = "Colors must be at most 255 characters") String> colors; // Can be null, e.g., ["Red", "Blue", "Green"]
     
-    private List<String> sizes; // Can be null, e.g., ["S", "M", "L"] or ["L", "XL"]
+    private List<@Size(max = 255, message = "Sizes must be at most 255 characters") String> sizes; // Can be null, e.g., ["S", "M", "L"] or ["L", "XL"]
     
     @NotBlank(message = "Brand is required")
+    @Size(max = 255, message = "Brand must be at most 255 characters")
     private String brand;
     
     @Size(max = 4, message = "Maximum 4 images allowed")
@@ -0,0 +1,24 @@
+package com.example.TTECHT.dto.repsonse;
+
+import com.example.TTECHT.enumuration.ImageJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductImageJobResponse {
+    private Long jobId;
+    private Long productId;
+    private Integer imageIndex;
+    private ImageJobStatus status;
+    private String message;
+    private Long detectedWatermarkId;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
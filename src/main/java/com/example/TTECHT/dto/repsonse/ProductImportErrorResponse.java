@@ -0,0 +1,15 @@
+package com.example.TTECHT.dto.repsonse;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductImportErrorResponse {
+    private Integer rowNumber;
+    private String message;
+}
@@ -0,0 +1,26 @@
+package com.example.TTECHT.dto.repsonse;
+
+import com.example.TTECHT.enumuration.ProductImportStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductImportResponse {
+    private Long importId;
+    private String format;
+    private ProductImportStatus status;
+    private int processedRows;
+    private int importedRows;
+    private int failedRows;
+    private String message;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime completedAt;
+}
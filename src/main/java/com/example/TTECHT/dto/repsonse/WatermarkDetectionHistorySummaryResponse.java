@@ -0,0 +1,28 @@
+package com.example.TTECHT.dto.repsonse;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Detection history row without the detect response JSON, selected directly by the keyset queries
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WatermarkDetectionHistorySummaryResponse {
+    private Long detectionId;
+    private Long productId;
+    private String storeName;
+    private LocalDateTime detectionTimestamp;
+    private Long watermarkId;
+    private String detectionMessage;
+    private String detectStatus;
+    private String detectedImageHash;
+    private String watermarkHash;
+    private String extractedWatermarkHash;
+}
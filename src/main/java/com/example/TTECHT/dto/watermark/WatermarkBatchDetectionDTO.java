@@ -0,0 +1,44 @@
+package com.example.TTECHT.dto.watermark;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for batch watermark detection requests: one extracted watermark compared against many references
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WatermarkBatchDetectionDTO {
+
+    @JsonProperty("extracted_watermark")
+    private String extractedWatermark;
+
+    @JsonProperty("references")
+    private List<Reference> references;
+
+    @JsonProperty("pcc_threshold")
+    private Double pccThreshold = 0.20;
+
+    public WatermarkBatchDetectionDTO(String extractedWatermark, List<Reference> references) {
+        this.extractedWatermark = extractedWatermark;
+        this.references = references;
+        this.pccThreshold = 0.20;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Reference {
+
+        @JsonProperty("watermark_id")
+        private Long watermarkId;
+
+        @JsonProperty("original_watermark")
+        private String originalWatermark;
+    }
+}
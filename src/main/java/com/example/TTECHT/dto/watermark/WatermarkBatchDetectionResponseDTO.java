@@ -0,0 +1,41 @@
+package com.example.TTECHT.dto.watermark;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for batch watermark detection responses, one result per reference watermark
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WatermarkBatchDetectionResponseDTO {
+
+    private BatchData data;
+    private String message;
+    private boolean success;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchData {
+        private List<ReferenceResult> results;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReferenceResult {
+        @JsonProperty("watermark_id")
+        private Long watermarkId;
+        @JsonProperty("comparison_results")
+        private WatermarkDetectionResponseDTO.ComparisonResults comparisonResults;
+        @JsonProperty("detection_result")
+        private WatermarkDetectionResponseDTO.DetectionResult detectionResult;
+        private WatermarkDetectionResponseDTO.Metrics metrics;
+    }
+}
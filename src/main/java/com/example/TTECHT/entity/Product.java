@@ -11,7 +11,14 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "product")
+@Table(name = "product", indexes = {
+        @Index(name = "idx_product_created_at_id", columnList = "created_at, product_id"),
+        @Index(name = "idx_product_sold_quantity_id", columnList = "sold_quantity, product_id"),
+        @Index(name = "idx_product_price_id", columnList = "price, product_id"),
+        @Index(name = "idx_product_category_created_at_id", columnList = "category_id, created_at, product_id"),
+        @Index(name = "idx_product_category_sold_quantity_id", columnList = "category_id, sold_quantity, product_id"),
+        @Index(name = "idx_product_category_price_id", columnList = "category_id, price, product_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -1,15 +1,15 @@
 package com.example.TTECHT.entity;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.vladmihalcea.hibernate.type.json.JsonType;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.hibernate.annotations.Type;
 
 @Entity
-@Table(name = "product_image")
+@Table(name = "product_image", indexes = {
+        @Index(name = "idx_product_image_content_hash", columnList = "content_hash"),
+        @Index(name = "idx_product_image_metadata", columnList = "metadata_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -27,7 +27,16 @@ public class ProductImage {
     @Column(name = "url_image", nullable = false)
     private String urlImage;
 
-    @Type(JsonType.class)
-    @Column(name = "json_image", columnDefinition = "jsonb")
-    private JsonNode jsonImage;
+    // Embedding metadata, shared with the other images watermarked with the same parameters
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "metadata_id")
+    private WatermarkMetadata metadata;
+
+    // 64-bit difference hash of the published image, used to shortlist visually similar images
+    @Column(name = "perceptual_hash")
+    private Long perceptualHash;
+
+    // SHA-256 of the uploaded bytes and the store watermark they were embedded with, used to reuse processed uploads
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
 }
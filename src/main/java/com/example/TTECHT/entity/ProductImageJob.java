@@ -0,0 +1,67 @@
+package com.example.TTECHT.entity;
+
+import com.example.TTECHT.enumuration.ImageJobStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of one uploaded product image through the asynchronous watermark pipeline
+ */
+@Entity
+@Table(name = "product_image_job", indexes = {
+    @Index(name = "idx_product_image_job_product", columnList = "product_id"),
+    @Index(name = "idx_product_image_job_status", columnList = "status")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductImageJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "job_id")
+    private Long jobId;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "image_index", nullable = false)
+    private Integer imageIndex;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private ImageJobStatus status;
+
+    @Column(name = "message", length = 1000)
+    private String message;
+
+    @Column(name = "detected_watermark_id")
+    private Long detectedWatermarkId;
+
+    // Node whose worker pool runs the job; it keeps updated_at fresh while the job is queued or running
+    @Column(name = "owner_node", length = 36)
+    private String ownerNode;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.TTECHT.entity;
+
+import com.example.TTECHT.enumuration.ProductImportStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of one bulk product import (NDJSON or CSV)
+ */
+@Entity
+@Table(name = "product_import", indexes = {
+    @Index(name = "idx_product_import_seller", columnList = "seller_username"),
+    @Index(name = "idx_product_import_status", columnList = "status")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductImport {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "import_id")
+    private Long importId;
+
+    @Column(name = "seller_username", nullable = false)
+    private String sellerUsername;
+
+    @Column(name = "format", nullable = false, length = 16)
+    private String format;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private ProductImportStatus status;
+
+    @Column(name = "processed_rows", nullable = false)
+    private int processedRows;
+
+    @Column(name = "imported_rows", nullable = false)
+    private int importedRows;
+
+    @Column(name = "failed_rows", nullable = false)
+    private int failedRows;
+
+    @Column(name = "message", length = 1000)
+    private String message;
+
+    // Node that holds the spooled file; it keeps updated_at fresh while the import is queued or running
+    @Column(name = "owner_node", length = 36)
+    private String ownerNode;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.TTECHT.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A row of a bulk product import that could not be imported (or whose images were not queued)
+ */
+@Entity
+@Table(name = "product_import_error", indexes = {
+    @Index(name = "idx_product_import_error_import", columnList = "import_id, row_number")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductImportError {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "error_id")
+    private Long errorId;
+
+    @Column(name = "import_id", nullable = false)
+    private Long importId;
+
+    // 1-based line of the data row (the CSV header is not counted)
+    @Column(name = "row_number", nullable = false)
+    private Integer rowNumber;
+
+    @Column(name = "message", nullable = false, length = 1000)
+    private String message;
+}
@@ -0,0 +1,46 @@
+package com.example.TTECHT.entity;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.vladmihalcea.hibernate.type.json.JsonType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Type;
+
+import java.time.LocalDateTime;
+
+/**
+ * One distinct set of embedding metadata returned by the image service, shared by every product
+ * image that was watermarked with it
+ */
+@Entity
+@Table(name = "watermark_metadata")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WatermarkMetadata {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "metadata_id")
+    private Long metadataId;
+
+    // SHA-256 of the JSON with its object keys sorted, so equal metadata always gets the same hash
+    @Column(name = "metadata_hash", length = 64, nullable = false, unique = true)
+    private String metadataHash;
+
+    @Type(JsonType.class)
+    @Column(name = "json_image", columnDefinition = "jsonb", nullable = false)
+    private JsonNode jsonImage;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
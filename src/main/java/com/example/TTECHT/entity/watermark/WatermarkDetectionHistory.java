@@ -12,7 +12,14 @@ import org.hibernate.type.SqlTypes;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "watermark_detection_history")
+@Table(name = "watermark_detection_history", indexes = {
+   @Index(name = "idx_wdh_timestamp_id", columnList = "detection_timestamp, detection_id"),
+   @Index(name = "idx_wdh_product_timestamp_id", columnList = "product_id, detection_timestamp, detection_id"),
+   @Index(name = "idx_wdh_store_timestamp_id", columnList = "store_name, detection_timestamp, detection_id"),
+   @Index(name = "idx_wdh_detected_image_hash", columnList = "detected_image_hash"),
+   @Index(name = "idx_wdh_watermark_hash", columnList = "watermark_hash"),
+   @Index(name = "idx_wdh_extracted_watermark_hash", columnList = "extracted_watermark_hash")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -30,8 +37,9 @@ public class WatermarkDetectionHistory {
    @Column(name = "store_name", nullable = false)
    private String storeName;
 
-   @Column(name = "detected_image_base64", columnDefinition = "TEXT")
-   private String detectedImageBase64;
+   // Images are kept in the content blob store, the row only references them by hash
+   @Column(name = "detected_image_hash", length = 64)
+   private String detectedImageHash;
 
    @Column(name = "detection_timestamp", nullable = false)
    private LocalDateTime detectionTimestamp;
@@ -49,9 +57,9 @@ public class WatermarkDetectionHistory {
    @Column(name = "detect_status")
    private String detectStatus;
 
-   @Column(name = "watermark_base64", columnDefinition = "TEXT")
-   private String watermarkBase64;
+   @Column(name = "watermark_hash", length = 64)
+   private String watermarkHash;
 
-   @Column(name = "extracted_watermark_base64", columnDefinition = "TEXT")
-   private String extractedWatermarkBase64;
+   @Column(name = "extracted_watermark_hash", length = 64)
+   private String extractedWatermarkHash;
 }
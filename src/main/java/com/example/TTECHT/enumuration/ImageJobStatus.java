@@ -0,0 +1,9 @@
+package com.example.TTECHT.enumuration;
+
+public enum ImageJobStatus {
+    QUEUED,
+    PROCESSING,
+    COMPLETED,
+    WATERMARK_DETECTED,
+    FAILED
+}
@@ -0,0 +1,8 @@
+package com.example.TTECHT.enumuration;
+
+public enum ProductImportStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,14 @@
+package com.example.TTECHT.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when a product, its stock or its images change.
+ * Listeners run after the transaction commits, or right away when there is none.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductChangedEvent {
+    private final Long productId;
+}
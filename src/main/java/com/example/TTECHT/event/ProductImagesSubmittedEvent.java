@@ -0,0 +1,23 @@
+package com.example.TTECHT.event;
+
+import com.example.TTECHT.service.watermark.ImagePayload;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Published when a product is saved with images that still need to go through the watermark pipeline.
+ * Listeners run after the product transaction commits.
+ *
+ * jobIds holds the job created for each image, in the same order as images; only those jobs are
+ * processed, so a later upload for the same product never picks up these images.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductImagesSubmittedEvent {
+    private final Long productId;
+    private final String storeName;
+    private final List<ImagePayload> images;
+    private final List<Long> jobIds;
+}
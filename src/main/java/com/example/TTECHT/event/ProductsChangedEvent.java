@@ -0,0 +1,16 @@
+package com.example.TTECHT.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collection;
+
+/**
+ * Published when many products change at once, e.g. a bulk import or a category rename.
+ * Listeners run after the transaction commits, or right away when there is none.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductsChangedEvent {
+    private final Collection<Long> productIds;
+}
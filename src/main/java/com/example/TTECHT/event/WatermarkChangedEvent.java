@@ -0,0 +1,15 @@
+package com.example.TTECHT.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when a store watermark is created, updated or deleted.
+ * Listeners run after the watermark transaction commits.
+ */
+@Getter
+@AllArgsConstructor
+public class WatermarkChangedEvent {
+    private final Long watermarkId;
+    private final String storeName;
+}
@@ -0,0 +1,8 @@
+package com.example.TTECHT.exception;
+
+public class PayloadTooLargeException extends RuntimeException {
+
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -1,7 +1,18 @@
 package com.example.TTECHT.exception;
 
+import lombok.Getter;
+
+@Getter
 public class TooManyRequestsException extends RuntimeException{
+    // Seconds the client should wait before retrying, null when unknown
+    private final Long retryAfterSeconds;
+
     public  TooManyRequestsException(String message) {
+        this(message, null);
+    }
+
+    public TooManyRequestsException(String message, Long retryAfterSeconds) {
         super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
     }
 }
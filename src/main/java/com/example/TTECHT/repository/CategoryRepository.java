@@ -18,4 +18,7 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
     @Query("SELECT c FROM Category c WHERE LOWER(c.name) LIKE LOWER(CONCAT('%', :name, '%'))")
     List<Category> findByNameContaining(String name);
 
+    @Query("SELECT c.categoryId FROM Category c")
+    List<Long> findAllIds();
+
 }
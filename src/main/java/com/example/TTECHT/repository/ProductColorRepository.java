@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +25,10 @@ public interface ProductColorRepository extends JpaRepository<ProductColor, Long
     
     @Query("SELECT pc.color FROM ProductColor pc WHERE pc.product.productId = :productId")
     List<String> findColorsByProductId(@Param("productId") Long productId);
+
+    // (productId, color) rows of several products, in insertion order
+    @Query("SELECT pc.product.productId, pc.color FROM ProductColor pc WHERE pc.product.productId IN :productIds ORDER BY pc.colorId")
+    List<Object[]> findColorRowsByProductIds(@Param("productIds") Collection<Long> productIds);
     
     Optional<ProductColor> findByProductAndColor(Product product, String color);
 }
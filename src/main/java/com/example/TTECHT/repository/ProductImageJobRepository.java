@@ -0,0 +1,42 @@
+package com.example.TTECHT.repository;
+
+import com.example.TTECHT.entity.ProductImageJob;
+import com.example.TTECHT.enumuration.ImageJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProductImageJobRepository extends JpaRepository<ProductImageJob, Long> {
+
+    List<ProductImageJob> findByProductIdOrderByImageIndexAsc(Long productId);
+
+    @Modifying
+    @Query("DELETE FROM ProductImageJob j WHERE j.productId = :productId")
+    void deleteByProductId(@Param("productId") Long productId);
+
+    // Heartbeat of the unfinished jobs of one node
+    @Modifying
+    @Query("UPDATE ProductImageJob j SET j.updatedAt = :now WHERE j.ownerNode = :ownerNode AND j.status IN :statuses")
+    int touchOwnedJobs(@Param("ownerNode") String ownerNode,
+                       @Param("statuses") Collection<ImageJobStatus> statuses,
+                       @Param("now") LocalDateTime now);
+
+    // Unfinished jobs of other nodes that stopped sending heartbeats, e.g. because they were restarted
+    @Modifying
+    @Query("UPDATE ProductImageJob j SET j.status = :newStatus, j.message = :message, j.updatedAt = :now " +
+           "WHERE j.status IN :statuses AND (j.ownerNode IS NULL OR j.ownerNode <> :ownerNode) " +
+           "AND (j.updatedAt IS NULL OR j.updatedAt < :staleBefore)")
+    int updateStatusOfAbandonedJobs(@Param("statuses") Collection<ImageJobStatus> statuses,
+                                    @Param("newStatus") ImageJobStatus newStatus,
+                                    @Param("message") String message,
+                                    @Param("ownerNode") String ownerNode,
+                                    @Param("staleBefore") LocalDateTime staleBefore,
+                                    @Param("now") LocalDateTime now);
+}
@@ -6,13 +6,19 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProductImageRepository extends JpaRepository<ProductImage, Long> {
     
     @Query("SELECT pi.urlImage FROM ProductImage pi WHERE pi.product.productId = :productId")
     List<String> findImageUrlsByProductId(@Param("productId") Long productId);
+
+    // (productId, urlImage) rows of several products, in insertion order
+    @Query("SELECT pi.product.productId, pi.urlImage FROM ProductImage pi WHERE pi.product.productId IN :productIds ORDER BY pi.imageId")
+    List<Object[]> findImageUrlRowsByProductIds(@Param("productIds") Collection<Long> productIds);
     
     List<ProductImage> findByProductProductId(Long productId);
     
@@ -21,4 +27,19 @@ public interface ProductImageRepository extends JpaRepository<ProductImage, Long
     List<ProductImage> findByProductProductIdNot(Long productId);
     
     void deleteByProductProductId(Long productId);
+
+    // Rows of [imageId, productId, metadataId, perceptualHash] used to build the candidate snapshot
+    @Query("SELECT pi.imageId, pi.product.productId, m.metadataId, pi.perceptualHash FROM ProductImage pi LEFT JOIN pi.metadata m")
+    List<Object[]> findCandidateRows();
+
+    // Candidate snapshot rows of one product, used to refresh it after a change on another node
+    @Query("SELECT pi.imageId, pi.product.productId, m.metadataId, pi.perceptualHash FROM ProductImage pi LEFT JOIN pi.metadata m " +
+           "WHERE pi.product.productId = :productId")
+    List<Object[]> findCandidateRowsByProductId(@Param("productId") Long productId);
+
+    Optional<ProductImage> findFirstByContentHash(String contentHash);
+
+    // Rows of [imageId, productId, perceptualHash] used to build the perceptual hash index
+    @Query("SELECT pi.imageId, pi.product.productId, pi.perceptualHash FROM ProductImage pi WHERE pi.perceptualHash IS NOT NULL")
+    List<Object[]> findPerceptualHashes();
 }
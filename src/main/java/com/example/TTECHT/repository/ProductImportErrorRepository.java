@@ -0,0 +1,14 @@
+package com.example.TTECHT.repository;
+
+import com.example.TTECHT.entity.ProductImportError;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ProductImportErrorRepository extends JpaRepository<ProductImportError, Long> {
+
+    List<ProductImportError> findByImportIdAndRowNumberGreaterThanOrderByRowNumberAsc(Long importId, Integer afterRow, Limit limit);
+}
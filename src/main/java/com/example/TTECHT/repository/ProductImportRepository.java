@@ -0,0 +1,35 @@
+package com.example.TTECHT.repository;
+
+import com.example.TTECHT.entity.ProductImport;
+import com.example.TTECHT.enumuration.ProductImportStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+public interface ProductImportRepository extends JpaRepository<ProductImport, Long> {
+
+    // Heartbeat of the unfinished imports of one node
+    @Modifying
+    @Query("UPDATE ProductImport i SET i.updatedAt = :now WHERE i.ownerNode = :ownerNode AND i.status IN :statuses")
+    int touchOwnedImports(@Param("ownerNode") String ownerNode,
+                          @Param("statuses") Collection<ProductImportStatus> statuses,
+                          @Param("now") LocalDateTime now);
+
+    // Unfinished imports of other nodes that stopped sending heartbeats, e.g. because they were restarted
+    @Modifying
+    @Query("UPDATE ProductImport i SET i.status = :newStatus, i.message = :message, i.updatedAt = :now " +
+           "WHERE i.status IN :statuses AND (i.ownerNode IS NULL OR i.ownerNode <> :ownerNode) " +
+           "AND (i.updatedAt IS NULL OR i.updatedAt < :staleBefore)")
+    int updateStatusOfAbandonedImports(@Param("statuses") Collection<ProductImportStatus> statuses,
+                                       @Param("newStatus") ProductImportStatus newStatus,
+                                       @Param("message") String message,
+                                       @Param("ownerNode") String ownerNode,
+                                       @Param("staleBefore") LocalDateTime staleBefore,
+                                       @Param("now") LocalDateTime now);
+}
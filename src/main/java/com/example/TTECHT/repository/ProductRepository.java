@@ -2,24 +2,58 @@ package com.example.TTECHT.repository;
 
 import com.example.TTECHT.entity.Product;
 import com.example.TTECHT.entity.user.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
-    
+
+    // Queries that feed product listings load category and seller in the same statement
+    @Override
+    @EntityGraph(attributePaths = {"category", "seller"})
+    List<Product> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = {"category", "seller"})
+    Page<Product> findAll(Pageable pageable);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE p.productId = :productId")
+    Optional<Product> findWithCategoryAndSellerById(@Param("productId") Long productId);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE p.productId IN :productIds")
+    List<Product> findWithCategoryAndSellerByIdIn(@Param("productIds") Collection<Long> productIds);
+
+    // Keyset chunks of the whole catalog, for the in-memory search index and the streaming export
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE p.productId > :afterProductId ORDER BY p.productId")
+    List<Product> findChunkAfter(@Param("afterProductId") Long afterProductId, Pageable pageable);
+
+    @Query("SELECT p.productId FROM Product p WHERE p.category.categoryId = :categoryId")
+    List<Long> findProductIdsByCategoryId(@Param("categoryId") Long categoryId);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
     List<Product> findByCategoryCategoryId(Long categoryId);
     
+    @EntityGraph(attributePaths = {"category", "seller"})
     @Query("SELECT p FROM Product p WHERE LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%'))")
     List<Product> findByNameContaining(@Param("name") String name);
     
+    @EntityGraph(attributePaths = {"category", "seller"})
     @Query("SELECT p FROM Product p WHERE " +
            "(:name IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%'))) AND " +
            "(:categoryId IS NULL OR p.category.categoryId = :categoryId) AND " +
@@ -29,33 +63,194 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
                                @Param("storeName") String storeName, 
                                Pageable pageable);
     
+    // Keyset pages over (sort column, product_id), with the same optional filters as findByFilters
+
+    String LISTING_FILTERS = "(:name IS NULL OR LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%'))) AND " +
+           "(:categoryId IS NULL OR p.category.categoryId = :categoryId) AND " +
+           "(:storeName IS NULL OR LOWER(p.storeName) LIKE LOWER(CONCAT('%', :storeName, '%'))) ";
+
+    // Row value comparisons, so PostgreSQL turns them into a single index range scan
+    String NEWEST_FIRST = "ORDER BY p.createdAt DESC, p.productId DESC";
+    String BEST_SELLING_FIRST = "ORDER BY p.soldQuantity DESC, p.productId DESC";
+    String CHEAPEST_FIRST = "ORDER BY p.price ASC, p.productId ASC";
+    String PRICIEST_FIRST = "ORDER BY p.price DESC, p.productId DESC";
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE " + LISTING_FILTERS + NEWEST_FIRST)
+    List<Product> findNewestPage(@Param("name") String name,
+                                 @Param("categoryId") Long categoryId,
+                                 @Param("storeName") String storeName,
+                                 Limit limit);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE " + LISTING_FILTERS +
+           "AND (p.createdAt, p.productId) < (:createdAt, :productId) " + NEWEST_FIRST)
+    List<Product> findNewestPageAfter(@Param("name") String name,
+                                      @Param("categoryId") Long categoryId,
+                                      @Param("storeName") String storeName,
+                                      @Param("createdAt") LocalDateTime createdAt,
+                                      @Param("productId") Long productId,
+                                      Limit limit);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE " + LISTING_FILTERS + BEST_SELLING_FIRST)
+    List<Product> findBestSellingPage(@Param("name") String name,
+                                      @Param("categoryId") Long categoryId,
+                                      @Param("storeName") String storeName,
+                                      Limit limit);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE " + LISTING_FILTERS +
+           "AND (p.soldQuantity, p.productId) < (:soldQuantity, :productId) " + BEST_SELLING_FIRST)
+    List<Product> findBestSellingPageAfter(@Param("name") String name,
+                                           @Param("categoryId") Long categoryId,
+                                           @Param("storeName") String storeName,
+                                           @Param("soldQuantity") Integer soldQuantity,
+                                           @Param("productId") Long productId,
+                                           Limit limit);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE " + LISTING_FILTERS + CHEAPEST_FIRST)
+    List<Product> findCheapestPage(@Param("name") String name,
+                                   @Param("categoryId") Long categoryId,
+                                   @Param("storeName") String storeName,
+                                   Limit limit);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE " + LISTING_FILTERS +
+           "AND (p.price, p.productId) > (:price, :productId) " + CHEAPEST_FIRST)
+    List<Product> findCheapestPageAfter(@Param("name") String name,
+                                        @Param("categoryId") Long categoryId,
+                                        @Param("storeName") String storeName,
+                                        @Param("price") BigDecimal price,
+                                        @Param("productId") Long productId,
+                                        Limit limit);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE " + LISTING_FILTERS + PRICIEST_FIRST)
+    List<Product> findPriciestPage(@Param("name") String name,
+                                   @Param("categoryId") Long categoryId,
+                                   @Param("storeName") String storeName,
+                                   Limit limit);
+
+    @EntityGraph(attributePaths = {"category", "seller"})
+    @Query("SELECT p FROM Product p WHERE " + LISTING_FILTERS +
+           "AND (p.price, p.productId) < (:price, :productId) " + PRICIEST_FIRST)
+    List<Product> findPriciestPageAfter(@Param("name") String name,
+                                        @Param("categoryId") Long categoryId,
+                                        @Param("storeName") String storeName,
+                                        @Param("price") BigDecimal price,
+                                        @Param("productId") Long productId,
+                                        Limit limit);
+
+    @Query("SELECT COUNT(p) FROM Product p WHERE " + LISTING_FILTERS)
+    long countByListingFilters(@Param("name") String name,
+                               @Param("categoryId") Long categoryId,
+                               @Param("storeName") String storeName);
+
+    // Planner row estimate, kept up to date by autovacuum; -1 until the table is first analyzed
+    @Query(value = "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = 'product'::regclass", nativeQuery = true)
+    Long estimateCount();
+
+    @EntityGraph(attributePaths = {"category", "seller"})
     List<Product> findByPriceBetween(BigDecimal minPrice, BigDecimal maxPrice);
     
+    @EntityGraph(attributePaths = {"category", "seller"})
     @Query("SELECT p FROM Product p WHERE p.storeName = :storeName")
     List<Product> findByStoreName(@Param("storeName") String storeName);
     
+    // Weighted full-text document of a product, a stored generated column added and GIN-indexed by ProductSearchIndexes
+    String SEARCH_DOCUMENT = "p.search_document";
+
+    String SEARCH_CONDITION = "(" + SEARCH_DOCUMENT + " @@ to_tsquery('simple', :tsQuery) " +
+            "OR lower(p.name) LIKE :namePattern) " +
+            "AND (CAST(:categoryId AS BIGINT) IS NULL OR p.category_id = CAST(:categoryId AS BIGINT)) " +
+            "AND (CAST(:storePattern AS TEXT) IS NULL OR lower(p.store_name) LIKE CAST(:storePattern AS TEXT))";
+
+    /**
+     * IDs of the products matching a prefix full-text query or a name substring, best ranked first.
+     * Returned as a slice, so the matches are not counted; see {@link #countSearchMatches}.
+     *
+     * @param tsQuery to_tsquery expression, e.g. "red:* & shoe:*"
+     * @param namePattern lower-case LIKE pattern matched against the name
+     * @param storePattern lower-case LIKE pattern for the store name, null for any store
+     */
+    @Query(value = "SELECT p.product_id FROM product p WHERE " + SEARCH_CONDITION +
+            " ORDER BY ts_rank(" + SEARCH_DOCUMENT + ", to_tsquery('simple', :tsQuery)) DESC, " +
+            "p.sold_quantity DESC, p.product_id",
+            nativeQuery = true)
+    Slice<Long> searchRankedIds(@Param("tsQuery") String tsQuery,
+                                @Param("namePattern") String namePattern,
+                                @Param("categoryId") Long categoryId,
+                                @Param("storePattern") String storePattern,
+                                Pageable pageable);
+
+    @Query(value = "SELECT COUNT(*) FROM product p WHERE " + SEARCH_CONDITION, nativeQuery = true)
+    long countSearchMatches(@Param("tsQuery") String tsQuery,
+                            @Param("namePattern") String namePattern,
+                            @Param("categoryId") Long categoryId,
+                            @Param("storePattern") String storePattern);
+
+    // Storefront search fallback while the in-memory index is not ready: every word is a prefix query on
+    // the search document, as the index matches words; exact store name and a price range
+    String CATALOG_CONDITION = "(CAST(:tsQuery AS TEXT) IS NULL OR " + SEARCH_DOCUMENT +
+            " @@ to_tsquery('simple', CAST(:tsQuery AS TEXT))) " +
+            "AND (CAST(:categoryId AS BIGINT) IS NULL OR p.category_id = CAST(:categoryId AS BIGINT)) " +
+            "AND (CAST(:storeName AS TEXT) IS NULL OR lower(p.store_name) = lower(CAST(:storeName AS TEXT))) " +
+            "AND (CAST(:minPrice AS NUMERIC) IS NULL OR p.price >= CAST(:minPrice AS NUMERIC)) " +
+            "AND (CAST(:maxPrice AS NUMERIC) IS NULL OR p.price <= CAST(:maxPrice AS NUMERIC))";
+
+    /**
+     * @param tsQuery to_tsquery expression from ProductSearchQuery.toPrefixTsQuery, null for any product
+     */
+    @Query(value = "SELECT p.product_id FROM product p WHERE " + CATALOG_CONDITION +
+            " ORDER BY p.sold_quantity DESC, p.product_id DESC",
+            nativeQuery = true)
+    List<Long> findCatalogBestSellingIds(@Param("tsQuery") String tsQuery,
+                                         @Param("categoryId") Long categoryId,
+                                         @Param("storeName") String storeName,
+                                         @Param("minPrice") BigDecimal minPrice,
+                                         @Param("maxPrice") BigDecimal maxPrice,
+                                         Pageable pageable);
+
+    @Query(value = "SELECT p.product_id FROM product p WHERE " + CATALOG_CONDITION +
+            " ORDER BY p.created_at DESC, p.product_id DESC",
+            nativeQuery = true)
+    List<Long> findCatalogNewestIds(@Param("tsQuery") String tsQuery,
+                                    @Param("categoryId") Long categoryId,
+                                    @Param("storeName") String storeName,
+                                    @Param("minPrice") BigDecimal minPrice,
+                                    @Param("maxPrice") BigDecimal maxPrice,
+                                    Pageable pageable);
+
     @Query("SELECT COUNT(p) FROM Product p WHERE p.category.categoryId = :categoryId")
     long countByCategoryId(@Param("categoryId") Long categoryId);
     
     List<Product> findBySeller(User seller);
     
+    @EntityGraph(attributePaths = {"category", "seller"})
     @Query("SELECT p FROM Product p WHERE p.seller.id = :sellerId ORDER BY p.createdAt DESC")
     List<Product> findBySellerIdOrderByCreatedAtDesc(@Param("sellerId") Long sellerId);
     
     // Best seller queries based on sold quantity
+    @EntityGraph(attributePaths = {"category", "seller"})
     @Query("SELECT p FROM Product p ORDER BY p.soldQuantity DESC")
     List<Product> findBestSellerProducts(Pageable pageable);
     
+    @EntityGraph(attributePaths = {"category", "seller"})
     @Query("SELECT p FROM Product p WHERE p.category.categoryId = :categoryId ORDER BY p.soldQuantity DESC")
     List<Product> findBestSellerProductsByCategory(@Param("categoryId") Long categoryId, Pageable pageable);
     
+    @EntityGraph(attributePaths = {"category", "seller"})
     @Query("SELECT p FROM Product p WHERE p.soldQuantity >= :minSoldQuantity ORDER BY p.soldQuantity DESC")
     List<Product> findProductsWithMinimumSales(@Param("minSoldQuantity") Integer minSoldQuantity, Pageable pageable);
     
     // New arrival queries based on creation date
+    @EntityGraph(attributePaths = {"category", "seller"})
     @Query("SELECT p FROM Product p ORDER BY p.createdAt DESC")
     List<Product> findNewArrivalProducts(Pageable pageable);
     
+    @EntityGraph(attributePaths = {"category", "seller"})
     @Query("SELECT p FROM Product p WHERE p.category.categoryId = :categoryId ORDER BY p.createdAt DESC")
     List<Product> findNewArrivalProductsByCategory(@Param("categoryId") Long categoryId, Pageable pageable);
     
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +25,10 @@ public interface ProductSizeRepository extends JpaRepository<ProductSize, Long>
     
     @Query("SELECT ps.size FROM ProductSize ps WHERE ps.product.productId = :productId")
     List<String> findSizesByProductId(@Param("productId") Long productId);
+
+    // (productId, size) rows of several products, in insertion order
+    @Query("SELECT ps.product.productId, ps.size FROM ProductSize ps WHERE ps.product.productId IN :productIds ORDER BY ps.sizeId")
+    List<Object[]> findSizeRowsByProductIds(@Param("productIds") Collection<Long> productIds);
     
     Optional<ProductSize> findByProductAndSize(Product product, String size);
 }
@@ -0,0 +1,13 @@
+package com.example.TTECHT.repository;
+
+import com.example.TTECHT.entity.WatermarkMetadata;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface WatermarkMetadataRepository extends JpaRepository<WatermarkMetadata, Long> {
+
+    Optional<WatermarkMetadata> findByMetadataHash(String metadataHash);
+}
@@ -1,9 +1,14 @@
 package com.example.TTECHT.repository.watermark;
 
+import com.example.TTECHT.dto.repsonse.WatermarkDetectionHistorySummaryResponse;
 import com.example.TTECHT.entity.watermark.WatermarkDetectionHistory;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -14,4 +19,47 @@ public interface WatermarkDetectionHistoryRepository extends JpaRepository<Water
    List<WatermarkDetectionHistory> findByStoreName(String storeName);
 
    List<WatermarkDetectionHistory> findByProductIdAndStoreName(Long productId, String storeName);
+
+   // Each hash column has its own index, so this is a bitmap OR of three index lookups
+   @Query("SELECT COUNT(h) > 0 FROM WatermarkDetectionHistory h WHERE h.detectedImageHash = :hash " +
+          "OR h.watermarkHash = :hash OR h.extractedWatermarkHash = :hash")
+   boolean existsByBlobHash(@Param("hash") String hash);
+
+   // Keyset pages over (detection_timestamp, detection_id), newest first
+
+   String SUMMARY_SELECT = "SELECT new com.example.TTECHT.dto.repsonse.WatermarkDetectionHistorySummaryResponse(" +
+          "h.detectionId, h.productId, h.storeName, h.detectionTimestamp, h.watermarkId, h.detectionMessage, " +
+          "h.detectStatus, h.detectedImageHash, h.watermarkHash, h.extractedWatermarkHash) " +
+          "FROM WatermarkDetectionHistory h ";
+
+   // Row value comparison, so PostgreSQL turns it into a single index range scan
+   String BEFORE_CURSOR = "(h.detectionTimestamp, h.detectionId) < (:timestamp, :detectionId) ";
+
+   String NEWEST_FIRST = "ORDER BY h.detectionTimestamp DESC, h.detectionId DESC";
+
+   @Query(SUMMARY_SELECT + NEWEST_FIRST)
+   List<WatermarkDetectionHistorySummaryResponse> findSummaries(Limit limit);
+
+   @Query(SUMMARY_SELECT + "WHERE " + BEFORE_CURSOR + NEWEST_FIRST)
+   List<WatermarkDetectionHistorySummaryResponse> findSummariesBefore(@Param("timestamp") LocalDateTime timestamp,
+                                                                       @Param("detectionId") Long detectionId,
+                                                                       Limit limit);
+
+   @Query(SUMMARY_SELECT + "WHERE h.productId = :productId " + NEWEST_FIRST)
+   List<WatermarkDetectionHistorySummaryResponse> findSummariesByProductId(@Param("productId") Long productId, Limit limit);
+
+   @Query(SUMMARY_SELECT + "WHERE h.productId = :productId AND " + BEFORE_CURSOR + NEWEST_FIRST)
+   List<WatermarkDetectionHistorySummaryResponse> findSummariesByProductIdBefore(@Param("productId") Long productId,
+                                                                                  @Param("timestamp") LocalDateTime timestamp,
+                                                                                  @Param("detectionId") Long detectionId,
+                                                                                  Limit limit);
+
+   @Query(SUMMARY_SELECT + "WHERE h.storeName = :storeName " + NEWEST_FIRST)
+   List<WatermarkDetectionHistorySummaryResponse> findSummariesByStoreName(@Param("storeName") String storeName, Limit limit);
+
+   @Query(SUMMARY_SELECT + "WHERE h.storeName = :storeName AND " + BEFORE_CURSOR + NEWEST_FIRST)
+   List<WatermarkDetectionHistorySummaryResponse> findSummariesByStoreNameBefore(@Param("storeName") String storeName,
+                                                                                  @Param("timestamp") LocalDateTime timestamp,
+                                                                                  @Param("detectionId") Long detectionId,
+                                                                                  Limit limit);
 }
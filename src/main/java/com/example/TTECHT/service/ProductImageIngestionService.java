@@ -0,0 +1,13 @@
+package com.example.TTECHT.service;
+
+import com.example.TTECHT.dto.repsonse.ProductImageJobResponse;
+import com.example.TTECHT.event.ProductImagesSubmittedEvent;
+
+import java.util.List;
+
+public interface ProductImageIngestionService {
+
+    void onImagesSubmitted(ProductImagesSubmittedEvent event);
+
+    List<ProductImageJobResponse> getImageJobs(Long productId);
+}
@@ -0,0 +1,20 @@
+package com.example.TTECHT.service;
+
+import com.example.TTECHT.dto.repsonse.CursorPageResponse;
+import com.example.TTECHT.dto.repsonse.ProductImportErrorResponse;
+import com.example.TTECHT.dto.repsonse.ProductImportResponse;
+
+import java.io.InputStream;
+
+public interface ProductImportService {
+
+    // Formats accepted by startImport
+    String FORMAT_NDJSON = "ndjson";
+    String FORMAT_CSV = "csv";
+
+    ProductImportResponse startImport(InputStream body, String format, String sellerUsername);
+
+    ProductImportResponse getImport(Long importId, String sellerUsername);
+
+    CursorPageResponse<ProductImportErrorResponse> getImportErrors(Long importId, String sellerUsername, Integer afterRow, int limit);
+}
@@ -2,12 +2,17 @@ package com.example.TTECHT.service;
 
 import com.example.TTECHT.dto.ProductCreateDTO;
 import com.example.TTECHT.dto.ProductDTO;
+import com.example.TTECHT.dto.repsonse.CursorPageResponse;
+import com.example.TTECHT.service.search.ProductListingCursor;
+import com.example.TTECHT.service.search.ProductSearchIndex;
+import com.example.TTECHT.service.watermark.ImagePayload;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface ProductService {
 
@@ -19,13 +24,26 @@ public interface ProductService {
 
     ProductDTO createProduct(ProductCreateDTO productCreateDTO, String sellerUsername);
 
+    ProductDTO createProduct(ProductCreateDTO productCreateDTO, List<ImagePayload> images, String sellerUsername);
+
     ProductDTO updateProduct(Long id, ProductCreateDTO productCreateDTO);
 
     void deleteProduct(Long id);
 
     List<ProductDTO> searchProductsByName(String name);
 
-    Page<ProductDTO> searchProducts(String name, Long categoryId, String storeName, Pageable pageable);
+    List<ProductDTO> searchCatalog(String query, Long categoryId, String storeName, BigDecimal minPrice,
+                                   BigDecimal maxPrice, ProductSearchIndex.SortOrder sort, int limit);
+
+    /**
+     * @param includeTotal Count every match; otherwise the page's total only tells whether a next page exists
+     */
+    Page<ProductDTO> searchProducts(String name, Long categoryId, String storeName, Pageable pageable,
+                                    boolean includeTotal);
+
+    CursorPageResponse<ProductDTO> getProductsPage(String name, Long categoryId, String storeName,
+                                                   ProductListingCursor.Order order, String cursor, int limit,
+                                                   boolean includeTotal);
 
     List<ProductDTO> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice);
 
@@ -46,8 +64,8 @@ public interface ProductService {
     
     List<ProductDTO> getNewArrivalProductsByCategory(Long categoryId, int limit);
     
-    // Get all products without pagination
-    List<ProductDTO> getAllProductsWithoutPagination();
+    // Stream every product in chunks, so memory use does not grow with the catalog
+    void exportAllProducts(Consumer<List<ProductDTO>> chunkConsumer);
     
     // Get products by user/seller ID
     List<ProductDTO> getProductsByUserId(Long userId);
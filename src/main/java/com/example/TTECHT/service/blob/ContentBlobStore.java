@@ -0,0 +1,167 @@
+package com.example.TTECHT.service.blob;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store for large text blobs (base64 images) kept on the local filesystem.
+ *
+ * A blob is stored once under the SHA-256 of its content, so identical images referenced by many
+ * rows share one file. Files are written to a temporary name and moved into place, so readers never
+ * see a partial blob.
+ *
+ * Storing and deleting the same blob are serialized with a PostgreSQL advisory lock on its hash: a
+ * writer holds it shared until the row referencing the blob commits, and a delete holds it exclusively
+ * while it checks for references and removes the file.
+ *
+ * Any node may be asked for a blob that another node stored, so {@code blob.store.dir} must be a
+ * volume shared by every node (an NFS or EFS mount, for example). It has no default: startup fails
+ * when it is not set, instead of each node silently writing to a directory of its own.
+ */
+@Component
+@Slf4j
+public class ContentBlobStore {
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final String dir;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ContentBlobStore(JdbcTemplate jdbcTemplate, @Value("${blob.store.dir}") String dir) {
+        if (dir == null || dir.isBlank()) {
+            throw new IllegalStateException("blob.store.dir must be set to a directory shared by all nodes");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.dir = dir;
+        log.info("Content blobs are stored in {}", Path.of(dir).toAbsolutePath());
+    }
+
+    /**
+     * Store a blob if it is not stored yet.
+     *
+     * Call it in the transaction that saves the row referencing the blob, so a concurrent
+     * {@link #deleteIfUnreferenced} waits for that row instead of deleting the file under it.
+     *
+     * @param content Blob content, may be null
+     * @return the hash of the content, or null for null content
+     */
+    public String put(String content) {
+        if (content == null) {
+            return null;
+        }
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String hash = sha256(bytes);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock_shared(hashtextextended(?, 0))", hash);
+        }
+        Path target = path(hash);
+        if (Files.exists(target)) {
+            return hash;
+        }
+
+        try {
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(target.getParent(), hash, ".tmp");
+            try {
+                Files.write(temp, bytes);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Stored concurrently by another writer, the content is identical
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return hash;
+        } catch (IOException e) {
+            log.error("Failed to store blob {}: {}", hash, e.getMessage(), e);
+            throw new RuntimeException("Failed to store blob: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Locate a stored blob
+     *
+     * @param hash Hash returned by {@link #put(String)}
+     * @return the blob file, empty if the hash is malformed or unknown
+     */
+    public Optional<Path> find(String hash) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            return Optional.empty();
+        }
+        Path file = path(hash);
+        return Files.exists(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    /**
+     * Read a stored blob back as text
+     *
+     * @return the content, or null if the blob does not exist
+     */
+    public String get(String hash) {
+        Optional<Path> file = find(hash);
+        if (file.isEmpty()) {
+            return null;
+        }
+        try {
+            return Files.readString(file.get(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read blob " + hash + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Delete a blob once nothing references it anymore.
+     *
+     * Runs in its own transaction, after the rows that referenced the blob were deleted and committed;
+     * writers storing the same blob meanwhile either commit their row first, so it is seen here, or
+     * wait until the file is gone and write it again.
+     *
+     * @param isReferenced Whether any committed row still references the hash
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void deleteIfUnreferenced(String hash, Predicate<String> isReferenced) {
+        Optional<Path> file = find(hash);
+        if (file.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(hashtextextended(?, 0))", hash);
+        if (isReferenced.test(hash)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file.get());
+        } catch (IOException e) {
+            log.warn("Failed to delete blob {}: {}", hash, e.getMessage());
+        }
+    }
+
+    private Path path(String hash) {
+        return Path.of(dir, hash.substring(0, 2), hash);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.TTECHT.service.blob;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the base64 images of detection history rows written before the blob store existed out of the
+ * legacy TEXT columns and into the blob store. Runs once the application is ready, in small batches;
+ * rows are left with only the hashes and the legacy columns emptied.
+ */
+@Component
+@Slf4j
+public class DetectionHistoryBlobMigration {
+
+    private static final int BATCH_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ContentBlobStore contentBlobStore;
+
+    public DetectionHistoryBlobMigration(JdbcTemplate jdbcTemplate, ContentBlobStore contentBlobStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.contentBlobStore = contentBlobStore;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        try {
+            Integer legacyColumns = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.columns " +
+                    "WHERE table_name = 'watermark_detection_history' AND column_name = 'detected_image_base64'",
+                    Integer.class);
+            if (legacyColumns == null || legacyColumns == 0) {
+                return;
+            }
+
+            int migrated = 0;
+            List<Map<String, Object>> rows;
+            do {
+                rows = jdbcTemplate.queryForList(
+                        "SELECT detection_id, detected_image_base64, watermark_base64, extracted_watermark_base64 " +
+                        "FROM watermark_detection_history " +
+                        "WHERE detected_image_base64 IS NOT NULL OR watermark_base64 IS NOT NULL " +
+                        "OR extracted_watermark_base64 IS NOT NULL " +
+                        "ORDER BY detection_id LIMIT " + BATCH_SIZE);
+                for (Map<String, Object> row : rows) {
+                    jdbcTemplate.update(
+                            "UPDATE watermark_detection_history SET " +
+                            "detected_image_hash = COALESCE(detected_image_hash, ?), " +
+                            "watermark_hash = COALESCE(watermark_hash, ?), " +
+                            "extracted_watermark_hash = COALESCE(extracted_watermark_hash, ?), " +
+                            "detected_image_base64 = NULL, watermark_base64 = NULL, extracted_watermark_base64 = NULL " +
+                            "WHERE detection_id = ?",
+                            contentBlobStore.put((String) row.get("detected_image_base64")),
+                            contentBlobStore.put((String) row.get("watermark_base64")),
+                            contentBlobStore.put((String) row.get("extracted_watermark_base64")),
+                            row.get("detection_id"));
+                }
+                migrated += rows.size();
+            } while (rows.size() == BATCH_SIZE);
+
+            if (migrated > 0) {
+                log.info("Moved images of {} detection history rows to the blob store", migrated);
+            }
+        } catch (Exception e) {
+            log.error("Failed to move detection history images to the blob store: {}", e.getMessage(), e);
+        }
+    }
+}
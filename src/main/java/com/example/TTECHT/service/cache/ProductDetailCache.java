@@ -0,0 +1,454 @@
+package com.example.TTECHT.service.cache;
+
+import com.example.TTECHT.dto.ProductDTO;
+import com.example.TTECHT.event.ProductChangedEvent;
+import com.example.TTECHT.event.ProductsChangedEvent;
+import com.example.TTECHT.service.cluster.NodeIdentity;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Two-tier read-through cache of assembled product details: a bounded in-process LRU in front of Redis.
+ *
+ * Entries are evicted from both tiers after a {@link ProductChangedEvent} commits, and other nodes
+ * are told over a Redis channel to drop their local copy. The local tier also expires entries after
+ * local-ttl-seconds, which bounds staleness if a notification is lost. When Redis is unreachable
+ * the cache keeps serving from the local tier and the database, and retries Redis after a pause.
+ *
+ * Every eviction bumps a per-product version key in Redis. A load reads the version along with the
+ * cached value and writes its result back with a script that only sets the value if the version is
+ * unchanged, so a load that raced with an eviction on any node never puts stale details in Redis.
+ * The local tier likewise skips a load only if that product was evicted while it ran.
+ */
+@Component
+@Slf4j
+public class ProductDetailCache implements MessageListener {
+
+    public static final String CHANNEL = "product-cache:evicted";
+    private static final String KEY_PREFIX = "product:detail:";
+    private static final String VERSION_KEY_PREFIX = "product:version:";
+
+    // KEYS: (version, value) pairs; ARGV: TTL, then the (version read before the load, JSON) pairs
+    private static final RedisScript<Long> PUT_IF_UNCHANGED = new DefaultRedisScript<>(
+            "local written = 0 " +
+            "for i = 1, #KEYS, 2 do " +
+            "  if (redis.call('GET', KEYS[i]) or '0') == ARGV[i + 1] then " +
+            "    redis.call('SET', KEYS[i + 1], ARGV[i + 2], 'EX', ARGV[1]) " +
+            "    written = written + 1 " +
+            "  end " +
+            "end " +
+            "return written", Long.class);
+
+    // KEYS: (version, value) pairs; ARGV: TTL of the version keys
+    private static final RedisScript<Long> EVICT = new DefaultRedisScript<>(
+            "for i = 1, #KEYS, 2 do " +
+            "  redis.call('INCR', KEYS[i]) " +
+            "  redis.call('EXPIRE', KEYS[i], ARGV[1]) " +
+            "  redis.call('DEL', KEYS[i + 1]) " +
+            "end " +
+            "return #KEYS / 2", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Counter localHitCounter;
+    private final Counter redisHitCounter;
+    private final Counter missCounter;
+    private final NodeIdentity nodeIdentity;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    // Local eviction sequence, and the sequence at which each recently evicted product was evicted;
+    // a load is not cached locally if its product was evicted after the load started
+    private long evictionSequence = 0;
+    private final LinkedHashMap<Long, Long> recentEvictions = new LinkedHashMap<>();
+    // Highest sequence dropped from recentEvictions; loads older than it are treated as raced
+    private long forgottenEvictionSequence = 0;
+    private volatile long redisRetryAt = 0;
+
+    @Value("${product.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${product.cache.local-max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${product.cache.local-max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${product.cache.local-ttl-seconds:60}")
+    private long localTtlSeconds;
+
+    @Value("${product.cache.redis-ttl-seconds:600}")
+    private long redisTtlSeconds;
+
+    @Value("${product.cache.redis-retry-ms:5000}")
+    private long redisRetryMs;
+
+    // Must outlive any load, a version key that expired mid-load only makes that load skip Redis
+    @Value("${product.cache.version-ttl-seconds:86400}")
+    private long versionTtlSeconds;
+
+    public ProductDetailCache(@Qualifier("regisTemplate") RedisTemplate<String, String> redisTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              NodeIdentity nodeIdentity) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.nodeIdentity = nodeIdentity;
+        this.localHitCounter = meterRegistry.counter("product.cache.requests", "result", "local-hit");
+        this.redisHitCounter = meterRegistry.counter("product.cache.requests", "result", "redis-hit");
+        this.missCounter = meterRegistry.counter("product.cache.requests", "result", "miss");
+    }
+
+    /**
+     * Get the details of a product, loading them with the loader on a miss
+     *
+     * @param productId ID of the product
+     * @param loader Loads the product from the database; may throw if it does not exist
+     * @return the cached details; shared between callers and must not be modified
+     */
+    public ProductDTO get(Long productId, Function<Long, ProductDTO> loader) {
+        if (!enabled) {
+            return loader.apply(productId);
+        }
+        ProductDTO cached = getLocal(productId);
+        if (cached != null) {
+            localHitCounter.increment();
+            return cached;
+        }
+
+        long loadStarted = loadStarted();
+        RedisRead read = getRedis(List.of(productId));
+        String json = read != null ? read.values.get(0) : null;
+        if (json != null) {
+            try {
+                ProductDTO product = objectMapper.readValue(json, ProductDTO.class);
+                redisHitCounter.increment();
+                putLocal(productId, product, json.length(), loadStarted);
+                return product;
+            } catch (Exception e) {
+                log.warn("Ignoring unreadable cached product {}: {}", productId, e.getMessage());
+            }
+        }
+
+        missCounter.increment();
+        ProductDTO product = loader.apply(productId);
+        try {
+            json = objectMapper.writeValueAsString(product);
+            if (read != null) {
+                putRedis(List.of(productId), read.versions, List.of(json));
+            }
+            putLocal(productId, product, json.length(), loadStarted);
+        } catch (Exception e) {
+            log.warn("Failed to cache product {}: {}", productId, e.getMessage());
+        }
+        return product;
+    }
+
+    /**
+     * Get the details of several products, loading all misses with one call of the batch loader
+     *
+     * @param productIds IDs of the products
+     * @param batchLoader Loads the missing products from the database, skipping those that do not exist
+     * @return the details found, in the order of the IDs; shared between callers and must not be modified
+     */
+    public List<ProductDTO> getAll(List<Long> productIds, Function<List<Long>, List<ProductDTO>> batchLoader) {
+        if (!enabled) {
+            return batchLoader.apply(productIds);
+        }
+        Map<Long, ProductDTO> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long productId : productIds) {
+            ProductDTO cached = getLocal(productId);
+            if (cached != null) {
+                localHitCounter.increment();
+                found.put(productId, cached);
+            } else {
+                missing.add(productId);
+            }
+        }
+
+        long loadStarted = loadStarted();
+        Map<Long, String> versions = new HashMap<>();
+        if (!missing.isEmpty()) {
+            RedisRead read = getRedis(missing);
+            List<Long> stillMissing = new ArrayList<>();
+            for (int i = 0; i < missing.size(); i++) {
+                Long productId = missing.get(i);
+                String json = read != null ? read.values.get(i) : null;
+                ProductDTO product = null;
+                if (json != null) {
+                    try {
+                        product = objectMapper.readValue(json, ProductDTO.class);
+                        redisHitCounter.increment();
+                        putLocal(productId, product, json.length(), loadStarted);
+                    } catch (Exception e) {
+                        log.warn("Ignoring unreadable cached product {}: {}", productId, e.getMessage());
+                    }
+                }
+                if (product != null) {
+                    found.put(productId, product);
+                } else {
+                    stillMissing.add(productId);
+                    if (read != null) {
+                        versions.put(productId, read.versions.get(i));
+                    }
+                }
+            }
+            missing = stillMissing;
+        }
+
+        if (!missing.isEmpty()) {
+            missCounter.increment(missing.size());
+            List<Long> loadedIds = new ArrayList<>();
+            List<String> loadedVersions = new ArrayList<>();
+            List<String> loadedJsons = new ArrayList<>();
+            for (ProductDTO product : batchLoader.apply(missing)) {
+                found.put(product.getProductId(), product);
+                try {
+                    String json = objectMapper.writeValueAsString(product);
+                    if (versions.containsKey(product.getProductId())) {
+                        loadedIds.add(product.getProductId());
+                        loadedVersions.add(versions.get(product.getProductId()));
+                        loadedJsons.add(json);
+                    }
+                    putLocal(product.getProductId(), product, json.length(), loadStarted);
+                } catch (Exception e) {
+                    log.warn("Failed to cache product {}: {}", product.getProductId(), e.getMessage());
+                }
+            }
+            if (!loadedIds.isEmpty()) {
+                putRedis(loadedIds, loadedVersions, loadedJsons);
+            }
+        }
+        return productIds.stream().map(found::get).filter(Objects::nonNull).toList();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        evict(event.getProductId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        evictAll(event.getProductIds());
+    }
+
+    /**
+     * Drop a product from both tiers and from the local tier of the other nodes
+     */
+    public void evict(Long productId) {
+        evictAll(List.of(productId));
+    }
+
+    /**
+     * Drop several products with one Redis delete and one notification
+     */
+    public void evictAll(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        productIds.forEach(this::evictLocal);
+        if (!redisAvailable()) {
+            return;
+        }
+        try {
+            List<String> keys = new ArrayList<>();
+            productIds.forEach(productId -> {
+                keys.add(VERSION_KEY_PREFIX + productId);
+                keys.add(KEY_PREFIX + productId);
+            });
+            redisTemplate.execute(EVICT, keys, String.valueOf(versionTtlSeconds));
+            redisTemplate.convertAndSend(CHANNEL, nodeIdentity.tag(productIds.stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(","))));
+        } catch (Exception e) {
+            // Other nodes expire their copy after local-ttl-seconds
+            redisFailed("evict " + productIds.size() + " products", e);
+        }
+    }
+
+    /**
+     * Drop the products changed on another node; the body is the node ID and comma-separated product IDs
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String productIds = nodeIdentity.payloadFromOtherNode(message);
+        if (productIds == null) {
+            return;
+        }
+        try {
+            for (String productId : productIds.split(",")) {
+                evictLocal(Long.valueOf(productId));
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed product cache notification: {}", productIds);
+        }
+    }
+
+    public synchronized void clear() {
+        evictionSequence++;
+        forgottenEvictionSequence = evictionSequence;
+        recentEvictions.clear();
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized ProductDTO getLocal(Long productId) {
+        Entry entry = entries.get(productId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() < 0) {
+            entries.remove(productId);
+            totalBytes -= entry.bytes;
+            return null;
+        }
+        return entry.product;
+    }
+
+    private synchronized long loadStarted() {
+        return evictionSequence;
+    }
+
+    private synchronized void putLocal(Long productId, ProductDTO product, long bytes, long loadStarted) {
+        Long evictedAt = recentEvictions.get(productId);
+        if ((evictedAt != null && evictedAt > loadStarted) || forgottenEvictionSequence > loadStarted) {
+            return;
+        }
+        Entry previous = entries.put(productId,
+                new Entry(product, bytes, System.nanoTime() + TimeUnit.SECONDS.toNanos(localTtlSeconds)));
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        totalBytes += bytes;
+        Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > 1 && (entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            totalBytes -= it.next().getValue().bytes;
+            it.remove();
+        }
+    }
+
+    private synchronized void evictLocal(Long productId) {
+        evictionSequence++;
+        recentEvictions.remove(productId);
+        recentEvictions.put(productId, evictionSequence);
+        if (recentEvictions.size() > maxEntries) {
+            Iterator<Long> oldest = recentEvictions.values().iterator();
+            forgottenEvictionSequence = oldest.next();
+            oldest.remove();
+        }
+        Entry entry = entries.remove(productId);
+        if (entry != null) {
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * Read the cached values and the versions of several products with one MGET
+     *
+     * @return null if Redis is unavailable
+     */
+    private RedisRead getRedis(List<Long> productIds) {
+        if (!redisAvailable()) {
+            return null;
+        }
+        List<String> keys = new ArrayList<>(productIds.size() * 2);
+        productIds.forEach(productId -> keys.add(KEY_PREFIX + productId));
+        productIds.forEach(productId -> keys.add(VERSION_KEY_PREFIX + productId));
+        try {
+            List<String> read = redisTemplate.opsForValue().multiGet(keys);
+            if (read == null) {
+                return null;
+            }
+            List<String> versions = read.subList(productIds.size(), read.size()).stream()
+                    .map(version -> version != null ? version : "0")
+                    .toList();
+            return new RedisRead(read.subList(0, productIds.size()), versions);
+        } catch (Exception e) {
+            redisFailed("read " + productIds.size() + " products", e);
+            return null;
+        }
+    }
+
+    /**
+     * Write loaded products, each only if its version is still the one read before the load
+     */
+    private void putRedis(List<Long> productIds, List<String> versions, List<String> jsons) {
+        if (!redisAvailable()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(productIds.size() * 2);
+        List<String> args = new ArrayList<>(productIds.size() * 2 + 1);
+        args.add(String.valueOf(redisTtlSeconds));
+        for (int i = 0; i < productIds.size(); i++) {
+            keys.add(VERSION_KEY_PREFIX + productIds.get(i));
+            keys.add(KEY_PREFIX + productIds.get(i));
+            args.add(versions.get(i));
+            args.add(jsons.get(i));
+        }
+        try {
+            redisTemplate.execute(PUT_IF_UNCHANGED, keys, args.toArray());
+        } catch (Exception e) {
+            redisFailed("write " + productIds.size() + " products", e);
+        }
+    }
+
+    private boolean redisAvailable() {
+        return System.currentTimeMillis() >= redisRetryAt;
+    }
+
+    // Skip Redis for a while, so every request does not wait for the connection timeout
+    private void redisFailed(String action, Exception e) {
+        redisRetryAt = System.currentTimeMillis() + redisRetryMs;
+        log.warn("Product cache could not {} in Redis, using the database for {} ms: {}", action, redisRetryMs, e.getMessage());
+    }
+
+    private static class RedisRead {
+        private final List<String> values;
+        private final List<String> versions;
+
+        private RedisRead(List<String> values, List<String> versions) {
+            this.values = values;
+            this.versions = versions;
+        }
+    }
+
+    private static class Entry {
+        private final ProductDTO product;
+        private final long bytes;
+        private final long expiresAt;
+
+        private Entry(ProductDTO product, long bytes, long expiresAt) {
+            this.product = product;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.TTECHT.service.cluster;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Identity of this application instance among the nodes sharing the database and Redis.
+ *
+ * Notifications published over Redis are prefixed with it, so every listener skips the ones its own
+ * node sent the same way. Work a node runs in the background (image jobs, imports) records it as owner.
+ * A new identity is made on every start, so work left behind by a previous run is never mistaken
+ * for work this run owns.
+ */
+@Component
+public class NodeIdentity {
+
+    private final String id = UUID.randomUUID().toString();
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Notification body for the payload, "node ID|payload"
+     */
+    public String tag(String payload) {
+        return id + "|" + payload;
+    }
+
+    /**
+     * Payload of a notification published by another node
+     *
+     * @return the payload, null if this node published it or it carries no node ID
+     */
+    public String payloadFromOtherNode(Message message) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 2);
+        if (parts.length < 2 || parts[0].equals(id)) {
+            return null;
+        }
+        return parts[1];
+    }
+}
@@ -7,35 +7,49 @@ import com.example.TTECHT.dto.watermark.WatermarkRequestDTO;
 import com.example.TTECHT.dto.watermark.WatermarkResponseDTO;
 import com.example.TTECHT.dto.watermark.WatermarkDetectionDTO;
 import com.example.TTECHT.dto.watermark.WatermarkDetectionResponseDTO;
+import com.example.TTECHT.dto.watermark.WatermarkBatchDetectionDTO;
+import com.example.TTECHT.dto.watermark.WatermarkBatchDetectionResponseDTO;
 import com.example.TTECHT.dto.watermark.WatermarkUploadDTO;
 import com.example.TTECHT.dto.watermark.WatermarkUploadResponseDTO;
 import com.example.TTECHT.dto.watermark.WatermarkExtractResponseDTO;
+import com.example.TTECHT.service.watermark.DebugCapture;
+import com.example.TTECHT.service.watermark.ImagePayload;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpMessageConverterExtractor;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class WatermarkService {
 
     private final RestTemplate restTemplate;
+    private final RestTemplate uploadRestTemplate;
+    private final DebugCapture debugCapture;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Value("${watermark.service.url:http://localhost:8081/api/images}")
@@ -47,6 +61,23 @@ public class WatermarkService {
     @Value("${upload.service.url:http://localhost:8081/api/images}")
     private String uploadServiceUrl;
 
+    @Value("${watermark.detect.batch-size:50}")
+    private int detectBatchSize;
+
+    @Value("${watermark.detect.batch-retry-ms:300000}")
+    private long batchDetectRetryMs;
+
+    // Set when the image service rejects /detect/batch as unknown; batching is tried again after it
+    private volatile long batchDetectUnsupportedUntil = 0;
+
+    public WatermarkService(@Qualifier("imageServiceRestTemplate") RestTemplate restTemplate,
+                            @Qualifier("uploadServiceRestTemplate") RestTemplate uploadRestTemplate,
+                            DebugCapture debugCapture) {
+        this.restTemplate = restTemplate;
+        this.uploadRestTemplate = uploadRestTemplate;
+        this.debugCapture = debugCapture;
+    }
+
     /**
      * Calls the watermark service to add watermark to an image
      * 
@@ -186,6 +217,97 @@ public class WatermarkService {
         }
     }
     
+    /**
+     * Calls the image service to extract watermark from an uploaded image.
+     * The image is streamed into the request body instead of being serialized from a string.
+     * 
+     * @param image Uploaded image
+     * @param jsonImage JSON image
+     * @return WatermarkExtractResponseDTO containing the extracted watermark data
+     * @throws RuntimeException if the image service call fails
+     */
+    public WatermarkExtractResponseDTO extractWatermark(ImagePayload image, JsonNode jsonImage) {
+        try {
+            log.info("Calling image service to extract watermark");
+
+            WatermarkExtractResponseDTO responseBody = postStreamingJson(imageServiceUrl + "/extract",
+                WatermarkExtractResponseDTO.class, out -> {
+                    out.write("{\"suspect_image\":\"".getBytes(StandardCharsets.US_ASCII));
+                    image.writeBase64To(out);
+                    out.write("\",\"sideinfo_json_path\":".getBytes(StandardCharsets.US_ASCII));
+                    out.write(objectMapper.writeValueAsBytes(jsonImage));
+                    out.write('}');
+                });
+
+            log.info("Image service response - Success: {}, Status: {}", 
+                responseBody != null ? responseBody.isSuccess() : "null", 
+                responseBody != null ? responseBody.getStatus() : "null");
+
+            return responseBody;
+        }
+        catch (Exception e) {
+            log.error("Failed to call image service to extract watermark", e);
+            throw new RuntimeException("Failed to communicate with watermark service: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Calls the image service to embed watermark to an uploaded image.
+     * The image is streamed into the request body instead of being serialized from a string.
+     * 
+     * @param image Uploaded image
+     * @param watermarkImageBase64 Base64 encoded watermark image
+     * @param alpha Alpha value for the watermark
+     * @return WatermarkEmbedResponseDTO containing the embedded image
+     * @throws RuntimeException if the image service call fails
+     */
+    public WatermarkEmbedResponseDTO embedWatermark(ImagePayload image, String watermarkImageBase64, double alpha) {
+        try {
+            log.info("Calling image service to embed watermark");
+
+            WatermarkEmbedResponseDTO responseBody = postStreamingJson(imageServiceUrl + "/embed",
+                WatermarkEmbedResponseDTO.class, out -> {
+                    out.write("{\"original_image\":\"".getBytes(StandardCharsets.US_ASCII));
+                    image.writeBase64To(out);
+                    out.write("\",\"watermark_image\":".getBytes(StandardCharsets.US_ASCII));
+                    out.write(objectMapper.writeValueAsBytes(watermarkImageBase64));
+                    out.write((",\"alpha\":" + alpha + "}").getBytes(StandardCharsets.US_ASCII));
+                });
+
+            log.info("Image service response - Embed success: {}", responseBody != null ? responseBody.isSuccess() : "null");
+
+            return responseBody;
+        }
+        catch (Exception e) {
+            log.error("Failed to call image service to embed watermark", e);
+            throw new RuntimeException("Failed to communicate with watermark service: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * POST a JSON body written straight to the connection and read the JSON response.
+     * The body is sent chunked while it is written; request.getBody() would buffer all of it first.
+     */
+    private <T> T postStreamingJson(String url, Class<T> responseType, StreamingBody body) {
+        RequestCallback requestCallback = request -> {
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            if (request instanceof StreamingHttpOutputMessage streamingRequest) {
+                streamingRequest.setBody(body::writeTo);
+            } else {
+                // Only a buffering request factory or interceptors get here
+                body.writeTo(request.getBody());
+            }
+        };
+        ResponseExtractor<T> responseExtractor =
+            new HttpMessageConverterExtractor<>(responseType, restTemplate.getMessageConverters());
+        return restTemplate.execute(url, HttpMethod.POST, requestCallback, responseExtractor);
+    }
+
+    @FunctionalInterface
+    private interface StreamingBody {
+        void writeTo(OutputStream out) throws IOException;
+    }
+    
     /**
      * Calls the image service to detect if a watermark exists in an image
      * 
@@ -347,16 +469,123 @@ public class WatermarkService {
         }
     }
 
-    private void saveDetectionLog(Map<String, Object> logData) {
+    /**
+     * Compares one extracted watermark against many reference watermarks.
+     * References are sent to /detect/batch in chunks of {@code watermark.detect.batch-size}. A chunk the
+     * service rejects as too large is split in half and retried; if the service has no batch endpoint,
+     * the references are compared one by one with {@link #detectWatermarkWithResponse}, and the batch
+     * endpoint is tried again after {@code watermark.detect.batch-retry-ms}. No further references are
+     * compared once one matches.
+     *
+     * @param extractedWatermark Base64 encoded extracted watermark
+     * @param references Base64 encoded reference watermark images by watermark ID, in the order to compare them
+     * @return detection response per watermark ID; references that could not be compared, or come
+     *         after the first match, are absent
+     */
+    public Map<Long, WatermarkDetectionResponseDTO> detectWatermarkBatch(String extractedWatermark, Map<Long, String> references) {
+        Map<Long, WatermarkDetectionResponseDTO> results = new LinkedHashMap<>();
+        List<Map.Entry<Long, String>> entries = new ArrayList<>(references.entrySet());
+        int chunkSize = Math.max(1, detectBatchSize);
+
+        for (int from = 0; from < entries.size(); from += chunkSize) {
+            List<Map.Entry<Long, String>> chunk = entries.subList(from, Math.min(entries.size(), from + chunkSize));
+            if (detectChunk(extractedWatermark, chunk, results)) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return whether one of the references in the chunk matched
+     */
+    private boolean detectChunk(String extractedWatermark, List<Map.Entry<Long, String>> chunk,
+                                Map<Long, WatermarkDetectionResponseDTO> results) {
+        if (chunk.size() == 1 || System.currentTimeMillis() < batchDetectUnsupportedUntil) {
+            return detectOneByOne(extractedWatermark, chunk, results);
+        }
+
         try {
-            Path dir = Path.of("debug_output");
-            Files.createDirectories(dir);
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            Path file = dir.resolve(timestamp + "_detect_log.json");
-            byte[] jsonBytes = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(logData);
-            Files.write(file, jsonBytes);
-        } catch (Exception ignored) {
+            List<WatermarkBatchDetectionDTO.Reference> references = chunk.stream()
+                .map(entry -> new WatermarkBatchDetectionDTO.Reference(entry.getKey(), entry.getValue()))
+                .toList();
+            WatermarkBatchDetectionDTO request = new WatermarkBatchDetectionDTO(extractedWatermark, references);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            HttpEntity<WatermarkBatchDetectionDTO> entity = new HttpEntity<>(request, headers);
+
+            log.info("Calling image service to detect watermark against {} references", chunk.size());
+
+            ResponseEntity<WatermarkBatchDetectionResponseDTO> response = restTemplate.exchange(
+                imageServiceUrl + "/detect/batch",
+                HttpMethod.POST,
+                entity, WatermarkBatchDetectionResponseDTO.class);
+
+            WatermarkBatchDetectionResponseDTO responseBody = response.getBody();
+            if (responseBody == null || !responseBody.isSuccess() || responseBody.getData() == null
+                    || responseBody.getData().getResults() == null) {
+                log.warn("Batch detection returned unsuccessful response: {}",
+                    responseBody != null ? responseBody.getMessage() : "null");
+                return false;
+            }
+
+            boolean matched = false;
+            for (WatermarkBatchDetectionResponseDTO.ReferenceResult result : responseBody.getData().getResults()) {
+                WatermarkDetectionResponseDTO.DetectionData data = new WatermarkDetectionResponseDTO.DetectionData(
+                    result.getComparisonResults(), null, result.getDetectionResult(), result.getMetrics());
+                WatermarkDetectionResponseDTO detection = new WatermarkDetectionResponseDTO(data, responseBody.getMessage(), true);
+                results.put(result.getWatermarkId(), detection);
+                matched |= detection.isWatermarkDetected();
+            }
+            return matched;
+        } catch (HttpStatusCodeException e) {
+            HttpStatusCode status = e.getStatusCode();
+            if (status.value() == HttpStatus.PAYLOAD_TOO_LARGE.value()) {
+                int half = chunk.size() / 2;
+                log.info("Batch of {} references too large, splitting", chunk.size());
+                return detectChunk(extractedWatermark, chunk.subList(0, half), results)
+                    || detectChunk(extractedWatermark, chunk.subList(half, chunk.size()), results);
+            } else if (status.value() == HttpStatus.NOT_FOUND.value()
+                    || status.value() == HttpStatus.METHOD_NOT_ALLOWED.value()
+                    || status.value() == HttpStatus.NOT_IMPLEMENTED.value()) {
+                log.warn("Image service does not support batch detection ({}), detecting one by one for {} ms",
+                    status, batchDetectRetryMs);
+                batchDetectUnsupportedUntil = System.currentTimeMillis() + batchDetectRetryMs;
+                return detectOneByOne(extractedWatermark, chunk, results);
+            } else {
+                log.error("Failed to call batch watermark detection service: {}", e.getMessage());
+            }
+        } catch (Exception e) {
+            log.error("Failed to call batch watermark detection service: {}", e.getMessage());
         }
+        return false;
+    }
+
+    /**
+     * Compare the references in order, stopping at the first match like the per-watermark loop this replaces
+     *
+     * @return whether one of the references matched
+     */
+    private boolean detectOneByOne(String extractedWatermark, List<Map.Entry<Long, String>> chunk,
+                                   Map<Long, WatermarkDetectionResponseDTO> results) {
+        for (Map.Entry<Long, String> entry : chunk) {
+            try {
+                // Same argument order as the per-watermark loop this replaces
+                WatermarkDetectionResponseDTO detection = detectWatermarkWithResponse(extractedWatermark, entry.getValue());
+                results.put(entry.getKey(), detection);
+                if (detection != null && detection.isWatermarkDetected()) {
+                    return true;
+                }
+            } catch (Exception e) {
+                log.warn("Error checking watermark ID {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private void saveDetectionLog(Map<String, Object> logData) {
+        debugCapture.capture("detect_log", logData);
     }
 
     // Intentionally saving raw base64 as requested; no hashing/truncation helpers.
@@ -382,7 +611,7 @@ public class WatermarkService {
             log.info("Uploading image to Cloudinary, public_id: {}", publicId);
             
             // Make REST call to Cloudinary upload endpoint
-            ResponseEntity<WatermarkUploadResponseDTO> response = restTemplate.exchange(
+            ResponseEntity<WatermarkUploadResponseDTO> response = uploadRestTemplate.exchange(
                 uploadServiceUrl + "/upload",
                 HttpMethod.POST,
                 entity,
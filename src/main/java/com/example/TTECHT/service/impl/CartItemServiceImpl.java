@@ -6,6 +6,7 @@ import com.example.TTECHT.dto.request.CartItemUpdateRequest;
 import com.example.TTECHT.entity.Product;
 import com.example.TTECHT.entity.cart.Cart;
 import com.example.TTECHT.entity.cart.CartItem;
+import com.example.TTECHT.event.ProductChangedEvent;
 import com.example.TTECHT.repository.ProductColorRepository;
 import com.example.TTECHT.repository.ProductRepository;
 import com.example.TTECHT.repository.ProductSizeRepository;
@@ -16,6 +17,7 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -33,6 +35,7 @@ public class CartItemServiceImpl implements CartItemService {
     ProductRepository productRepository;
     ProductColorRepository productColorRepository;
     ProductSizeRepository productSizeRepository;
+    ApplicationEventPublisher eventPublisher;
 
 
 public CartItemResponse addItemToCart(CartItemRequest request) {
@@ -121,6 +124,7 @@ public CartItemResponse addItemToCart(CartItemRequest request) {
 
         // Update product stock in the repository
         productRepository.save(product);
+        eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId()));
         return cartItem;
     }
 
@@ -165,6 +169,7 @@ public CartItemResponse addItemToCart(CartItemRequest request) {
         // Update product stock
         product.setStockQuantity(currentStock);
         productRepository.save(product);
+        eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId()));
         return cartItem;
     }
 
@@ -209,6 +214,7 @@ public CartItemResponse addItemToCart(CartItemRequest request) {
                 cartItem.setQuantity(request.getQuantity());
                 product.setStockQuantity(currentStock);
                 productRepository.save(product);
+                eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId()));
                 updated = true;
             }
         }
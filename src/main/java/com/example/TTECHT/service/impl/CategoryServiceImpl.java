@@ -3,10 +3,12 @@ package com.example.TTECHT.service.impl;
 import com.example.TTECHT.dto.CategoryCreateDTO;
 import com.example.TTECHT.dto.CategoryDTO;
 import com.example.TTECHT.entity.Category;
+import com.example.TTECHT.event.ProductsChangedEvent;
 import com.example.TTECHT.repository.CategoryRepository;
 import com.example.TTECHT.repository.ProductRepository;
 import com.example.TTECHT.service.CategoryService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,6 +22,7 @@ public class CategoryServiceImpl implements CategoryService {
     
     private final CategoryRepository categoryRepository;
     private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
     
     @Override
     @Transactional(readOnly = true)
@@ -62,11 +65,16 @@ public class CategoryServiceImpl implements CategoryService {
             throw new RuntimeException("Category with name '" + categoryCreateDTO.getName() + "' already exists");
         }
         
+        boolean renamed = !category.getName().equals(categoryCreateDTO.getName());
         category.setName(categoryCreateDTO.getName());
         category.setDescription(categoryCreateDTO.getDescription());
         category.setImagePath(categoryCreateDTO.getImagePath());
         
         Category updatedCategory = categoryRepository.save(category);
+        if (renamed) {
+            // Cached product details and the search index hold the category name
+            eventPublisher.publishEvent(new ProductsChangedEvent(productRepository.findProductIdsByCategoryId(id)));
+        }
         return convertToDTO(updatedCategory);
     }
     
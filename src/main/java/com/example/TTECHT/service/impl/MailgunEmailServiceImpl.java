@@ -8,6 +8,7 @@ import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -51,7 +52,8 @@ public class MailgunEmailServiceImpl implements EmailService {
 
     private static final Logger logger = LoggerFactory.getLogger(MailgunEmailServiceImpl.class);
 
-    public MailgunEmailServiceImpl(JavaMailSender mailSender, RestTemplate restTemplate) {
+    public MailgunEmailServiceImpl(JavaMailSender mailSender,
+                                   @Qualifier("mailgunRestTemplate") RestTemplate restTemplate) {
         this.mailSender = mailSender;
         this.restTemplate = restTemplate;
     }
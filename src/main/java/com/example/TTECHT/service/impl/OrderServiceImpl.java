@@ -11,6 +11,7 @@ import com.example.TTECHT.entity.cart.Cart;
 import com.example.TTECHT.entity.cart.CartItem;
 import com.example.TTECHT.entity.order.Order;
 import com.example.TTECHT.entity.order.OrderItem;
+import com.example.TTECHT.event.ProductChangedEvent;
 import com.example.TTECHT.entity.user.Role;
 import com.example.TTECHT.entity.user.User;
 import com.example.TTECHT.enumuration.CancellationReason;
@@ -31,6 +32,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -55,6 +57,7 @@ public class OrderServiceImpl implements OrderService {
     ProductRepository productRepository;
     OrderItemRepository orderItemRepository;
     OrderMapper orderMapper;
+    ApplicationEventPublisher eventPublisher;
 
     private static final Set<CancellationReason> CUSTOMER_REASONS = Set.of(
             CancellationReason.CUSTOMER_CHANGED_MIND,
@@ -199,6 +202,7 @@ public class OrderServiceImpl implements OrderService {
         
         // Save all updated products in batch
         productRepository.saveAll(productsToUpdate);
+        productsToUpdate.forEach(product -> eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId())));
     }
     
     private Order createOrder(User user, OrderCreationRequest request) {
@@ -389,6 +393,7 @@ public class OrderServiceImpl implements OrderService {
         // Save all updated products in batch
         if (!productsToUpdate.isEmpty()) {
             productRepository.saveAll(productsToUpdate);
+            productsToUpdate.forEach(product -> eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId())));
             log.info("Restored stock for {} products after order cancellation", productsToUpdate.size());
         }
     }
@@ -9,6 +9,7 @@ import com.example.TTECHT.entity.PaymentItem;
 import com.example.TTECHT.entity.Product;
 import com.example.TTECHT.entity.user.User;
 import com.example.TTECHT.enumuration.PaymentStatus;
+import com.example.TTECHT.event.ProductChangedEvent;
 import com.example.TTECHT.repository.PaymentRepository;
 import com.example.TTECHT.repository.ProductRepository;
 import com.example.TTECHT.repository.user.UserRepository;
@@ -23,6 +24,7 @@ import com.stripe.param.checkout.SessionCreateParams;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -45,6 +47,7 @@ public class PaymentServiceImpl implements PaymentService {
     private final PaymentRepository paymentRepository;
     private final ProductRepository productRepository;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
     
     @Value("${stripe.webhook.secret}")
     private String webhookSecret;
@@ -311,6 +314,7 @@ public class PaymentServiceImpl implements PaymentService {
             product.setStockQuantity(product.getStockQuantity() - item.getQuantity());
             product.setSoldQuantity(product.getSoldQuantity() + item.getQuantity());
             productRepository.save(product);
+            eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId()));
         }
     }
     
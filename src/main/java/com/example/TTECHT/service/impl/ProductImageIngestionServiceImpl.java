@@ -0,0 +1,215 @@
+package com.example.TTECHT.service.impl;
+
+import com.example.TTECHT.dto.repsonse.ProductImageJobResponse;
+import com.example.TTECHT.entity.Product;
+import com.example.TTECHT.entity.ProductImageJob;
+import com.example.TTECHT.enumuration.ImageJobStatus;
+import com.example.TTECHT.event.ProductImagesSubmittedEvent;
+import com.example.TTECHT.exception.WatermarkDetectedException;
+import com.example.TTECHT.repository.ProductImageJobRepository;
+import com.example.TTECHT.repository.ProductRepository;
+import com.example.TTECHT.service.ProductImageIngestionService;
+import com.example.TTECHT.service.cluster.NodeIdentity;
+import com.example.TTECHT.service.watermark.ImagePayload;
+import com.example.TTECHT.service.watermark.StoreFairScheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Runs uploaded product images through the watermark pipeline on a bounded worker pool.
+ *
+ * The product and one QUEUED job per image are committed by ProductServiceImpl; once that
+ * transaction commits the images are queued on the StoreFairScheduler, which shares the worker
+ * pool fairly between stores, and each job is updated as its image is matched, embedded and uploaded.
+ * Workers hold no transaction while calling the image service; each job status update commits on its own.
+ *
+ * Jobs record the node that runs them, which refreshes their updated_at every heartbeat-ms while they
+ * are unfinished. A job whose node stopped doing so for stale-after-ms (it crashed or was restarted)
+ * lost its image data and is failed by whichever node notices first; jobs of live nodes are left alone.
+ */
+@Service
+@Slf4j
+public class ProductImageIngestionServiceImpl implements ProductImageIngestionService {
+
+    private static final List<ImageJobStatus> UNFINISHED = List.of(ImageJobStatus.QUEUED, ImageJobStatus.PROCESSING);
+
+    private final ProductImageJobRepository productImageJobRepository;
+    private final ProductRepository productRepository;
+    private final ProductServiceImpl productService;
+    private final StoreFairScheduler storeFairScheduler;
+    private final NodeIdentity nodeIdentity;
+
+    // Well above heartbeat-ms, so a busy node or small clock skew never gets its jobs failed
+    @Value("${product.image-ingestion.stale-after-ms:300000}")
+    private long staleAfterMs;
+
+    public ProductImageIngestionServiceImpl(ProductImageJobRepository productImageJobRepository,
+                                            ProductRepository productRepository,
+                                            ProductServiceImpl productService,
+                                            StoreFairScheduler storeFairScheduler,
+                                            NodeIdentity nodeIdentity) {
+        this.productImageJobRepository = productImageJobRepository;
+        this.productRepository = productRepository;
+        this.productService = productService;
+        this.storeFairScheduler = storeFairScheduler;
+        this.nodeIdentity = nodeIdentity;
+    }
+
+    @Override
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onImagesSubmitted(ProductImagesSubmittedEvent event) {
+        // The slot was reserved by ProductServiceImpl while the request was open
+        storeFairScheduler.submit(event.getStoreName(), () -> processImages(event));
+        log.info("Queued {} images of product {} for watermark processing", event.getImages().size(), event.getProductId());
+    }
+
+    /**
+     * The product was never saved, so the spooled upload files are not needed anymore
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_ROLLBACK)
+    public void onImagesRejected(ProductImagesSubmittedEvent event) {
+        storeFairScheduler.release(event.getStoreName());
+        event.getImages().forEach(ImagePayload::discard);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ProductImageJobResponse> getImageJobs(Long productId) {
+        return productImageJobRepository.findByProductIdOrderByImageIndexAsc(productId).stream()
+                .map(this::toResponse)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Jobs that were queued or running on a node that stopped lost their image data
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void failInterruptedJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        int interrupted = productImageJobRepository.updateStatusOfAbandonedJobs(
+                UNFINISHED,
+                ImageJobStatus.FAILED,
+                "Interrupted by application restart, please upload the image again",
+                nodeIdentity.getId(),
+                now.minus(Duration.ofMillis(staleAfterMs)),
+                now);
+        if (interrupted > 0) {
+            log.warn("Marked {} interrupted image jobs as failed", interrupted);
+        }
+    }
+
+    /**
+     * Show the other nodes that this node still runs its unfinished jobs, then look for abandoned ones
+     */
+    @Scheduled(fixedDelayString = "${product.image-ingestion.heartbeat-ms:60000}",
+            initialDelayString = "${product.image-ingestion.heartbeat-ms:60000}")
+    @Transactional
+    public void heartbeat() {
+        productImageJobRepository.touchOwnedJobs(nodeIdentity.getId(), UNFINISHED, LocalDateTime.now());
+        failInterruptedJobs();
+    }
+
+    private void processImages(ProductImagesSubmittedEvent event) {
+        try {
+            processJobs(event);
+        } finally {
+            event.getImages().forEach(ImagePayload::discard);
+        }
+    }
+
+    private void processJobs(ProductImagesSubmittedEvent event) {
+        Long productId = event.getProductId();
+        Product product = productRepository.findById(productId).orElse(null);
+        if (product == null) {
+            log.warn("Product {} was deleted before its images were processed", productId);
+            failRemaining(event, "Product no longer exists");
+            return;
+        }
+
+        String watermarkImageBase64;
+        try {
+            watermarkImageBase64 = productService.getStoreWatermarkImageBase64(event.getStoreName());
+        } catch (Exception e) {
+            log.error("Error getting watermark for store: {}", event.getStoreName(), e);
+            failRemaining(event, "Failed to get watermark for store: " + event.getStoreName());
+            return;
+        }
+
+        for (int i = 0; i < event.getJobIds().size(); i++) {
+            // Jobs of an upload that was replaced in the meantime are gone
+            ProductImageJob job = productImageJobRepository.findById(event.getJobIds().get(i)).orElse(null);
+            if (job == null || job.getStatus() != ImageJobStatus.QUEUED) {
+                continue;
+            }
+            updateJob(job, ImageJobStatus.PROCESSING, null, null);
+
+            int imageIndex = job.getImageIndex();
+            WatermarkDetectedException watermarkException = new WatermarkDetectedException(
+                    "Watermark detection occurred during image processing", event.getStoreName());
+            try {
+                productService.processProductImage(product, event.getImages().get(i),
+                        watermarkImageBase64, imageIndex, watermarkException);
+
+                if (watermarkException.hasDetections()) {
+                    productService.saveWatermarkDetectionHistoryDirect(product, watermarkException);
+                    updateJob(job, ImageJobStatus.WATERMARK_DETECTED, watermarkException.getDetectionSummary(),
+                            parseWatermarkId(watermarkException.getDetectedWatermarkIds().get(0)));
+                } else {
+                    updateJob(job, ImageJobStatus.COMPLETED, null, null);
+                }
+            } catch (Exception e) {
+                log.error("Error processing image {} for product {}", imageIndex, productId, e);
+                updateJob(job, ImageJobStatus.FAILED, e.getMessage(), null);
+            }
+        }
+    }
+
+    private void updateJob(ProductImageJob job, ImageJobStatus status, String message, Long detectedWatermarkId) {
+        job.setStatus(status);
+        job.setMessage(message != null && message.length() > 1000 ? message.substring(0, 1000) : message);
+        job.setDetectedWatermarkId(detectedWatermarkId);
+        productImageJobRepository.save(job);
+    }
+
+    private void failRemaining(ProductImagesSubmittedEvent event, String message) {
+        for (ProductImageJob job : productImageJobRepository.findAllById(event.getJobIds())) {
+            if (job.getStatus() == ImageJobStatus.QUEUED || job.getStatus() == ImageJobStatus.PROCESSING) {
+                updateJob(job, ImageJobStatus.FAILED, message, null);
+            }
+        }
+    }
+
+    private Long parseWatermarkId(String watermarkId) {
+        try {
+            return watermarkId != null ? Long.parseLong(watermarkId) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private ProductImageJobResponse toResponse(ProductImageJob job) {
+        return ProductImageJobResponse.builder()
+                .jobId(job.getJobId())
+                .productId(job.getProductId())
+                .imageIndex(job.getImageIndex())
+                .status(job.getStatus())
+                .message(job.getMessage())
+                .detectedWatermarkId(job.getDetectedWatermarkId())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,736 @@
+package com.example.TTECHT.service.impl;
+
+import com.example.TTECHT.dto.ProductCreateDTO;
+import com.example.TTECHT.dto.repsonse.CursorPageResponse;
+import com.example.TTECHT.dto.repsonse.ProductImportErrorResponse;
+import com.example.TTECHT.dto.repsonse.ProductImportResponse;
+import com.example.TTECHT.entity.ProductImport;
+import com.example.TTECHT.entity.ProductImportError;
+import com.example.TTECHT.entity.user.User;
+import com.example.TTECHT.enumuration.ProductImportStatus;
+import com.example.TTECHT.event.ProductsChangedEvent;
+import com.example.TTECHT.exception.PayloadTooLargeException;
+import com.example.TTECHT.exception.TooManyRequestsException;
+import com.example.TTECHT.repository.CategoryRepository;
+import com.example.TTECHT.repository.ProductImportErrorRepository;
+import com.example.TTECHT.repository.ProductImportRepository;
+import com.example.TTECHT.repository.user.SellerRepository;
+import com.example.TTECHT.repository.user.UserRepository;
+import com.example.TTECHT.service.ProductImportService;
+import com.example.TTECHT.service.cluster.NodeIdentity;
+import com.example.TTECHT.service.watermark.Base64ImagePayload;
+import com.example.TTECHT.service.watermark.ImagePayload;
+import com.example.TTECHT.service.watermark.StoreFairScheduler;
+import com.example.TTECHT.service.watermark.WatermarkRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk product import from NDJSON (one ProductCreateDTO per line) or CSV (header row naming the
+ * ProductCreateDTO fields; colors, sizes and images separated by '|').
+ *
+ * The request body is spooled to a temporary file and imported in the background. Rows are parsed
+ * one at a time, validated against the category IDs loaded once per import, and written in chunks:
+ * products, colors and sizes each go in one JDBC batch per chunk. Images are handed to the
+ * asynchronous watermark pipeline; the importer waits for a StoreFairScheduler slot before reading
+ * on, so a large import is paced by the pipeline instead of piling images up in memory.
+ * Progress and the per-row errors are stored as the chunks commit. Column limits are checked by the
+ * validation; should the database still refuse a chunk, its rows are saved one by one and only the
+ * refused rows are reported as failed.
+ *
+ * The spooled file only exists on the node that received the upload. That node refreshes updated_at
+ * of its unfinished imports every heartbeat-ms; an import whose node stopped doing so for
+ * stale-after-ms lost its file and is failed by whichever node notices first.
+ */
+@Service
+@Slf4j
+public class ProductImportServiceImpl implements ProductImportService {
+
+    private static final List<ProductImportStatus> UNFINISHED = List.of(ProductImportStatus.QUEUED, ProductImportStatus.RUNNING);
+
+    private static final String INSERT_PRODUCT = "INSERT INTO product (store_name, category_id, name, description, price, " +
+            "stock_quantity, seller_id, sold_quantity, brand, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?, ?)";
+    private static final String INSERT_COLOR = "INSERT INTO product_color (product_id, color) VALUES (?, ?)";
+    private static final String INSERT_SIZE = "INSERT INTO product_size (product_id, size) VALUES (?, ?)";
+
+    private final ProductImportRepository productImportRepository;
+    private final ProductImportErrorRepository productImportErrorRepository;
+    private final CategoryRepository categoryRepository;
+    private final UserRepository userRepository;
+    private final SellerRepository sellerRepository;
+    private final WatermarkRegistry watermarkRegistry;
+    private final StoreFairScheduler storeFairScheduler;
+    private final ProductServiceImpl productService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor executor;
+    private final NodeIdentity nodeIdentity;
+
+    @Value("${product.import.spool-dir:${java.io.tmpdir}/ttecht-import-spool}")
+    private String spoolDir;
+
+    // Larger request bodies are rejected with 413 while they are spooled
+    @Value("${product.import.max-bytes:536870912}")
+    private long maxBytes;
+
+    @Value("${product.import.chunk-size:500}")
+    private int chunkSize;
+
+    // A chunk is also written early once its rows hold this many bytes of base64 images
+    @Value("${product.import.max-chunk-image-bytes:67108864}")
+    private long maxChunkImageBytes;
+
+    @Value("${product.import.image-wait-ms:600000}")
+    private long imageWaitMs;
+
+    @Value("${product.import.max-stored-errors:1000}")
+    private int maxStoredErrors;
+
+    // Well above heartbeat-ms, so a busy node or small clock skew never gets its imports failed
+    @Value("${product.import.stale-after-ms:300000}")
+    private long staleAfterMs;
+
+    public ProductImportServiceImpl(ProductImportRepository productImportRepository,
+                                    ProductImportErrorRepository productImportErrorRepository,
+                                    CategoryRepository categoryRepository,
+                                    UserRepository userRepository,
+                                    SellerRepository sellerRepository,
+                                    WatermarkRegistry watermarkRegistry,
+                                    StoreFairScheduler storeFairScheduler,
+                                    ProductServiceImpl productService,
+                                    JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    Validator validator,
+                                    ObjectMapper objectMapper,
+                                    ApplicationEventPublisher eventPublisher,
+                                    @Qualifier("productImportExecutor") ThreadPoolTaskExecutor executor,
+                                    NodeIdentity nodeIdentity) {
+        this.productImportRepository = productImportRepository;
+        this.productImportErrorRepository = productImportErrorRepository;
+        this.categoryRepository = categoryRepository;
+        this.userRepository = userRepository;
+        this.sellerRepository = sellerRepository;
+        this.watermarkRegistry = watermarkRegistry;
+        this.storeFairScheduler = storeFairScheduler;
+        this.productService = productService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.executor = executor;
+        this.nodeIdentity = nodeIdentity;
+    }
+
+    @Override
+    public ProductImportResponse startImport(InputStream body, String format, String sellerUsername) {
+        User seller = userRepository.findByUsername(sellerUsername)
+                .orElseThrow(() -> new RuntimeException("Seller not found: " + sellerUsername));
+
+        Path file = spool(body, format);
+
+        ProductImport productImport = productImportRepository.save(ProductImport.builder()
+                .sellerUsername(sellerUsername)
+                .format(format)
+                .status(ProductImportStatus.QUEUED)
+                .ownerNode(nodeIdentity.getId())
+                .build());
+        Long importId = productImport.getImportId();
+
+        try {
+            executor.execute(() -> runImport(importId, seller.getId(), format, file));
+        } catch (TaskRejectedException e) {
+            deleteQuietly(file);
+            productImport.setStatus(ProductImportStatus.FAILED);
+            productImport.setMessage("Too many imports are running");
+            productImportRepository.save(productImport);
+            throw new TooManyRequestsException("Too many imports are running, please try again later", 60L);
+        }
+        log.info("Queued {} product import {} of seller {}", format, importId, sellerUsername);
+        return toResponse(productImport);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ProductImportResponse getImport(Long importId, String sellerUsername) {
+        return toResponse(findOwnImport(importId, sellerUsername));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPageResponse<ProductImportErrorResponse> getImportErrors(Long importId, String sellerUsername,
+                                                                          Integer afterRow, int limit) {
+        findOwnImport(importId, sellerUsername);
+        List<ProductImportError> errors = productImportErrorRepository.findByImportIdAndRowNumberGreaterThanOrderByRowNumberAsc(
+                importId, afterRow != null ? afterRow : 0, Limit.of(limit + 1));
+        boolean hasMore = errors.size() > limit;
+        List<ProductImportError> page = hasMore ? errors.subList(0, limit) : errors;
+        return CursorPageResponse.<ProductImportErrorResponse>builder()
+                .items(page.stream()
+                        .map(error -> new ProductImportErrorResponse(error.getRowNumber(), error.getMessage()))
+                        .collect(Collectors.toList()))
+                .nextCursor(hasMore ? String.valueOf(page.get(page.size() - 1).getRowNumber()) : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * Copy the request body to the spool file, counting the bytes so an oversized body is rejected
+     * before it fills the disk
+     */
+    private Path spool(InputStream body, String format) {
+        Path file = null;
+        try {
+            Path dir = Files.createDirectories(Path.of(spoolDir));
+            file = Files.createTempFile(dir, "import-", "." + format);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                byte[] buffer = new byte[64 * 1024];
+                long total = 0;
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxBytes) {
+                        throw new PayloadTooLargeException("Import file is larger than the limit of " + maxBytes + " bytes");
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+            return file;
+        } catch (IOException e) {
+            log.error("Failed to spool product import: {}", e.getMessage(), e);
+            deleteQuietly(file);
+            throw new RuntimeException("Failed to store the import file: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Imports that were queued or running on a node that stopped lost their spooled file
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void failInterruptedImports() {
+        LocalDateTime now = LocalDateTime.now();
+        int interrupted = productImportRepository.updateStatusOfAbandonedImports(
+                UNFINISHED,
+                ProductImportStatus.FAILED,
+                "Interrupted by application restart, rows imported so far were kept",
+                nodeIdentity.getId(),
+                now.minus(Duration.ofMillis(staleAfterMs)),
+                now);
+        if (interrupted > 0) {
+            log.warn("Marked {} interrupted product imports as failed", interrupted);
+        }
+    }
+
+    /**
+     * Show the other nodes that this node still runs its unfinished imports, then look for abandoned ones
+     */
+    @Scheduled(fixedDelayString = "${product.import.heartbeat-ms:60000}",
+            initialDelayString = "${product.import.heartbeat-ms:60000}")
+    @Transactional
+    public void heartbeat() {
+        productImportRepository.touchOwnedImports(nodeIdentity.getId(), UNFINISHED, LocalDateTime.now());
+        failInterruptedImports();
+    }
+
+    private void runImport(Long importId, Long sellerId, String format, Path file) {
+        ProductImport productImport = productImportRepository.findById(importId).orElseThrow();
+        productImport.setStatus(ProductImportStatus.RUNNING);
+        productImport = productImportRepository.save(productImport);
+        long start = System.nanoTime();
+
+        ImportContext context = new ImportContext(importId, sellerId, new HashSet<>(categoryRepository.findAllIds()));
+        List<ImportRow> chunk = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RowReader rows = FORMAT_CSV.equals(format) ? new CsvRowReader(reader) : new NdjsonRowReader(reader);
+            long chunkImageBytes = 0;
+            ImportRow row;
+            while ((row = rows.next()) != null) {
+                validate(row, context);
+                if (row.error == null && row.hasImages()) {
+                    String storeName = row.product.getStoreName();
+                    if (!storeFairScheduler.reserve(storeName, 0)) {
+                        // Hand the reserved images of the pending chunk to the pipeline before waiting on it
+                        productImport = writeChunk(productImport, chunk, context);
+                        chunk.clear();
+                        chunkImageBytes = 0;
+                        row.imagesReserved = storeFairScheduler.reserve(storeName, imageWaitMs);
+                        if (!row.imagesReserved) {
+                            // The product is still imported, without images
+                            row.warning = "Images were not queued because the watermark pipeline stayed full, please upload them again";
+                        }
+                    } else {
+                        row.imagesReserved = true;
+                    }
+                }
+                chunk.add(row);
+                chunkImageBytes += row.imageBytes();
+                if (chunk.size() >= chunkSize || chunkImageBytes >= maxChunkImageBytes) {
+                    productImport = writeChunk(productImport, chunk, context);
+                    chunk.clear();
+                    chunkImageBytes = 0;
+                }
+            }
+            productImport = writeChunk(productImport, chunk, context);
+            chunk.clear();
+
+            productImport.setStatus(ProductImportStatus.COMPLETED);
+            productImport.setMessage(context.errorCount > context.storedErrors
+                    ? "Only the first " + context.storedErrors + " row errors were stored" : null);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.error("Product import {} failed: {}", importId, e.getMessage(), e);
+            productImport.setStatus(ProductImportStatus.FAILED);
+            String message = "Import stopped after " + productImport.getProcessedRows() + " rows: " + e.getMessage();
+            productImport.setMessage(message.length() > 1000 ? message.substring(0, 1000) : message);
+        } finally {
+            chunk.stream()
+                    .filter(row -> row.imagesReserved)
+                    .forEach(row -> storeFairScheduler.release(row.product.getStoreName()));
+            deleteQuietly(file);
+        }
+        productImport.setCompletedAt(LocalDateTime.now());
+        productImportRepository.save(productImport);
+        log.info("Product import {} {}: {} rows imported, {} failed in {} ms", importId, productImport.getStatus(),
+                productImport.getImportedRows(), productImport.getFailedRows(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void validate(ImportRow row, ImportContext context) {
+        if (row.error != null) {
+            return;
+        }
+        ProductCreateDTO product = row.product;
+        Set<ConstraintViolation<ProductCreateDTO>> violations = validator.validate(product);
+        if (!violations.isEmpty()) {
+            row.error = violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            return;
+        }
+        if (!context.categoryIds.contains(product.getCategoryId())) {
+            row.error = "Category not found with ID: " + product.getCategoryId();
+            return;
+        }
+        if (!context.storeExists.computeIfAbsent(product.getStoreName(),
+                storeName -> sellerRepository.findByStoreName(storeName).isPresent())) {
+            row.error = "Store does not exist: " + product.getStoreName();
+            return;
+        }
+
+        if (row.hasImages() && !watermarkRegistry.existsByStoreName(product.getStoreName())) {
+            row.error = "Watermark not found for store: " + product.getStoreName();
+        }
+    }
+
+    private ProductImport writeChunk(ProductImport productImport, List<ImportRow> chunk, ImportContext context)
+            throws InterruptedException {
+        if (chunk.isEmpty()) {
+            return productImport;
+        }
+        try {
+            List<ImportRow> valid = chunk.stream().filter(row -> row.error == null).collect(Collectors.toList());
+            try {
+                insertRows(valid, context.sellerId);
+            } catch (DataIntegrityViolationException e) {
+                // A row the validation let through was refused by the database, save the rows one by one to find it
+                log.warn("Product import {} retries a chunk of {} rows one by one: {}", context.importId, valid.size(),
+                        e.getMostSpecificCause().getMessage());
+                for (ImportRow row : valid) {
+                    retryRow(row, context.sellerId);
+                }
+            }
+        } finally {
+            // Reservations never handed to the pipeline
+            for (ImportRow row : chunk) {
+                if (row.imagesReserved) {
+                    storeFairScheduler.release(row.product.getStoreName());
+                    row.imagesReserved = false;
+                }
+            }
+        }
+        long imported = chunk.stream().filter(row -> row.error == null).count();
+
+        List<ProductImportError> errors = new ArrayList<>();
+        for (ImportRow row : chunk) {
+            String message = row.error != null ? row.error : row.warning;
+            if (message == null) {
+                continue;
+            }
+            context.errorCount++;
+            if (context.storedErrors < maxStoredErrors) {
+                context.storedErrors++;
+                errors.add(ProductImportError.builder()
+                        .importId(context.importId)
+                        .rowNumber(row.rowNumber)
+                        .message(message.length() > 1000 ? message.substring(0, 1000) : message)
+                        .build());
+            }
+        }
+        productImportErrorRepository.saveAll(errors);
+
+        productImport.setProcessedRows(productImport.getProcessedRows() + chunk.size());
+        productImport.setImportedRows(productImport.getImportedRows() + (int) imported);
+        productImport.setFailedRows(productImport.getFailedRows() + chunk.size() - (int) imported);
+        return productImportRepository.save(productImport);
+    }
+
+    /**
+     * Insert the rows, their colors and sizes in one transaction and hand their images to the pipeline
+     */
+    private void insertRows(List<ImportRow> rows, Long sellerId) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                insertProducts(rows, sellerId);
+                insertValues(INSERT_COLOR, rows, row -> row.product.getColors());
+                insertValues(INSERT_SIZE, rows, row -> row.product.getSizes());
+                eventPublisher.publishEvent(new ProductsChangedEvent(
+                        rows.stream().map(row -> row.productId).collect(Collectors.toList())));
+                for (ImportRow row : rows) {
+                    if (row.imagesReserved) {
+                        // The reservation is released by the pipeline if this transaction rolls back
+                        productService.queueReservedImages(row.productId, toImagePayloads(row.product.getImages()),
+                                row.product.getStoreName());
+                        row.imagesReserved = false;
+                        row.imagesQueued = true;
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            rows.forEach(row -> row.productId = null);
+            throw e;
+        }
+    }
+
+    private void retryRow(ImportRow row, Long sellerId) throws InterruptedException {
+        if (row.imagesQueued) {
+            // Released by the pipeline when the chunk rolled back; take a slot again if one is free
+            row.imagesQueued = false;
+            row.imagesReserved = storeFairScheduler.reserve(row.product.getStoreName(), 0);
+            if (!row.imagesReserved) {
+                row.warning = "Images were not queued because the watermark pipeline stayed full, please upload them again";
+            }
+        }
+        try {
+            insertRows(List.of(row), sellerId);
+        } catch (DataIntegrityViolationException e) {
+            row.error = "Could not be saved: " + e.getMostSpecificCause().getMessage();
+        }
+    }
+
+    private void insertProducts(List<ImportRow> rows, Long sellerId) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_PRODUCT, new String[]{"product_id"})) {
+                for (ImportRow row : rows) {
+                    ProductCreateDTO product = row.product;
+                    statement.setString(1, product.getStoreName());
+                    statement.setLong(2, product.getCategoryId());
+                    statement.setString(3, product.getName());
+                    statement.setString(4, product.getDescription());
+                    statement.setBigDecimal(5, product.getPrice());
+                    statement.setInt(6, product.getStockQuantity());
+                    statement.setLong(7, sellerId);
+                    statement.setString(8, product.getBrand());
+                    statement.setTimestamp(9, now);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (ImportRow row : rows) {
+                        if (!keys.next()) {
+                            throw new IllegalStateException("Missing generated product ID");
+                        }
+                        row.productId = keys.getLong(1);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private void insertValues(String sql, List<ImportRow> rows, Function<ImportRow, List<String>> values) {
+        List<Object[]> args = new ArrayList<>();
+        for (ImportRow row : rows) {
+            List<String> rowValues = values.apply(row);
+            if (rowValues != null) {
+                rowValues.stream()
+                        .filter(value -> value != null && !value.isBlank())
+                        .forEach(value -> args.add(new Object[]{row.productId, value.trim()}));
+            }
+        }
+        if (!args.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, args);
+        }
+    }
+
+    private List<ImagePayload> toImagePayloads(List<String> images) {
+        return images.stream().map(Base64ImagePayload::new).collect(Collectors.toList());
+    }
+
+    private ProductImport findOwnImport(Long importId, String sellerUsername) {
+        return productImportRepository.findById(importId)
+                .filter(productImport -> productImport.getSellerUsername().equals(sellerUsername))
+                .orElseThrow(() -> new RuntimeException("Product import not found with ID: " + importId));
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete import file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private ProductImportResponse toResponse(ProductImport productImport) {
+        return ProductImportResponse.builder()
+                .importId(productImport.getImportId())
+                .format(productImport.getFormat())
+                .status(productImport.getStatus())
+                .processedRows(productImport.getProcessedRows())
+                .importedRows(productImport.getImportedRows())
+                .failedRows(productImport.getFailedRows())
+                .message(productImport.getMessage())
+                .createdAt(productImport.getCreatedAt())
+                .updatedAt(productImport.getUpdatedAt())
+                .completedAt(productImport.getCompletedAt())
+                .build();
+    }
+
+    private static class ImportContext {
+        private final Long importId;
+        private final Long sellerId;
+        private final Set<Long> categoryIds;
+        private final Map<String, Boolean> storeExists = new HashMap<>();
+        private int errorCount;
+        private int storedErrors;
+
+        private ImportContext(Long importId, Long sellerId, Set<Long> categoryIds) {
+            this.importId = importId;
+            this.sellerId = sellerId;
+            this.categoryIds = categoryIds;
+        }
+    }
+
+    private static class ImportRow {
+        private final int rowNumber;
+        private final ProductCreateDTO product;
+        private String error;
+        private String warning;
+        private boolean imagesReserved;
+        // Handed to the pipeline by the last insert attempt
+        private boolean imagesQueued;
+        private Long productId;
+
+        private ImportRow(int rowNumber, ProductCreateDTO product, String error) {
+            this.rowNumber = rowNumber;
+            this.product = product;
+            this.error = error;
+        }
+
+        private boolean hasImages() {
+            return product.getImages() != null && !product.getImages().isEmpty();
+        }
+
+        private long imageBytes() {
+            if (error != null || product.getImages() == null) {
+                return 0;
+            }
+            return product.getImages().stream().mapToLong(image -> image != null ? image.length() : 0).sum();
+        }
+    }
+
+    private interface RowReader {
+        // Next row, or null at the end of the input
+        ImportRow next() throws IOException;
+    }
+
+    private class NdjsonRowReader implements RowReader {
+        private final BufferedReader reader;
+        private int rowNumber;
+
+        private NdjsonRowReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public ImportRow next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+                rowNumber++;
+            } while (line.isBlank());
+
+            try {
+                return new ImportRow(rowNumber, objectMapper.readValue(line, ProductCreateDTO.class), null);
+            } catch (JsonProcessingException e) {
+                return new ImportRow(rowNumber, null, "Invalid JSON: " + e.getOriginalMessage());
+            }
+        }
+    }
+
+    private static class CsvRowReader implements RowReader {
+        private final Reader reader;
+        private final Map<String, Integer> columns = new HashMap<>();
+        private int rowNumber;
+
+        private CsvRowReader(Reader reader) throws IOException {
+            this.reader = reader;
+            List<String> header = readRecord();
+            if (header == null) {
+                return;
+            }
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).trim(), i);
+            }
+        }
+
+        @Override
+        public ImportRow next() throws IOException {
+            List<String> record;
+            do {
+                record = readRecord();
+                if (record == null) {
+                    return null;
+                }
+                rowNumber++;
+            } while (record.size() == 1 && record.get(0).isBlank());
+
+            try {
+                ProductCreateDTO product = new ProductCreateDTO();
+                product.setStoreName(value(record, "storeName"));
+                product.setCategoryId(value(record, "categoryId") != null ? Long.valueOf(value(record, "categoryId")) : null);
+                product.setName(value(record, "name"));
+                product.setDescription(value(record, "description"));
+                product.setPrice(value(record, "price") != null ? new BigDecimal(value(record, "price")) : null);
+                product.setStockQuantity(value(record, "stockQuantity") != null ? Integer.valueOf(value(record, "stockQuantity")) : null);
+                product.setBrand(value(record, "brand"));
+                product.setColors(list(record, "colors"));
+                product.setSizes(list(record, "sizes"));
+                product.setImages(list(record, "images"));
+                return new ImportRow(rowNumber, product, null);
+            } catch (NumberFormatException e) {
+                return new ImportRow(rowNumber, null, "Invalid number: " + e.getMessage());
+            }
+        }
+
+        private String value(List<String> record, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= record.size() || record.get(index).isBlank()) {
+                return null;
+            }
+            return record.get(index).trim();
+        }
+
+        private List<String> list(List<String> record, String column) {
+            String value = value(record, column);
+            return value == null ? null : Arrays.stream(value.split("\\|"))
+                    .map(String::trim)
+                    .filter(item -> !item.isEmpty())
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * Read one RFC 4180 record; quoted fields may contain commas, quotes ("") and line breaks
+         */
+        private List<String> readRecord() throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            while (c != -1) {
+                if (quoted) {
+                    if (c == '"') {
+                        reader.mark(1);
+                        int next = reader.read();
+                        if (next == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            reader.reset();
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
@@ -2,18 +2,21 @@ package com.example.TTECHT.service.impl;
 
 import com.example.TTECHT.dto.ProductCreateDTO;
 import com.example.TTECHT.dto.ProductDTO;
+import com.example.TTECHT.dto.repsonse.CursorPageResponse;
 import com.example.TTECHT.entity.Category;
 import com.example.TTECHT.entity.Product;
 import com.example.TTECHT.entity.ProductColor;
 import com.example.TTECHT.entity.ProductImage;
+import com.example.TTECHT.entity.ProductImageJob;
 import com.example.TTECHT.entity.ProductSize;
+import com.example.TTECHT.entity.WatermarkMetadata;
 import com.example.TTECHT.entity.user.User;
 import com.example.TTECHT.repository.ProductColorRepository;
+import com.example.TTECHT.repository.ProductImageJobRepository;
 import com.example.TTECHT.repository.ProductImageRepository;
 import com.example.TTECHT.repository.user.SellerRepository;
 import com.example.TTECHT.repository.ProductRepository;
 import com.example.TTECHT.repository.ProductSizeRepository;
-import com.example.TTECHT.repository.watermark.WatermarkRepository;
 import com.example.TTECHT.repository.watermark.WatermarkDetectionHistoryRepository;
 import com.example.TTECHT.entity.watermark.Watermark;
 import com.example.TTECHT.entity.watermark.WatermarkDetectionHistory;
@@ -21,22 +24,48 @@ import com.example.TTECHT.repository.user.UserRepository;
 import com.example.TTECHT.service.CategoryService;
 import com.example.TTECHT.service.ProductService;
 import com.example.TTECHT.service.external.WatermarkService;
+import com.example.TTECHT.service.blob.ContentBlobStore;
+import com.example.TTECHT.service.cache.ProductDetailCache;
+import com.example.TTECHT.service.cluster.NodeIdentity;
+import com.example.TTECHT.service.search.ProductSearchQuery;
+import com.example.TTECHT.service.search.ProductListingCursor;
+import com.example.TTECHT.service.search.ProductSearchIndex;
+import com.example.TTECHT.service.watermark.Base64ImagePayload;
+import com.example.TTECHT.service.watermark.DebugCapture;
+import com.example.TTECHT.service.watermark.ImageContentHash;
+import com.example.TTECHT.service.watermark.ImagePayload;
+import com.example.TTECHT.service.watermark.WatermarkCandidateImage;
+import com.example.TTECHT.service.watermark.WatermarkCandidateSnapshot;
+import com.example.TTECHT.service.watermark.StoreFairScheduler;
+import com.example.TTECHT.service.watermark.PerceptualHasher;
+import com.example.TTECHT.service.watermark.WatermarkDetectionCache;
+import com.example.TTECHT.service.watermark.WatermarkDetectionResult;
+import com.example.TTECHT.service.watermark.WatermarkRegistry;
+import com.example.TTECHT.service.watermark.WatermarkMatchResult;
+import com.example.TTECHT.service.watermark.WatermarkMetadataCandidate;
+import com.example.TTECHT.service.watermark.WatermarkMetadataMatcher;
+import com.example.TTECHT.service.watermark.WatermarkMetadataRegistry;
 import com.example.TTECHT.dto.watermark.WatermarkEmbedResponseDTO;
 import com.example.TTECHT.dto.watermark.WatermarkExtractDTO;
 import com.example.TTECHT.dto.watermark.WatermarkExtractResponseDTO;
 import com.example.TTECHT.dto.watermark.WatermarkUploadResponseDTO;
 import com.example.TTECHT.dto.watermark.WatermarkDetectionResponseDTO;
+import com.example.TTECHT.enumuration.ImageJobStatus;
+import com.example.TTECHT.event.ProductChangedEvent;
+import com.example.TTECHT.event.ProductImagesSubmittedEvent;
 import com.example.TTECHT.exception.WatermarkDetectedException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.annotation.Propagation;
@@ -45,28 +74,25 @@ import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.Base64;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.io.FileWriter;
-import java.io.File;
-import java.time.format.DateTimeFormatter;
-
-// Helper class to hold watermark detection results
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
-class WatermarkDetectionResult {
-    private String watermarkId;
-    private com.fasterxml.jackson.databind.JsonNode detectionResponse;
-    private String detectStatus;
-    private String watermarkBase64;
-}
 
 @Service
 @RequiredArgsConstructor
@@ -78,46 +104,99 @@ public class ProductServiceImpl implements ProductService {
     private final ProductColorRepository productColorRepository;
     private final ProductSizeRepository productSizeRepository;
     private final ProductImageRepository productImageRepository;
-    private final WatermarkRepository watermarkRepository;
+    private final WatermarkRegistry watermarkRegistry;
     private final WatermarkDetectionHistoryRepository watermarkDetectionHistoryRepository;
     private final CategoryService categoryService;
     private final UserRepository userRepository;
     private final WatermarkService watermarkService;
     private final SellerRepository sellerRepository;
+    private final WatermarkMetadataMatcher watermarkMetadataMatcher;
+    private final DebugCapture debugCapture;
+    private final ContentBlobStore contentBlobStore;
+    private final WatermarkMetadataRegistry watermarkMetadataRegistry;
+    private final WatermarkCandidateSnapshot watermarkCandidateSnapshot;
+    private final StoreFairScheduler storeFairScheduler;
+    private final WatermarkDetectionCache watermarkDetectionCache;
+    private final ProductImageJobRepository productImageJobRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProductDetailCache productDetailCache;
+    private final ProductSearchIndex productSearchIndex;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final PlatformTransactionManager transactionManager;
+    private final NodeIdentity nodeIdentity;
+
+    @Value("${product.image-ingestion.async:true}")
+    private boolean asyncImageIngestion;
+
+    @Value("${product.export.chunk-size:500}")
+    private int exportChunkSize;
 
     @Override
     @Transactional(readOnly = true)
     public Page<ProductDTO> getAllProducts(Pageable pageable) {
         Page<Product> products = productRepository.findAll(pageable);
-        
-        // Optimize by bulk loading colors, sizes, and images for all products in the page
-        List<Long> productIds = products.getContent().stream()
-                .map(Product::getProductId)
-                .collect(Collectors.toList());
-        
-        if (productIds.isEmpty()) {
-            return products.map(this::convertToDTO);
-        }
-        
-        // Bulk load colors, sizes, and images for all products
-        Map<Long, List<String>> colorsMap = getColorsMapByProductIds(productIds);
-        Map<Long, List<String>> sizesMap = getSizesMapByProductIds(productIds);
-        Map<Long, List<String>> imagesMap = getImagesMapByProductIds(productIds);
-        
-        return products.map(product -> convertToDTOWithPreloadedData(product, colorsMap, sizesMap, imagesMap));
+        List<ProductDTO> dtos = convertToDTOs(products.getContent());
+        return new PageImpl<>(dtos, products.getPageable(), products.getTotalElements());
     }
 
     @Override
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public ProductDTO getProductById(Long id) {
-        Product product = findEntityById(id);
-        return convertToDTO(product);
+        // No transaction on a cache hit; the loader opens its own
+        return productDetailCache.get(id, productId -> readOnlyTransaction().execute(status -> {
+            Product product = productRepository.findWithCategoryAndSellerById(productId)
+                    .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
+            return convertToDTO(product);
+        }));
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ProductDTO createProduct(ProductCreateDTO productCreateDTO, String sellerUsername) {
+        return createProduct(productCreateDTO, toImagePayloads(productCreateDTO.getImages()), sellerUsername);
+    }
+
+    /**
+     * Images processed inline call the image service for seconds each, so the product is committed first
+     * and no transaction is held while they are processed, as in ProductImageIngestionServiceImpl.
+     * If one of them fails the product is removed again.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ProductDTO createProduct(ProductCreateDTO productCreateDTO, List<ImagePayload> images, String sellerUsername) {
+        Product savedProduct = writeTransaction().execute(status ->
+                saveNewProduct(productCreateDTO, images, sellerUsername));
+
+        if (images != null && !images.isEmpty() && !asyncImageIngestion) {
+            try {
+                processProductImagePayloads(savedProduct, images, productCreateDTO.getStoreName());
+            } catch (WatermarkDetectedException e) {
+                // Watermarks were detected - save to history and throw error response
+                log.info("WatermarkDetectedException caught for product {} with {} detections", 
+                    savedProduct.getProductId(), e.getDetectedWatermarkIds().size());
+                
+                // Save history immediately with explicit commit
+                try {
+                    saveWatermarkDetectionHistoryDirect(savedProduct, e);
+                    log.info("Watermark detection history saved successfully for product {}", savedProduct.getProductId());
+                } catch (Exception historyEx) {
+                    log.error("Failed to save watermark detection history: {}", historyEx.getMessage(), historyEx);
+                }
+                
+                discardProduct(savedProduct.getProductId());
+                throw new RuntimeException("WATERMARK_DETECTED: " + e.getDetectionSummary());
+            } catch (RuntimeException e) {
+                discardProduct(savedProduct.getProductId());
+                throw e;
+            } finally {
+                images.forEach(ImagePayload::discard);
+            }
+        }
+
+        return convertToDTO(savedProduct);
+    }
+
+    private Product saveNewProduct(ProductCreateDTO productCreateDTO, List<ImagePayload> images, String sellerUsername) {
         Category category = categoryService.findEntityById(productCreateDTO.getCategoryId());
         User seller = userRepository.findByUsername(sellerUsername)
                 .orElseThrow(() -> new RuntimeException("Seller not found: " + sellerUsername));
@@ -133,6 +212,7 @@ public class ProductServiceImpl implements ProductService {
         product.setSeller(seller);
 
         Product savedProduct = productRepository.save(product);
+        eventPublisher.publishEvent(new ProductChangedEvent(savedProduct.getProductId()));
         
         // Save colors if provided
         if (productCreateDTO.getColors() != null && !productCreateDTO.getColors().isEmpty()) {
@@ -161,33 +241,52 @@ public class ProductServiceImpl implements ProductService {
         }
         
         // Process images if provided (max 4 images)
-        if (productCreateDTO.getImages() != null && !productCreateDTO.getImages().isEmpty()) {
-            try {
-                processProductImages(savedProduct, productCreateDTO.getImages(), productCreateDTO.getStoreName());
-            } catch (WatermarkDetectedException e) {
-                // Watermarks were detected - save to history and throw error response
-                log.info("WatermarkDetectedException caught for product {} with {} detections", 
-                    savedProduct.getProductId(), e.getDetectedWatermarkIds().size());
-                
-                // Save history immediately with explicit commit
-                try {
-                    // Test if we can save a simple record first
-                    testWatermarkHistorySave(savedProduct.getProductId(), e.getStoreName());
-                    saveWatermarkDetectionHistoryDirect(savedProduct, e);
-                    log.info("Watermark detection history saved successfully for product {}", savedProduct.getProductId());
-                } catch (Exception historyEx) {
-                    log.error("Failed to save watermark detection history: {}", historyEx.getMessage(), historyEx);
-                }
-                
-                throw new RuntimeException("WATERMARK_DETECTED: " + e.getDetectionSummary());
-            }
+        if (images != null && !images.isEmpty() && asyncImageIngestion) {
+            // Images are watermarked in the background once the product is committed
+            submitImagesForIngestion(savedProduct, images, productCreateDTO.getStoreName());
         }
+        return savedProduct;
+    }
 
-        return convertToDTO(savedProduct);
+    /**
+     * Remove a product whose images failed inline, in place of rolling back its creation
+     */
+    private void discardProduct(Long productId) {
+        try {
+            writeTransaction().executeWithoutResult(status -> deleteProduct(productId));
+        } catch (RuntimeException e) {
+            log.error("Failed to remove product {} after its images failed", productId, e);
+        }
     }
 
+    /**
+     * The product changes commit before changed images are processed inline, without a transaction;
+     * an image that fails there is missing from the product, as with the asynchronous pipeline
+     */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ProductDTO updateProduct(Long id, ProductCreateDTO productCreateDTO) {
+        List<ImagePayload> images = toImagePayloads(productCreateDTO.getImages());
+        // May download the watermark image, so it is resolved before the transaction
+        String watermarkImageBase64 = images.isEmpty() ? null : getStoreWatermarkImageBase64(productCreateDTO.getStoreName());
+
+        List<ImagePayload> changedImages = writeTransaction().execute(status ->
+                saveProductChanges(id, productCreateDTO, images, watermarkImageBase64));
+        Product updatedProduct = productRepository.findWithCategoryAndSellerById(id)
+                .orElseThrow(() -> new RuntimeException("Product not found with id: " + id));
+
+        if (!changedImages.isEmpty() && !asyncImageIngestion) {
+            processProductImagePayloads(updatedProduct, changedImages, productCreateDTO.getStoreName());
+        }
+
+        return convertToDTO(updatedProduct);
+    }
+
+    /**
+     * @return the uploaded images that still have to go through the watermark pipeline inline
+     */
+    private List<ImagePayload> saveProductChanges(Long id, ProductCreateDTO productCreateDTO,
+                                                  List<ImagePayload> images, String watermarkImageBase64) {
         Product product = findEntityById(id);
         Category category = categoryService.findEntityById(productCreateDTO.getCategoryId());
 
@@ -229,13 +328,20 @@ public class ProductServiceImpl implements ProductService {
             productSizeRepository.saveAll(sizes);
         }
         
-        // Update images
-        productImageRepository.deleteByProductProductId(id);
-        if (productCreateDTO.getImages() != null && !productCreateDTO.getImages().isEmpty()) {
-            processProductImages(updatedProduct, productCreateDTO.getImages(), productCreateDTO.getStoreName());
+        // Update images - unchanged uploads keep their stored image, only the changed ones are processed
+        List<ImagePayload> changedImages = List.of();
+        if (!images.isEmpty()) {
+            changedImages = retainUnchangedImages(updatedProduct, images, watermarkImageBase64);
+        } else {
+            productImageRepository.deleteByProductProductId(id);
+            watermarkCandidateSnapshot.removeProduct(id);
         }
-
-        return convertToDTO(updatedProduct);
+        eventPublisher.publishEvent(new ProductChangedEvent(id));
+        if (!changedImages.isEmpty() && asyncImageIngestion) {
+            submitImagesForIngestion(updatedProduct, changedImages, productCreateDTO.getStoreName());
+            return List.of();
+        }
+        return changedImages;
     }
 
 //    @Override
@@ -256,6 +362,9 @@ public class ProductServiceImpl implements ProductService {
         Product product = findEntityById(id);
 
         productRepository.delete(product);
+        productImageJobRepository.deleteByProductId(id);
+        watermarkCandidateSnapshot.removeProduct(id);
+        eventPublisher.publishEvent(new ProductChangedEvent(id));
 
         log.info("Deleted product with ID {} (cascade deleted all related entities)", id);
     }
@@ -263,60 +372,147 @@ public class ProductServiceImpl implements ProductService {
     @Override
     @Transactional(readOnly = true)
     public List<ProductDTO> getProductsByCategory(Long categoryId) {
-        return productRepository.findByCategoryCategoryId(categoryId)
-                .stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return convertToDTOs(productRepository.findByCategoryCategoryId(categoryId));
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<ProductDTO> searchProductsByName(String name) {
-        return productRepository.findByNameContaining(name)
-                .stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return convertToDTOs(productRepository.findByNameContaining(name));
     }
 
     @Override
-    @Transactional(readOnly = true)
-    public Page<ProductDTO> searchProducts(String name, Long categoryId, String storeName, Pageable pageable) {
-        Page<Product> products = productRepository.findByFilters(name, categoryId, storeName, pageable);
-        
-        // Optimize by bulk loading colors, sizes, and images for all products in the page
-        List<Long> productIds = products.getContent().stream()
-                .map(Product::getProductId)
-                .collect(Collectors.toList());
-        
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<ProductDTO> searchCatalog(String query, Long categoryId, String storeName, BigDecimal minPrice,
+                                          BigDecimal maxPrice, ProductSearchIndex.SortOrder sort, int limit) {
+        if (!productSearchIndex.isReady()) {
+            // Index still building or disabled - search the database, filtered and limited there
+            String tsQuery = ProductSearchQuery.toPrefixTsQuery(query);
+            String storeFilter = storeName != null && !storeName.isBlank() ? storeName.trim() : null;
+            return readOnlyTransaction().execute(status -> {
+                List<Long> productIds = sort == ProductSearchIndex.SortOrder.RECENT
+                        ? productRepository.findCatalogNewestIds(tsQuery, categoryId, storeFilter, minPrice, maxPrice, PageRequest.of(0, limit))
+                        : productRepository.findCatalogBestSellingIds(tsQuery, categoryId, storeFilter, minPrice, maxPrice, PageRequest.of(0, limit));
+                if (productIds.isEmpty()) {
+                    return new ArrayList<ProductDTO>();
+                }
+                Map<Long, Product> productsById = productRepository.findWithCategoryAndSellerByIdIn(productIds).stream()
+                        .collect(Collectors.toMap(Product::getProductId, product -> product));
+                return convertToDTOs(productIds.stream()
+                        .map(productsById::get)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()));
+            });
+        }
+
+        List<Long> productIds = productSearchIndex.search(query, categoryId, storeName, minPrice, maxPrice, sort, limit);
         if (productIds.isEmpty()) {
-            return products.map(this::convertToDTO);
+            return List.of();
         }
-        
-        // Bulk load colors, sizes, and images for all products
-        Map<Long, List<String>> colorsMap = getColorsMapByProductIds(productIds);
-        Map<Long, List<String>> sizesMap = getSizesMapByProductIds(productIds);
-        Map<Long, List<String>> imagesMap = getImagesMapByProductIds(productIds);
-        
-        return products.map(product -> convertToDTOWithPreloadedData(product, colorsMap, sizesMap, imagesMap));
+        // Details come from the product cache, only the misses are read from the database
+        return productDetailCache.getAll(productIds, missingIds -> readOnlyTransaction().execute(status ->
+                convertToDTOs(productRepository.findWithCategoryAndSellerByIdIn(missingIds))));
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPageResponse<ProductDTO> getProductsPage(String name, Long categoryId, String storeName,
+                                                          ProductListingCursor.Order order, String cursor, int limit,
+                                                          boolean includeTotal) {
+        String nameFilter = name != null && !name.isBlank() ? name.trim() : null;
+        String storeFilter = storeName != null && !storeName.isBlank() ? storeName.trim() : null;
+        // One extra row tells whether another page exists
+        Limit fetchLimit = Limit.of(limit + 1);
+
+        List<Product> products;
+        if (cursor == null || cursor.isBlank()) {
+            products = switch (order) {
+                case NEWEST -> productRepository.findNewestPage(nameFilter, categoryId, storeFilter, fetchLimit);
+                case BEST_SELLING -> productRepository.findBestSellingPage(nameFilter, categoryId, storeFilter, fetchLimit);
+                case PRICE_ASC -> productRepository.findCheapestPage(nameFilter, categoryId, storeFilter, fetchLimit);
+                case PRICE_DESC -> productRepository.findPriciestPage(nameFilter, categoryId, storeFilter, fetchLimit);
+            };
+        } else {
+            ProductListingCursor after = ProductListingCursor.decode(order, cursor);
+            products = switch (order) {
+                case NEWEST -> productRepository.findNewestPageAfter(nameFilter, categoryId, storeFilter,
+                        after.getCreatedAt(), after.getProductId(), fetchLimit);
+                case BEST_SELLING -> productRepository.findBestSellingPageAfter(nameFilter, categoryId, storeFilter,
+                        after.getSoldQuantity(), after.getProductId(), fetchLimit);
+                case PRICE_ASC -> productRepository.findCheapestPageAfter(nameFilter, categoryId, storeFilter,
+                        after.getPrice(), after.getProductId(), fetchLimit);
+                case PRICE_DESC -> productRepository.findPriciestPageAfter(nameFilter, categoryId, storeFilter,
+                        after.getPrice(), after.getProductId(), fetchLimit);
+            };
+        }
+
+        boolean hasMore = products.size() > limit;
+        List<Product> page = hasMore ? products.subList(0, limit) : products;
+        CursorPageResponse.CursorPageResponseBuilder<ProductDTO> response = CursorPageResponse.<ProductDTO>builder()
+                .items(convertToDTOs(page))
+                .nextCursor(hasMore ? ProductListingCursor.encode(order, page.get(page.size() - 1)) : null)
+                .hasMore(hasMore);
+
+        if (includeTotal) {
+            // Unfiltered listings use the planner estimate instead of counting every row
+            Long estimate = nameFilter == null && categoryId == null && storeFilter == null
+                    ? productRepository.estimateCount() : null;
+            if (estimate != null && estimate >= 0) {
+                response.totalCount(estimate).totalEstimated(true);
+            } else {
+                response.totalCount(productRepository.countByListingFilters(nameFilter, categoryId, storeFilter))
+                        .totalEstimated(false);
+            }
+        }
+        return response.build();
+    }
 
     @Override
     @Transactional(readOnly = true)
-    public List<ProductDTO> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
-        return productRepository.findByPriceBetween(minPrice, maxPrice)
+    public Page<ProductDTO> searchProducts(String name, Long categoryId, String storeName, Pageable pageable,
+                                           boolean includeTotal) {
+        String tsQuery = ProductSearchQuery.toPrefixTsQuery(name);
+        if (tsQuery == null) {
+            // Nothing to search for, only filter
+            Page<Product> products = productRepository.findByFilters(null, categoryId, storeName, pageable);
+            List<ProductDTO> dtos = convertToDTOs(products.getContent());
+            return new PageImpl<>(dtos, products.getPageable(), products.getTotalElements());
+        }
+
+        String namePattern = ProductSearchQuery.containsPattern(name);
+        String storePattern = storeName != null && !storeName.isBlank() ? ProductSearchQuery.containsPattern(storeName) : null;
+        // Results are ordered by rank, so the page is requested unsorted
+        Slice<Long> productIds = productRepository.searchRankedIds(tsQuery, namePattern, categoryId, storePattern,
+                PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+        // Without a count the total only reaches one past this page when there is a next one
+        long total = includeTotal
+                ? productRepository.countSearchMatches(tsQuery, namePattern, categoryId, storePattern)
+                : productIds.getPageable().getOffset() + productIds.getNumberOfElements() + (productIds.hasNext() ? 1 : 0);
+        if (!productIds.hasContent()) {
+            return new PageImpl<>(new ArrayList<>(), productIds.getPageable(), total);
+        }
+
+        Map<Long, Product> productsById = productRepository.findWithCategoryAndSellerByIdIn(productIds.getContent())
                 .stream()
-                .map(this::convertToDTO)
+                .collect(Collectors.toMap(Product::getProductId, product -> product));
+        List<Product> ranked = productIds.getContent().stream()
+                .map(productsById::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
+        return new PageImpl<>(convertToDTOs(ranked), productIds.getPageable(), total);
+    }
+
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ProductDTO> getProductsByPriceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        return convertToDTOs(productRepository.findByPriceBetween(minPrice, maxPrice));
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<ProductDTO> getProductsByStore(String storeName) {
-        return productRepository.findByStoreName(storeName)
-                .stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return convertToDTOs(productRepository.findByStoreName(storeName));
     }
 
     @Override
@@ -324,6 +520,7 @@ public class ProductServiceImpl implements ProductService {
         Product product = findEntityById(id);
         product.setStockQuantity(newStock);
         Product updatedProduct = productRepository.save(product);
+        eventPublisher.publishEvent(new ProductChangedEvent(id));
         return convertToDTO(updatedProduct);
     }
 
@@ -365,7 +562,17 @@ public class ProductServiceImpl implements ProductService {
             products = productRepository.findAll();
         }
 
-        return products.stream().map(this::convertToMap).collect(Collectors.toList());
+        return convertToDTOs(products).stream().map(this::convertDTOToMap).collect(Collectors.toList());
+    }
+
+    private TransactionTemplate writeTransaction() {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate;
     }
 
     private Product findEntityById(Long id) {
@@ -374,50 +581,28 @@ public class ProductServiceImpl implements ProductService {
     }
 
     private ProductDTO convertToDTO(Product product) {
-        ProductDTO dto = new ProductDTO();
-        dto.setProductId(product.getProductId());
-        dto.setStoreName(product.getStoreName());
-        dto.setCategoryId(product.getCategory().getCategoryId());
-        dto.setCategoryName(product.getCategory().getName());
-        dto.setName(product.getName());
-        dto.setDescription(product.getDescription());
-        dto.setPrice(product.getPrice());
-        dto.setStockQuantity(product.getStockQuantity());
-        if (product.getSeller() != null) {
-            dto.setSellerUsername(product.getSeller().getUsername());
-            dto.setSellerName(product.getSeller().getFirstName() + " " + product.getSeller().getLastName());
-        }
-        dto.setSoldQuantity(product.getSoldQuantity());
-        dto.setBrand(product.getBrand());
-        dto.setCreatedAt(product.getCreatedAt());
-        
-        // Load colors, sizes, and images
-        dto.setColors(productColorRepository.findColorsByProductId(product.getProductId()));
-        dto.setSizes(productSizeRepository.findSizesByProductId(product.getProductId()));
-        dto.setImages(productImageRepository.findImageUrlsByProductId(product.getProductId()));
-        
-        return dto;
+        return convertToDTOs(List.of(product)).get(0);
     }
 
-    private Map<String, Object> convertToMap(Product product) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("productId", product.getProductId());
-        map.put("storeName", product.getStoreName());
-        map.put("categoryId", product.getCategory().getCategoryId());
-        map.put("categoryName", product.getCategory().getName());
-        map.put("name", product.getName());
-        map.put("description", product.getDescription());
-        map.put("price", product.getPrice());
-        map.put("stockQuantity", product.getStockQuantity());
-        map.put("brand", product.getBrand());
-        map.put("createdAt", product.getCreatedAt());
-        
-        // Add colors, sizes, and images to map
-        map.put("colors", productColorRepository.findColorsByProductId(product.getProductId()));
-        map.put("sizes", productSizeRepository.findSizesByProductId(product.getProductId()));
-        map.put("images", productImageRepository.findImageUrlsByProductId(product.getProductId()));
-        
-        return map;
+    /**
+     * Convert products to DTOs with one query each for the colors, sizes and images of all of them.
+     * Category and seller are expected to be fetched with the products (see ProductRepository).
+     */
+    private List<ProductDTO> convertToDTOs(List<Product> products) {
+        if (products.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> productIds = products.stream()
+                .map(Product::getProductId)
+                .collect(Collectors.toList());
+
+        Map<Long, List<String>> colorsMap = groupByProductId(productColorRepository.findColorRowsByProductIds(productIds));
+        Map<Long, List<String>> sizesMap = groupByProductId(productSizeRepository.findSizeRowsByProductIds(productIds));
+        Map<Long, List<String>> imagesMap = groupByProductId(productImageRepository.findImageUrlRowsByProductIds(productIds));
+
+        return products.stream()
+                .map(product -> convertToDTOWithPreloadedData(product, colorsMap, sizesMap, imagesMap))
+                .collect(Collectors.toList());
     }
 
     private Map<String, Object> convertDTOToMap(ProductDTO dto) {
@@ -442,81 +627,60 @@ public class ProductServiceImpl implements ProductService {
     @Transactional(readOnly = true)
     public List<ProductDTO> getBestSellerProducts(int limit) {
         Pageable pageable = PageRequest.of(0, limit);
-        return productRepository.findBestSellerProducts(pageable)
-                .stream()
-                .map(this::convertToBestSellerDTO)
-                .collect(Collectors.toList());
+        return markBestSellers(convertToDTOs(productRepository.findBestSellerProducts(pageable)));
     }
     
     @Override
     @Transactional(readOnly = true)
     public List<ProductDTO> getBestSellerProductsByCategory(Long categoryId, int limit) {
         Pageable pageable = PageRequest.of(0, limit);
-        return productRepository.findBestSellerProductsByCategory(categoryId, pageable)
-                .stream()
-                .map(this::convertToBestSellerDTO)
-                .collect(Collectors.toList());
+        return markBestSellers(convertToDTOs(productRepository.findBestSellerProductsByCategory(categoryId, pageable)));
     }
     
     @Override
     @Transactional(readOnly = true)
     public List<ProductDTO> getTopSellingProducts(int minSoldQuantity, int limit) {
         Pageable pageable = PageRequest.of(0, limit);
-        return productRepository.findProductsWithMinimumSales(minSoldQuantity, pageable)
-                .stream()
-                .map(this::convertToBestSellerDTO)
-                .collect(Collectors.toList());
+        return markBestSellers(convertToDTOs(productRepository.findProductsWithMinimumSales(minSoldQuantity, pageable)));
     }
     
-    private ProductDTO convertToBestSellerDTO(Product product) {
-        ProductDTO dto = convertToDTO(product);
-        dto.setSoldQuantity(product.getSoldQuantity());
-        dto.setIsBestSeller(product.getSoldQuantity() > 0);
-        return dto;
+    private List<ProductDTO> markBestSellers(List<ProductDTO> dtos) {
+        dtos.forEach(dto -> dto.setIsBestSeller(dto.getSoldQuantity() > 0));
+        return dtos;
     }
     
     @Override
     @Transactional(readOnly = true)
     public List<ProductDTO> getNewArrivalProducts(int limit) {
         Pageable pageable = PageRequest.of(0, limit);
-        return productRepository.findNewArrivalProducts(pageable)
-                .stream()
-                .map(this::convertToNewArrivalDTO)
-                .collect(Collectors.toList());
+        return markNewArrivals(convertToDTOs(productRepository.findNewArrivalProducts(pageable)));
     }
     
     @Override
     @Transactional(readOnly = true)
     public List<ProductDTO> getNewArrivalProductsByCategory(Long categoryId, int limit) {
         Pageable pageable = PageRequest.of(0, limit);
-        return productRepository.findNewArrivalProductsByCategory(categoryId, pageable)
-                .stream()
-                .map(this::convertToNewArrivalDTO)
-                .collect(Collectors.toList());
+        return markNewArrivals(convertToDTOs(productRepository.findNewArrivalProductsByCategory(categoryId, pageable)));
     }
     
     @Override
-    @Transactional(readOnly = true)
-    public List<ProductDTO> getAllProductsWithoutPagination() {
-        List<Product> allProducts = productRepository.findAll();
-        
-        if (allProducts.isEmpty()) {
-            return List.of();
+    public void exportAllProducts(Consumer<List<ProductDTO>> chunkConsumer) {
+        long lastProductId = 0;
+        while (true) {
+            long afterProductId = lastProductId;
+            // Each chunk is read in its own short transaction, so no connection or persistence
+            // context is held while the consumer writes to a slow client
+            List<ProductDTO> chunk = readOnlyTransaction().execute(status -> convertToDTOs(
+                    productRepository.findChunkAfter(afterProductId, PageRequest.of(0, exportChunkSize))));
+            if (chunk == null || chunk.isEmpty()) {
+                return;
+            }
+            chunkConsumer.accept(chunk);
+            if (chunk.size() < exportChunkSize) {
+                return;
+            }
+            lastProductId = chunk.get(chunk.size() - 1).getProductId();
         }
-        
-        // Optimize by bulk loading colors, sizes, and images for all products
-        List<Long> productIds = allProducts.stream()
-                .map(Product::getProductId)
-                .collect(Collectors.toList());
-        
-        // Bulk load colors, sizes, and images for all products
-        Map<Long, List<String>> colorsMap = getColorsMapByProductIds(productIds);
-        Map<Long, List<String>> sizesMap = getSizesMapByProductIds(productIds);
-        Map<Long, List<String>> imagesMap = getImagesMapByProductIds(productIds);
-        
-        return allProducts.stream()
-                .map(product -> convertToDTOWithPreloadedData(product, colorsMap, sizesMap, imagesMap))
-                .collect(Collectors.toList());
     }
     
     @Override
@@ -528,28 +692,15 @@ public class ProductServiceImpl implements ProductService {
             return List.of();
         }
         
-        // Optimize by bulk loading colors, sizes, and images for all products
-        List<Long> productIds = userProducts.stream()
-                .map(Product::getProductId)
-                .collect(Collectors.toList());
-        
-        // Bulk load colors, sizes, and images for all products
-        Map<Long, List<String>> colorsMap = getColorsMapByProductIds(productIds);
-        Map<Long, List<String>> sizesMap = getSizesMapByProductIds(productIds);
-        Map<Long, List<String>> imagesMap = getImagesMapByProductIds(productIds);
-        
-        return userProducts.stream()
-                .map(product -> convertToDTOWithPreloadedData(product, colorsMap, sizesMap, imagesMap))
-                .collect(Collectors.toList());
+        return convertToDTOs(userProducts);
     }
 
     
-    private ProductDTO convertToNewArrivalDTO(Product product) {
-        ProductDTO dto = convertToDTO(product);
+    private List<ProductDTO> markNewArrivals(List<ProductDTO> dtos) {
         // Mark as new arrival if created within last 30 days
         LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
-        dto.setIsNewArrival(product.getCreatedAt().isAfter(thirtyDaysAgo));
-        return dto;
+        dtos.forEach(dto -> dto.setIsNewArrival(dto.getCreatedAt().isAfter(thirtyDaysAgo)));
+        return dtos;
     }
     
     /**
@@ -559,102 +710,45 @@ public class ProductServiceImpl implements ProductService {
      * @param imageBase64List List of base64 encoded images (max 4)
      * @param storeName Store name for watermarking
      */
-    
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void processProductImages(Product product, List<String> imageBase64List, String storeName) {
+        processProductImagePayloads(product, toImagePayloads(imageBase64List), storeName);
+    }
+
+    /**
+     * Process uploaded product images by calling watermark service and saving the resulting URLs
+     * 
+     * @param product The saved product entity
+     * @param images Uploaded images (max 4)
+     * @param storeName Store name for watermarking
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void processProductImagePayloads(Product product, List<ImagePayload> images, String storeName) {
         log.info("Starting processProductImages for product {} with store {}", product.getProductId(), storeName);
         WatermarkDetectedException watermarkException = new WatermarkDetectedException(
             "Watermark detection occurred during image processing", storeName);
-        if (imageBase64List == null || imageBase64List.isEmpty()) {
+        if (images == null || images.isEmpty()) {
             log.info("No images to process for product {}", product.getProductId());
             return;
         }
         
         // Validate max 4 images
-        if (imageBase64List.size() > 4) {
+        if (images.size() > 4) {
             throw new RuntimeException("Maximum 4 images allowed per product");
         }
         
         try {
             log.info("Starting image processing for store: {} with product ID: {}", storeName, product.getProductId());
-            
-            System.out.println("this is store name: " + storeName);
-            // check if the store exists
-            sellerRepository.findByStoreName(storeName).orElseThrow(() -> new RuntimeException("Store does not exist"));
-
-            // Get watermark image for this store
-            String watermarkImageUrl = watermarkRepository.findByStoreName(storeName)
-                    .orElseThrow(() -> new RuntimeException("Watermark not found for store: " + storeName))
-                    .getWatermarkUrlImage();
-            
-            // Convert URL to base64 if it's a URL, otherwise use as-is
-            String watermarkImageBase64;
-            if (watermarkImageUrl != null && (watermarkImageUrl.startsWith("http") || watermarkImageUrl.startsWith("@http"))) {
-                watermarkImageBase64 = convertUrlToBase64(watermarkImageUrl);
-            } else {
-                watermarkImageBase64 = watermarkImageUrl; // Already base64 or other format
-            }
 
-            log.info("Successfully retrieved watermark for store: {}, length: {}", storeName, 
-                watermarkImageBase64 != null ? watermarkImageBase64.length() : 0);
-            
-                        // Process each image individually to maintain unique jsonImage for each
-        for (int i = 0; i < imageBase64List.size(); i++) {
-            String imageBase64 = imageBase64List.get(i);
+            String watermarkImageBase64 = getStoreWatermarkImageBase64(storeName);
             
-                log.info("Processing image {} of {}, length: {}", i + 1, imageBase64List.size(), 
-                    imageBase64 != null ? imageBase64.length() : 0);
-            
-            if (imageBase64 == null || imageBase64.trim().isEmpty()) {
-                    log.warn("Skipping empty image {}", i + 1);
-                continue; // Skip empty images
+            // Process each image individually to maintain unique jsonImage for each
+            for (int i = 0; i < images.size(); i++) {
+                log.info("Processing image {} of {}", i + 1, images.size());
+                processProductImage(product, images.get(i), watermarkImageBase64, i + 1, watermarkException);
             }
             
-            try {
-                                            // Check if we have any existing product images to compare against
-                        List<ProductImage> existingImages = productImageRepository.findByProductProductIdNot(product.getProductId());
-                        log.info("Found {} existing images in database (excluding current product)", existingImages.size());
-                    
-                                                if (existingImages.isEmpty()) {
-                            // CASE 1: No existing images in database - proceed with direct embedding
-                            log.info("No existing images in database, proceeding with direct watermark embedding for image {}", i + 1);
-                            processNewImageWithEmbedding(product, imageBase64, watermarkImageBase64, i + 1);
-                        } else {
-                        // Filter out images that have valid jsonImage metadata
-                        List<ProductImage> imagesWithMetadata = existingImages.stream()
-                            .filter(img -> img.getJsonImage() != null && !img.getJsonImage().isNull())
-                            .collect(Collectors.toList());
-                        
-                        log.info("Found {} images with valid metadata out of {} total images", 
-                            imagesWithMetadata.size(), existingImages.size());
-                        
-                        if (imagesWithMetadata.isEmpty()) {
-                            // CASE 1b: Images exist but all have empty/null jsonImage - treat as cold start
-                            log.info("Found {} existing images but all have empty jsonImage metadata, treating as cold start for image {}", 
-                                existingImages.size(), i + 1);
-                            processNewImageWithEmbedding(product, imageBase64, watermarkImageBase64, i + 1);
-                } else {
-                            // CASE 2: Existing images with metadata found - try to find matching metadata
-                            log.info("Found {} images with valid metadata, attempting to find match for image {}", 
-                                imagesWithMetadata.size(), i + 1);
-                            
-                            boolean matchFound = findAndProcessWithMatchingMetadata(product, imageBase64, watermarkImageBase64, imagesWithMetadata, i + 1, watermarkException);
-                            
-                            if (!matchFound) {
-                                // No matching metadata found, treat as new image type
-                                log.info("No matching metadata found among {} valid metadata entries for image {}, proceeding with new watermark embedding", 
-                                    imagesWithMetadata.size(), i + 1);
-                                processNewImageWithEmbedding(product, imageBase64, watermarkImageBase64, i + 1);
-                            }
-                        }
-                }
-                
-            } catch (Exception e) {
-                log.error("Error processing image {} for product {}", i + 1, product.getProductId(), e);
-                    throw new RuntimeException("Failed to process image " + (i + 1) + ": " + e.getMessage());
-                }
-            }
-            
-            log.info("Successfully processed {} images for product {}", imageBase64List.size(), product.getProductId());
+            log.info("Successfully processed {} images for product {}", images.size(), product.getProductId());
             
             // Check if any watermarks were detected and throw exception if so
             if (watermarkException.hasDetections()) {
@@ -667,24 +761,256 @@ public class ProductServiceImpl implements ProductService {
         } catch (Exception e) {
             log.error("Error getting watermark for store: {}", storeName, e);
             throw new RuntimeException("Failed to get watermark for store: " + storeName, e);
-                }
+        }
+    }
+
+    /**
+     * Queue product images for the asynchronous watermark pipeline.
+     * One QUEUED job is saved per image; the images are handed to the worker pool after commit.
+     *
+     * @param product The saved product entity
+     * @param images Uploaded images (max 4)
+     * @param storeName Store name for watermarking
+     */
+    private void submitImagesForIngestion(Product product, List<ImagePayload> images, String storeName) {
+        // Validate max 4 images
+        if (images.size() > 4) {
+            throw new RuntimeException("Maximum 4 images allowed per product");
+        }
+
+        // Fail fast on the request instead of in the background job
+        sellerRepository.findByStoreName(storeName).orElseThrow(() -> new RuntimeException("Store does not exist"));
+        if (!watermarkRegistry.existsByStoreName(storeName)) {
+            throw new RuntimeException("Watermark not found for store: " + storeName);
+        }
+
+        productImageJobRepository.deleteByProductId(product.getProductId());
+
+        // Rejects the whole upload with 429 when the store or the pipeline is saturated;
+        // released again if the transaction rolls back
+        storeFairScheduler.reserve(storeName);
+        try {
+            queueReservedImages(product.getProductId(), images, storeName);
+        } catch (RuntimeException e) {
+            storeFairScheduler.release(storeName);
+            throw e;
+        }
+    }
+
+    /**
+     * Save one QUEUED job per image and hand the images to the pipeline once the transaction commits.
+     * The caller must already hold a StoreFairScheduler reservation for the store.
+     *
+     * @param productId ID of the saved product
+     * @param images Uploaded images (max 4)
+     * @param storeName Store name for watermarking
+     */
+    public void queueReservedImages(Long productId, List<ImagePayload> images, String storeName) {
+        List<ProductImageJob> jobs = IntStream.rangeClosed(1, images.size())
+                .mapToObj(imageIndex -> ProductImageJob.builder()
+                        .productId(productId)
+                        .imageIndex(imageIndex)
+                        .status(ImageJobStatus.QUEUED)
+                        .ownerNode(nodeIdentity.getId())
+                        .build())
+                .collect(Collectors.toList());
+        jobs = productImageJobRepository.saveAll(jobs);
+
+        List<Long> jobIds = jobs.stream().map(ProductImageJob::getJobId).toList();
+        eventPublisher.publishEvent(new ProductImagesSubmittedEvent(productId, storeName, List.copyOf(images), jobIds));
+        log.info("Submitted {} images of product {} for watermark processing", jobs.size(), productId);
+    }
+
+    /**
+     * Keep the stored images of a product that are uploaded again unchanged and delete the others
+     *
+     * @param product The product being updated
+     * @param images Uploaded images (max 4)
+     * @param watermarkImageBase64 Base64 encoded watermark image of the store
+     * @return the uploaded images that still have to go through the watermark pipeline
+     */
+    private List<ImagePayload> retainUnchangedImages(Product product, List<ImagePayload> images, String watermarkImageBase64) {
+        if (images.size() > 4) {
+            throw new RuntimeException("Maximum 4 images allowed per product");
+        }
+
+        List<ProductImage> existingImages = productImageRepository.findByProductProductId(product.getProductId());
+
+        Map<String, Deque<ProductImage>> existingByHash = new HashMap<>();
+        for (ProductImage existingImage : existingImages) {
+            if (existingImage.getContentHash() != null) {
+                existingByHash.computeIfAbsent(existingImage.getContentHash(), hash -> new ArrayDeque<>()).add(existingImage);
+            }
+        }
+
+        List<ImagePayload> changedImages = new ArrayList<>();
+        Set<Long> retainedIds = new HashSet<>();
+        for (ImagePayload image : images) {
+            String contentHash = !existingByHash.isEmpty() ? ImageContentHash.of(image, watermarkImageBase64) : null;
+            Deque<ProductImage> unchanged = contentHash != null ? existingByHash.get(contentHash) : null;
+            if (unchanged != null && !unchanged.isEmpty()) {
+                retainedIds.add(unchanged.poll().getImageId());
+                image.discard();
+            } else {
+                changedImages.add(image);
+            }
+        }
+
+        List<ProductImage> removedImages = existingImages.stream()
+                .filter(existingImage -> !retainedIds.contains(existingImage.getImageId()))
+                .collect(Collectors.toList());
+        productImageRepository.deleteAll(removedImages);
+        removedImages.forEach(watermarkCandidateSnapshot::remove);
+
+        log.info("Product {} update: {} images unchanged, {} to process", product.getProductId(),
+            retainedIds.size(), changedImages.size());
+        return changedImages;
+    }
+
+    private List<ImagePayload> toImagePayloads(List<String> imageBase64List) {
+        if (imageBase64List == null) {
+            return List.of();
+        }
+        return imageBase64List.stream()
+                .map(Base64ImagePayload::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the base64 watermark image of a store from the watermark registry.
+     * A watermark is only created for an existing store, so the store itself is not looked up again.
+     *
+     * @param storeName Store name for watermarking
+     * @return Base64 encoded watermark image of the store
+     */
+    // May download the watermark image, so no connection is held for it
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public String getStoreWatermarkImageBase64(String storeName) {
+        // Get watermark image for this store
+        Watermark storeWatermark = watermarkRegistry.findByStoreName(storeName)
+                .orElseThrow(() -> new RuntimeException("Watermark not found for store: " + storeName));
+
+        // Convert URL to base64 if it's a URL, otherwise use as-is
+        String watermarkImageBase64 = resolveWatermarkImageBase64(storeWatermark);
+
+        log.info("Successfully retrieved watermark for store: {}, length: {}", storeName, 
+            watermarkImageBase64 != null ? watermarkImageBase64.length() : 0);
+        return watermarkImageBase64;
+    }
+
+    /**
+     * Run one uploaded image through the watermark pipeline: match it against the existing metadata,
+     * then either record a detection on the given exception or embed, upload and save it
+     *
+     * @param product The saved product entity
+     * @param image Uploaded image
+     * @param watermarkImageBase64 Base64 encoded watermark image of the store
+     * @param imageIndex 1-based position of the image in the upload
+     * @param watermarkException Collects the detected watermarks
+     */
+    // No surrounding transaction: the embed, detect and upload calls can take seconds, and the
+    // image and metadata saves commit on their own
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void processProductImage(Product product, ImagePayload image, String watermarkImageBase64,
+                                    int imageIndex, WatermarkDetectedException watermarkException) {
+        if (image == null || image.isEmpty()) {
+            log.warn("Skipping empty image {}", imageIndex);
+            return; // Skip empty images
+        }
+
+        try {
+            // The same bytes were already watermarked for this store - reuse the stored result
+            String contentHash = ImageContentHash.of(image, watermarkImageBase64);
+            if (contentHash != null && reuseProcessedImage(product, contentHash, imageIndex)) {
+                return;
+            }
+
+            // Check if we have any existing product images to compare against
+            // Candidates come from the shared in-memory snapshot, shortlisted by perceptual hash
+            List<WatermarkCandidateImage> existingImages = watermarkCandidateSnapshot.findCandidates(
+                product.getProductId(), PerceptualHasher.hash(image));
+            log.info("Found {} existing images in database (excluding current product)", existingImages.size());
+
+            if (existingImages.isEmpty()) {
+                // CASE 1: No existing images in database - proceed with direct embedding
+                log.info("No existing images in database, proceeding with direct watermark embedding for image {}", imageIndex);
+                processNewImageWithEmbedding(product, image, watermarkImageBase64, imageIndex, contentHash);
+                return;
+            }
+
+            // Filter out images that have valid metadata
+            List<WatermarkCandidateImage> imagesWithMetadata = existingImages.stream()
+                .filter(img -> img.getMetadataId() != null)
+                .collect(Collectors.toList());
+
+            log.info("Found {} images with valid metadata out of {} total images", 
+                imagesWithMetadata.size(), existingImages.size());
+
+            if (imagesWithMetadata.isEmpty()) {
+                // CASE 1b: Images exist but all have empty/null metadata - treat as cold start
+                log.info("Found {} existing images but all have empty metadata, treating as cold start for image {}", 
+                    existingImages.size(), imageIndex);
+                processNewImageWithEmbedding(product, image, watermarkImageBase64, imageIndex, contentHash);
+                return;
+            }
+
+            // CASE 2: Existing images with metadata found - try to find matching metadata
+            log.info("Found {} images with valid metadata, attempting to find match for image {}", 
+                imagesWithMetadata.size(), imageIndex);
+
+            boolean matchFound = findAndProcessWithMatchingMetadata(product, image, watermarkImageBase64, imagesWithMetadata, imageIndex, watermarkException, contentHash);
+
+            if (!matchFound) {
+                // No matching metadata found, treat as new image type
+                log.info("No matching metadata found among {} valid metadata entries for image {}, proceeding with new watermark embedding", 
+                    imagesWithMetadata.size(), imageIndex);
+                processNewImageWithEmbedding(product, image, watermarkImageBase64, imageIndex, contentHash);
+            }
+        } catch (Exception e) {
+            log.error("Error processing image {} for product {}", imageIndex, product.getProductId(), e);
+            throw new RuntimeException("Failed to process image " + imageIndex + ": " + e.getMessage());
+        }
     }
     
+    /**
+     * Save a copy of an already processed image with the same content hash, without any external call
+     *
+     * @return true if a processed image was found and reused
+     */
+    private boolean reuseProcessedImage(Product product, String contentHash, int imageIndex) {
+        Optional<ProductImage> processed = productImageRepository.findFirstByContentHash(contentHash);
+        if (processed.isEmpty()) {
+            return false;
+        }
+
+        ProductImage productImage = new ProductImage();
+        productImage.setProduct(product);
+        productImage.setUrlImage(processed.get().getUrlImage());
+        productImage.setMetadata(processed.get().getMetadata());
+        productImage.setPerceptualHash(processed.get().getPerceptualHash());
+        productImage.setContentHash(contentHash);
+        watermarkCandidateSnapshot.add(productImageRepository.save(productImage));
+        eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId()));
+        log.info("Reused processed image ID {} for image {} of product {}",
+            processed.get().getImageId(), imageIndex, product.getProductId());
+        return true;
+    }
+
     /**
      * Process new image with watermark embedding (for cold start scenarios)
      */
-    private void processNewImageWithEmbedding(Product product, String imageBase64, String watermarkImageBase64, int imageIndex) {
+    private void processNewImageWithEmbedding(Product product, ImagePayload image, String watermarkImageBase64, int imageIndex, String contentHash) {
         try {
             log.info("Starting watermark embedding for image {} with watermark length: {}", 
                 imageIndex, watermarkImageBase64 != null ? watermarkImageBase64.length() : 0);
             
             WatermarkEmbedResponseDTO watermarkResponse = watermarkService.embedWatermark(
-                imageBase64, watermarkImageBase64, 0.6);
+                image, watermarkImageBase64, 0.6);
             
             log.info("Watermark embedding completed for image {}, response success: {}", 
                 imageIndex, watermarkResponse != null ? watermarkResponse.isSuccess() : "null");
             
-            saveWatermarkedImage(product, watermarkResponse, imageIndex, watermarkImageBase64);
+            saveWatermarkedImage(product, watermarkResponse, imageIndex, contentHash);
         } catch (Exception e) {
             log.error("Error in embedding watermark for new image {}: {}", imageIndex, e.getMessage(), e);
             throw new RuntimeException("Failed to embed watermark for image " + imageIndex + ": " + e.getMessage());
@@ -694,7 +1020,7 @@ public class ProductServiceImpl implements ProductService {
     /**
      * Save watermarked image to database
      */
-    private void saveWatermarkedImage(Product product, WatermarkEmbedResponseDTO watermarkResponse, int imageIndex, String watermarkImageBase64) {
+    private void saveWatermarkedImage(Product product, WatermarkEmbedResponseDTO watermarkResponse, int imageIndex, String contentHash) {
         if (watermarkResponse.isSuccess() && watermarkResponse.getData() != null) {
             ProductImage productImage = new ProductImage();
             productImage.setProduct(product); // Product is already managed
@@ -718,12 +1044,15 @@ public class ProductServiceImpl implements ProductService {
             // Save only the metadata part of the watermark response - this contains the essential watermarking info
             JsonNode metadataNode = watermarkResponse.getData().get("metadata");
             if (metadataNode != null) {
-                productImage.setJsonImage(metadataNode);
+                productImage.setMetadata(watermarkMetadataRegistry.intern(metadataNode));
             } else {
                 throw new RuntimeException("No metadata found in watermark response for image " + imageIndex);
             }
             
-            productImageRepository.save(productImage);
+            productImage.setPerceptualHash(PerceptualHasher.hashBase64(watermarkedImageBase64));
+            productImage.setContentHash(contentHash);
+            watermarkCandidateSnapshot.add(productImageRepository.save(productImage));
+            eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId()));
             log.info("Successfully processed and watermarked image {} for product {}", imageIndex, product.getProductId());
         } else {
             log.warn("Watermark service failed for image {}: {}", imageIndex, watermarkResponse.getMessage());
@@ -735,87 +1064,72 @@ public class ProductServiceImpl implements ProductService {
      * Find matching metadata and process image with extraction + watermark detection
      * This solves Problem 2: When we have existing images, we need to find the right metadata
      */
-    private boolean findAndProcessWithMatchingMetadata(Product product, String newImageBase64, 
-                                                     String watermarkImageBase64, List<ProductImage> existingImages, 
-                                                     int imageIndex, WatermarkDetectedException watermarkException) {
+    private boolean findAndProcessWithMatchingMetadata(Product product, ImagePayload newImage, 
+                                                     String watermarkImageBase64, List<WatermarkCandidateImage> existingImages, 
+                                                     int imageIndex, WatermarkDetectedException watermarkException,
+                                                     String contentHash) {
         try {
             // Strategy: Try to extract watermark from the new image using metadata from existing images
-            // If extraction succeeds and matches a known watermark, we found the right metadata
-            
-            for (ProductImage existingImage : existingImages) {
-                if (existingImage.getJsonImage() == null) {
-                    continue; // Skip images without metadata
-                }
-                
-                try {
+            // If extraction succeeds and matches a known watermark, we found the right metadata.
+            // Many images share the same metadata, so each distinct entry is tried once, in candidate order
+            List<Long> metadataIds = existingImages.stream()
+                .map(WatermarkCandidateImage::getMetadataId)
+                .filter(Objects::nonNull) // Skip images without metadata
+                .distinct()
+                .collect(Collectors.toList());
+            Map<Long, WatermarkMetadata> metadataById = watermarkMetadataRegistry.findAllById(metadataIds);
+            List<WatermarkMetadataCandidate> candidates = metadataIds.stream()
+                .map(metadataById::get)
+                .filter(Objects::nonNull)
+                .map(metadata -> new WatermarkMetadataCandidate(metadata.getMetadataId(), metadata.getJsonImage()))
+                .collect(Collectors.toList());
+            log.info("Trying {} distinct metadata entries from {} candidate images", candidates.size(), existingImages.size());
 
-                    System.out.println("this is watermark image base64: " + watermarkImageBase64);
-                    System.out.println("this is new image base64: " + newImageBase64);
-                    System.out.println("this is existing image json: " + existingImage.getJsonImage());
-                    
-                    // Try to extract watermark using this existing image's metadata
-                    WatermarkExtractResponseDTO extractResponse = watermarkService.extractWatermark(
-                        newImageBase64, existingImage.getJsonImage());
-
-                    System.out.println("den day r nha");
-                    
-                    if (extractResponse != null && extractResponse.isSuccess() && 
-                        extractResponse.getData() != null && 
-                        extractResponse.getData().getExtractedWatermark() != null) {
-                        // Extraction successful - check if this watermark exists in our database
-                        String extractedWatermark = extractResponse.getData().getExtractedWatermark(); // This would be the extracted watermark
-
-                        // Save extract response and extracted watermark to separate JSON files for debugging
-                        try {
-                            saveToJsonFile(extractResponse, "extract_response.json", "Extract Response");
-                            saveToJsonFile(extractedWatermark, "extracted_watermark.txt", "Extracted Watermark");
-                        } catch (Exception debugEx) {
-                            log.warn("Failed to save debug files: {}", debugEx.getMessage());
-                        }
-                        
-                        log.info("Extraction successful for image {} using metadata from image ID {}", 
-                            imageIndex, existingImage.getImageId());
-                        
-                        // Check if watermark is detected in the database
-                        WatermarkDetectionResult detectionResult = checkWatermarkInDatabase(extractedWatermark);
-                        
-                        if (detectionResult != null) {
-                            // Found matching metadata and detected watermark!
-                            log.info("Found matching metadata and detected watermark for image {} using existing image ID {}", 
-                                imageIndex, existingImage.getImageId());
-                            
-                            // Collect watermark detection information with full response data
-                            watermarkException.addDetectedWatermark(
-                                detectionResult.getWatermarkId(), 
-                                imageIndex, 
-                                newImageBase64, 
-                                detectionResult.getDetectionResponse(),
-                                detectionResult.getDetectStatus(),
-                                detectionResult.getWatermarkBase64(),
-                                extractedWatermark
-                            );
-                            
-                            // Skip embedding and save - watermark already exists, no need to process
-                            log.info("Skipping image {} - watermark already detected, no embedding needed", imageIndex);
-                            return true; // Match found, skip processing
-                        } else {
-                            // No watermark detected - proceed with embedding and save
-                            log.info("No watermark detected for image {} using metadata from image ID {}, proceeding with embedding", 
-                                imageIndex, existingImage.getImageId());
-                            
-                            // Process with embedding using the existing metadata
-                            processImageWithEmbeddingAndExistingMetadata(product, newImageBase64, watermarkImageBase64, existingImage.getJsonImage(), imageIndex);
-                            return true; // Processed successfully
-                        }
-                    }
-                } catch (Exception e) {
-                    // Extraction failed with this metadata, try next one
-                    log.debug("Extraction failed with metadata from image {}: {}", existingImage.getImageId(), e.getMessage());
-                    continue;
-                }
+            WatermarkMatchResult match = watermarkMetadataMatcher.findMatch(
+                newImage, candidates, this::checkWatermarkInDatabase);
+
+            if (match == null) {
+                return false; // No matching metadata found
             }
-            
-            return false; // No matching metadata found
+
+            String extractedWatermark = match.getExtractedWatermark();
+            Long metadataId = match.getCandidate().getSourceId();
+
+            // Capture extract response and extracted watermark for debugging (no-op unless enabled)
+            debugCapture.capture("extract_response", match.getExtractResponse());
+            debugCapture.capture("extracted_watermark", extractedWatermark);
+
+            log.info("Extraction successful for image {} using metadata ID {}", imageIndex, metadataId);
+
+            if (match.isDetected()) {
+                // Found matching metadata and detected watermark!
+                WatermarkDetectionResult detectionResult = match.getDetectionResult();
+                log.info("Found matching metadata and detected watermark for image {} using metadata ID {}", 
+                    imageIndex, metadataId);
+
+                // Collect watermark detection information with full response data
+                watermarkException.addDetectedWatermark(
+                    detectionResult.getWatermarkId(), 
+                    imageIndex, 
+                    newImage.asBase64(), 
+                    detectionResult.getDetectionResponse(),
+                    detectionResult.getDetectStatus(),
+                    detectionResult.getWatermarkBase64(),
+                    extractedWatermark
+                );
+
+                // Skip embedding and save - watermark already exists, no need to process
+                log.info("Skipping image {} - watermark already detected, no embedding needed", imageIndex);
+                return true; // Match found, skip processing
+            }
+
+            // No watermark detected - proceed with embedding and save
+            log.info("No watermark detected for image {} using metadata ID {}, proceeding with embedding", 
+                imageIndex, metadataId);
+
+            // Process with embedding using the existing metadata
+            processImageWithEmbeddingAndExistingMetadata(product, newImage, watermarkImageBase64, match.getCandidate().getMetadata(), imageIndex, contentHash);
+            return true; // Processed successfully
         } catch (Exception e) {
             log.error("Error in finding matching metadata for image {}: {}", imageIndex, e.getMessage());
             return false;
@@ -829,9 +1143,10 @@ public class ProductServiceImpl implements ProductService {
         ProductImage productImage = new ProductImage();
         productImage.setProduct(product); // Product is already managed
         productImage.setUrlImage(imageBase64); // Store the original image
-        productImage.setJsonImage(existingMetadata); // Reuse the existing metadata
+        productImage.setMetadata(watermarkMetadataRegistry.intern(existingMetadata)); // Reuse the existing metadata
         
         productImageRepository.save(productImage);
+        eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId()));
         log.info("Saved image {} with existing metadata for product {}", imageIndex, product.getProductId());
     }
     
@@ -839,13 +1154,13 @@ public class ProductServiceImpl implements ProductService {
      * Process image with embedding when no watermark is detected but we have existing metadata
      * This will embed a new watermark and save the result
      */
-    private void processImageWithEmbeddingAndExistingMetadata(Product product, String imageBase64, String watermarkImageBase64, JsonNode existingMetadata, int imageIndex) {
+    private void processImageWithEmbeddingAndExistingMetadata(Product product, ImagePayload image, String watermarkImageBase64, JsonNode existingMetadata, int imageIndex, String contentHash) {
         try {
             log.info("Starting watermark embedding for image {} (no watermark detected, using existing metadata)", imageIndex);
             
             // Embed watermark using the existing metadata as reference
             WatermarkEmbedResponseDTO watermarkResponse = watermarkService.embedWatermark(
-                imageBase64, watermarkImageBase64, 0.6);
+                image, watermarkImageBase64, 0.6);
             
             log.info("Watermark embedding completed for image {}, response success: {}", 
                 imageIndex, watermarkResponse != null ? watermarkResponse.isSuccess() : "null");
@@ -873,12 +1188,15 @@ public class ProductServiceImpl implements ProductService {
                 // Save the new metadata from the embedding process
                 JsonNode newMetadataNode = watermarkResponse.getData().get("metadata");
                 if (newMetadataNode != null) {
-                    productImage.setJsonImage(newMetadataNode);
+                    productImage.setMetadata(watermarkMetadataRegistry.intern(newMetadataNode));
                 } else {
                     throw new RuntimeException("No metadata found in watermark response for image " + imageIndex);
                 }
                 
-                productImageRepository.save(productImage);
+                productImage.setPerceptualHash(PerceptualHasher.hashBase64(watermarkedImageBase64));
+                productImage.setContentHash(contentHash);
+                watermarkCandidateSnapshot.add(productImageRepository.save(productImage));
+                eventPublisher.publishEvent(new ProductChangedEvent(product.getProductId()));
                 log.info("Successfully processed and watermarked image {} for product {} (no existing watermark detected)", imageIndex, product.getProductId());
             } else {
                 log.warn("Watermark service failed for image {}: {}", imageIndex, watermarkResponse.getMessage());
@@ -891,6 +1209,18 @@ public class ProductServiceImpl implements ProductService {
     }
 
     
+    /**
+     * Get the base64 watermark image of a store watermark.
+     * URLs are downloaded once and then served from the watermark registry.
+     */
+    private String resolveWatermarkImageBase64(Watermark watermark) {
+        String watermarkImageUrl = watermark.getWatermarkUrlImage();
+        if (watermarkImageUrl != null && (watermarkImageUrl.startsWith("http") || watermarkImageUrl.startsWith("@http"))) {
+            return watermarkRegistry.getImage(watermark, this::convertUrlToBase64);
+        }
+        return watermarkImageUrl; // Already base64 or other format
+    }
+
     /**
      * Helper method to convert image URL to base64 format
      * @param imageUrl The URL of the image (e.g., Cloudinary URL)
@@ -945,45 +1275,6 @@ public class ProductServiceImpl implements ProductService {
         }
     }
     
-    /**
-     * Utility method to save data to JSON files for debugging
-     * @param data The data to save
-     * @param filename The filename to save to
-     * @param description Description of what the data represents
-     */
-    private void saveToJsonFile(Object data, String filename, String description) {
-        try {
-            // Create debug directory if it doesn't exist
-            String debugDir = "debug_output";
-            File directory = new File(debugDir);
-            if (!directory.exists()) {
-                directory.mkdirs();
-            }
-            
-            // Generate timestamp for unique filenames
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String fullFilename = debugDir + File.separator + timestamp + "_" + filename;
-            
-            // Convert data to JSON string
-            String jsonContent;
-            if (data instanceof String) {
-                jsonContent = data.toString();
-            } else {
-                jsonContent = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(data);
-            }
-            
-            // Write to file
-            try (FileWriter writer = new FileWriter(fullFilename)) {
-                writer.write(jsonContent);
-            }
-            
-            log.info("Saved {} to file: {}", description, fullFilename);
-            
-        } catch (Exception e) {
-            log.error("Failed to save {} to file: {}", description, e.getMessage());
-        }
-    }
-    
     /**
      * Save watermark detection history to database
      */
@@ -995,7 +1286,6 @@ public class ProductServiceImpl implements ProductService {
             WatermarkDetectionHistory testHistory = WatermarkDetectionHistory.builder()
                 .productId(productId)
                 .storeName(storeName)
-                .detectedImageBase64(null)
                 .detectionTimestamp(LocalDateTime.now())
                 .watermarkId(999L)
                 .detectionMessage("TEST RECORD")
@@ -1055,14 +1345,14 @@ public class ProductServiceImpl implements ProductService {
                 WatermarkDetectionHistory history = WatermarkDetectionHistory.builder()
                     .productId(product.getProductId())
                     .storeName(e.getStoreName())
-                    .detectedImageBase64(detectedImageBase64) 
+                    .detectedImageHash(contentBlobStore.put(detectedImageBase64))
                     .detectionTimestamp(LocalDateTime.now())
                     .watermarkId(watermarkIdLong)
                     .detectionMessage(String.format("Watermark detected in image %d", imageIndex))
                     .watermarkDetectResponse(watermarkDetectResponse)
                     .detectStatus(detectStatus)
-                    .watermarkBase64(watermarkBase64)
-                    .extractedWatermarkBase64(extractedWatermarkBase64)
+                    .watermarkHash(contentBlobStore.put(watermarkBase64))
+                    .extractedWatermarkHash(contentBlobStore.put(extractedWatermarkBase64))
                     .build();
 
                 log.info("About to save watermark detection history: productId={}, storeName={}, watermarkId={}, imageIndex={}", 
@@ -1086,17 +1376,17 @@ public class ProductServiceImpl implements ProductService {
     
     /**
      * Check if watermark exists in database by calling watermark detection service
-     * Loops through all watermarks in the database and calls detectWatermark API
+     * Compares the extracted watermark against all watermarks in the database with one batch detect call
+     * Package-private so the matching benchmarks can drive it directly
      * @return WatermarkDetectionResult containing watermark ID and full response data
      */
-    private WatermarkDetectionResult checkWatermarkInDatabase(String extractedWatermark) {
+    WatermarkDetectionResult checkWatermarkInDatabase(String extractedWatermark) {
         try {
-            System.out.println("extracted watermark: " + extractedWatermark);
             log.info("Starting checkWatermarkInDatabase with extracted watermark length: {}", 
                 extractedWatermark != null ? extractedWatermark.length() : 0);
             
-            // Get all watermarks from the database
-            List<Watermark> allWatermarks = watermarkRepository.findAll();
+            // Get all watermarks from the in-memory registry
+            Collection<Watermark> allWatermarks = watermarkRegistry.findAll();
 
             if (allWatermarks.isEmpty()) {
                 log.warn("No watermarks found in database for comparison");
@@ -1105,52 +1395,67 @@ public class ProductServiceImpl implements ProductService {
             
             log.info("Checking extracted watermark against {} watermarks in database", allWatermarks.size());
             
-            // Loop through each watermark and call the detection service
+            // Reuse the results of earlier runs on the same extracted watermark; only the watermarks
+            // before the first cached detection need to be sent to the image service
+            String fingerprint = watermarkDetectionCache.fingerprint(extractedWatermark);
+            Map<Long, WatermarkDetectionResponseDTO> detectionResponses = new HashMap<>();
+            Map<Long, Watermark> uncached = new LinkedHashMap<>();
             for (Watermark watermark : allWatermarks) {
+                WatermarkDetectionResponseDTO cached = watermarkDetectionCache.get(fingerprint, watermark);
+                if (cached != null) {
+                    detectionResponses.put(watermark.getWatermarkId(), cached);
+                    if (cached.isWatermarkDetected()) {
+                        break;
+                    }
+                } else {
+                    uncached.put(watermark.getWatermarkId(), watermark);
+                }
+            }
+
+            // Collect the reference image of every uncached watermark, keeping database order
+            Map<Long, String> references = new LinkedHashMap<>();
+            for (Watermark watermark : uncached.values()) {
                 try {
-                    // Get the watermark image for comparison
                     String watermarkImageUrl = watermark.getWatermarkUrlImage();
-                    
                     if (watermarkImageUrl != null && !watermarkImageUrl.trim().isEmpty()) {
                         // Convert URL to base64 if it's a URL, otherwise use as-is
-                        String watermarkImageBase64;
-                        if (watermarkImageUrl.startsWith("http") || watermarkImageUrl.startsWith("@http")) {
-                            watermarkImageBase64 = convertUrlToBase64(watermarkImageUrl);
-                        } else {
-                            watermarkImageBase64 = watermarkImageUrl; // Already base64 or other format
-                        }
-                        System.out.println("watermark image base64: " + watermarkImageBase64);
-                        // Call the watermark detection service with full response
-                        log.info("Calling detectWatermarkWithResponse for watermark ID: {}, extracted watermark length: {}, original watermark length: {}", 
-                            watermark.getWatermarkId(), 
-                            extractedWatermark != null ? extractedWatermark.length() : 0,
-                            watermarkImageBase64 != null ? watermarkImageBase64.length() : 0);
-                        
-                        WatermarkDetectionResponseDTO detectionResponse = watermarkService.detectWatermarkWithResponse(extractedWatermark, watermarkImageBase64);
-                        boolean detected = detectionResponse != null && detectionResponse.isWatermarkDetected();
-                        
-                        log.info("Detection result for watermark ID {}: {}", watermark.getWatermarkId(), detected);
-                        
-                        if (detected) {
-                            log.info("Watermark detected! Matches watermark ID: {}", watermark.getWatermarkId());
-                            
-                            // Convert response to JsonNode
-                            JsonNode responseJson = objectMapper.valueToTree(detectionResponse);
-                            
-                            return new WatermarkDetectionResult(
-                                watermark.getWatermarkId().toString(),
-                                responseJson,
-                                "DETECTED",
-                                watermarkImageBase64
-                            );
-                        }
+                        references.put(watermark.getWatermarkId(), resolveWatermarkImageBase64(watermark));
                     } else {
                         log.debug("Skipping watermark ID {} - no watermark image available", watermark.getWatermarkId());
                     }
                 } catch (Exception e) {
-                    log.warn("Error checking watermark ID {}: {}", watermark.getWatermarkId(), e.getMessage());
+                    log.warn("Error loading watermark ID {}: {}", watermark.getWatermarkId(), e.getMessage());
                     // Continue with next watermark instead of failing completely
-                    continue;
+                }
+            }
+
+            if (!references.isEmpty()) {
+                Map<Long, WatermarkDetectionResponseDTO> fetched =
+                    watermarkService.detectWatermarkBatch(extractedWatermark, references);
+                fetched.forEach((watermarkId, response) ->
+                    watermarkDetectionCache.put(fingerprint, uncached.get(watermarkId), response));
+                detectionResponses.putAll(fetched);
+            }
+
+            for (Watermark watermark : allWatermarks) {
+                WatermarkDetectionResponseDTO detectionResponse = detectionResponses.get(watermark.getWatermarkId());
+                boolean detected = detectionResponse != null && detectionResponse.isWatermarkDetected();
+
+                log.info("Detection result for watermark ID {}: {}", watermark.getWatermarkId(), detected);
+
+                if (detected) {
+                    log.info("Watermark detected! Matches watermark ID: {}", watermark.getWatermarkId());
+
+                    // Convert response to JsonNode
+                    JsonNode responseJson = objectMapper.valueToTree(detectionResponse);
+
+                    return new WatermarkDetectionResult(
+                        watermark.getWatermarkId().toString(),
+                        responseJson,
+                        "DETECTED",
+                        references.containsKey(watermark.getWatermarkId())
+                            ? references.get(watermark.getWatermarkId()) : resolveWatermarkImageBase64(watermark)
+                    );
                 }
             }
             
@@ -1165,39 +1470,14 @@ public class ProductServiceImpl implements ProductService {
  
     
     /**
-     * Bulk load colors for multiple products to avoid N+1 queries
-     */
-    private Map<Long, List<String>> getColorsMapByProductIds(List<Long> productIds) {
-        List<ProductColor> allColors = productColorRepository.findByProductProductIdIn(productIds);
-        return allColors.stream()
-                .collect(Collectors.groupingBy(
-                    color -> color.getProduct().getProductId(),
-                    Collectors.mapping(ProductColor::getColor, Collectors.toList())
-                ));
-    }
-    
-    /**
-     * Bulk load sizes for multiple products to avoid N+1 queries
+     * Group (productId, value) rows by product, keeping their order
      */
-    private Map<Long, List<String>> getSizesMapByProductIds(List<Long> productIds) {
-        List<ProductSize> allSizes = productSizeRepository.findByProductProductIdIn(productIds);
-        return allSizes.stream()
-                .collect(Collectors.groupingBy(
-                    size -> size.getProduct().getProductId(),
-                    Collectors.mapping(ProductSize::getSize, Collectors.toList())
-                ));
-    }
-    
-    /**
-     * Bulk load images for multiple products to avoid N+1 queries
-     */
-    private Map<Long, List<String>> getImagesMapByProductIds(List<Long> productIds) {
-        List<ProductImage> allImages = productImageRepository.findByProductProductIdIn(productIds);
-        return allImages.stream()
-                .collect(Collectors.groupingBy(
-                    image -> image.getProduct().getProductId(),
-                    Collectors.mapping(ProductImage::getUrlImage, Collectors.toList())
-                ));
+    private Map<Long, List<String>> groupByProductId(List<Object[]> rows) {
+        Map<Long, List<String>> valuesByProductId = new HashMap<>();
+        for (Object[] row : rows) {
+            valuesByProductId.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+        }
+        return valuesByProductId;
     }
     
     /**
@@ -12,12 +12,14 @@ import com.example.TTECHT.dto.request.WatermarkCreationRequest;
 import com.example.TTECHT.dto.request.WatermarkUpdateRequest;
 import com.example.TTECHT.dto.repsonse.WatermarkResponse;
 import com.example.TTECHT.service.WatermarkService;
+import com.example.TTECHT.event.WatermarkChangedEvent;
 
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,6 +31,7 @@ public class WatermarkServiceImpl implements WatermarkService {
 
     WatermarkRepository watermarkRepository;
     SellerRepository sellerRepository;
+    ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional
@@ -55,6 +58,7 @@ public class WatermarkServiceImpl implements WatermarkService {
                 .build();
 
             watermarkRepository.save(watermark);
+            eventPublisher.publishEvent(new WatermarkChangedEvent(watermark.getWatermarkId(), watermark.getStoreName()));
             log.info("Watermark created successfully for store: {}", request.getStoreName());
 
             return WatermarkResponse.builder()
@@ -113,6 +117,7 @@ public class WatermarkServiceImpl implements WatermarkService {
             // update watermark details
             existingWatermark.setWatermarkUrlImage(request.getWatermarkUrlImage());
             watermarkRepository.save(existingWatermark);
+            eventPublisher.publishEvent(new WatermarkChangedEvent(existingWatermark.getWatermarkId(), storeName));
             log.info("Watermark updated successfully for store: {}", storeName);
 
             return WatermarkResponse.builder()
@@ -144,11 +149,12 @@ public class WatermarkServiceImpl implements WatermarkService {
                 .orElseThrow(() -> new AppException(ErrorCode.SELLER_NOT_FOUND, "Store does not exist"));
 
             // check if watermark exists
-            watermarkRepository.findByStoreName(storeName)
+            Watermark watermark = watermarkRepository.findByStoreName(storeName)
                 .orElseThrow(() -> new AppException(ErrorCode.WATERMARK_NOT_FOUND, "Watermark does not exist for this store"));
 
             // delete watermark
             watermarkRepository.deleteByStoreName(storeName);
+            eventPublisher.publishEvent(new WatermarkChangedEvent(watermark.getWatermarkId(), storeName));
             log.info("Watermark deleted successfully for store: {}", storeName);
 
         } catch (AppException e) {
@@ -0,0 +1,98 @@
+package com.example.TTECHT.service.search;
+
+import com.example.TTECHT.entity.Product;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Position in a keyset-paginated product listing: the sort value and ID of the last product returned.
+ *
+ * Clients get it as an opaque URL-safe string. The string also names the order it was made for, so
+ * a cursor cannot be replayed against a different order.
+ */
+@Getter
+public final class ProductListingCursor {
+
+    /**
+     * Orders a listing can be paged in; each is backed by a (sort column, product_id) index
+     */
+    public enum Order {
+        NEWEST, BEST_SELLING, PRICE_ASC, PRICE_DESC;
+
+        /**
+         * @param value e.g. "newest" or "price_asc", null for the default order
+         */
+        public static Order fromParam(String value) {
+            if (value == null || value.isBlank()) {
+                return NEWEST;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown product sort: " + value);
+            }
+        }
+    }
+
+    private final Order order;
+    private final String sortValue;
+    private final Long productId;
+
+    private ProductListingCursor(Order order, String sortValue, Long productId) {
+        this.order = order;
+        this.sortValue = sortValue;
+        this.productId = productId;
+    }
+
+    /**
+     * Cursor pointing just after the given product
+     */
+    public static String encode(Order order, Product last) {
+        String sortValue = switch (order) {
+            case NEWEST -> last.getCreatedAt().toString();
+            case BEST_SELLING -> String.valueOf(last.getSoldQuantity());
+            case PRICE_ASC, PRICE_DESC -> last.getPrice().toPlainString();
+        };
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (order + "|" + sortValue + "|" + last.getProductId()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor is malformed or was made for another order
+     */
+    public static ProductListingCursor decode(Order order, String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+            if (parts.length != 3 || !parts[0].equals(order.name())) {
+                throw new IllegalArgumentException("Cursor does not belong to sort " + order);
+            }
+            ProductListingCursor decoded = new ProductListingCursor(order, parts[1], Long.parseLong(parts[2]));
+            // Parse once here, so a bad value is reported as a bad cursor
+            switch (order) {
+                case NEWEST -> decoded.getCreatedAt();
+                case BEST_SELLING -> decoded.getSoldQuantity();
+                default -> decoded.getPrice();
+            }
+            return decoded;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return LocalDateTime.parse(sortValue);
+    }
+
+    public Integer getSoldQuantity() {
+        return Integer.valueOf(sortValue);
+    }
+
+    public BigDecimal getPrice() {
+        return new BigDecimal(sortValue);
+    }
+}
@@ -0,0 +1,499 @@
+package com.example.TTECHT.service.search;
+
+import com.example.TTECHT.entity.Product;
+import com.example.TTECHT.event.ProductChangedEvent;
+import com.example.TTECHT.event.ProductsChangedEvent;
+import com.example.TTECHT.repository.ProductRepository;
+import com.example.TTECHT.service.cluster.NodeIdentity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.Normalizer;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory inverted index over the product catalog, so storefront search never queries Postgres.
+ *
+ * Indexes the name, brand, store name, category name and description of every product. Terms are
+ * lower-cased and stripped of diacritics, and each query word matches any term it is a prefix of;
+ * all words must match. Matches can be filtered by category, store and price range and are
+ * returned as the top-k product IDs by sold quantity or creation date.
+ *
+ * Products get dense int document IDs and postings are sorted int arrays, turned into bitmaps once
+ * a term is in more than 1/32 of the documents (the roaring bitmap container choice). The index is
+ * built once the application is ready, reading the catalog in chunks, and updated after commit from
+ * {@link ProductChangedEvent}s: a changed product is re-read and gets a new document, the old one
+ * is marked deleted. Deleted documents are compacted away once they outnumber the live ones.
+ *
+ * Other nodes are told over a Redis channel which products changed and re-read them too. Re-reads
+ * are serialized, each reading the database under the same lock it applies under, so an older read
+ * never replaces a newer one.
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex implements MessageListener {
+
+    public enum SortOrder { SOLD, RECENT }
+
+    public static final String CHANNEL = "product-search:changed";
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final int MAX_QUERY_WORDS = 8;
+
+    private final ProductRepository productRepository;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Serializes re-reads from the database, searches only wait for the write lock
+    private final Object reindexLock = new Object();
+    private final NodeIdentity nodeIdentity;
+
+    private Index index = new Index();
+    private volatile boolean ready = false;
+    // Products changed while the index was being built, applied once it is in place
+    private Set<Long> pendingProductIds = new HashSet<>();
+    private boolean building = false;
+
+    @Value("${product.search.in-memory.enabled:true}")
+    private boolean enabled;
+
+    @Value("${product.search.in-memory.chunk-size:1000}")
+    private int chunkSize;
+
+    public ProductSearchIndex(ProductRepository productRepository,
+                              @Qualifier("regisTemplate") RedisTemplate<String, String> redisTemplate,
+                              NodeIdentity nodeIdentity) {
+        this.productRepository = productRepository;
+        this.redisTemplate = redisTemplate;
+        this.nodeIdentity = nodeIdentity;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            building = true;
+            pendingProductIds = new HashSet<>();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Index built = new Index();
+            long lastProductId = 0;
+            List<Product> chunk;
+            do {
+                chunk = productRepository.findChunkAfter(lastProductId, PageRequest.of(0, chunkSize));
+                for (Product product : chunk) {
+                    built.add(product);
+                    lastProductId = product.getProductId();
+                }
+            } while (chunk.size() == chunkSize);
+
+            lock.writeLock().lock();
+            try {
+                index = built;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Product search index built with {} products and {} terms in {} ms",
+                    built.liveCount(), built.terms.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Failed to build product search index: {}", e.getMessage(), e);
+        } finally {
+            Set<Long> pending;
+            synchronized (this) {
+                building = false;
+                pending = pendingProductIds;
+                pendingProductIds = new HashSet<>();
+            }
+            if (ready && !pending.isEmpty()) {
+                reindex(pending);
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        reindex(List.of(event.getProductId()));
+        notifyOtherNodes(List.of(event.getProductId()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        reindex(event.getProductIds());
+        notifyOtherNodes(event.getProductIds());
+    }
+
+    /**
+     * Re-read the products changed on another node; the body is the node ID and comma-separated product IDs
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String payload = nodeIdentity.payloadFromOtherNode(message);
+        if (payload == null) {
+            return;
+        }
+        List<Long> productIds;
+        try {
+            productIds = Arrays.stream(payload.split(",")).map(Long::valueOf).toList();
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed product search notification: {}", payload);
+            return;
+        }
+        reindex(productIds);
+    }
+
+    /**
+     * Find products matching every word of the query
+     *
+     * @param query Search text; blank matches every product
+     * @param categoryId Only products of this category, null for any
+     * @param storeName Only products of this store (case-insensitive), null for any
+     * @param minPrice Lowest price, null for no bound
+     * @param maxPrice Highest price, null for no bound
+     * @param sort Order of the results
+     * @param limit Maximum number of results
+     * @return product IDs, best first
+     */
+    public List<Long> search(String query, Long categoryId, String storeName, BigDecimal minPrice,
+                             BigDecimal maxPrice, SortOrder sort, int limit) {
+        List<String> words = tokenize(query).stream().distinct().limit(MAX_QUERY_WORDS).toList();
+        lock.readLock().lock();
+        try {
+            Index current = index;
+            BitSet matches = null;
+            for (String word : words) {
+                BitSet wordMatches = current.prefixMatches(word);
+                if (matches == null) {
+                    matches = wordMatches;
+                } else {
+                    matches.and(wordMatches);
+                }
+                if (matches.isEmpty()) {
+                    return List.of();
+                }
+            }
+            if (matches == null) {
+                matches = new BitSet(current.size);
+                matches.set(0, current.size);
+            }
+            matches.andNot(current.deleted);
+
+            Integer store = storeName != null && !storeName.isBlank()
+                    ? current.storeOrdinals.get(storeName.trim().toLowerCase(Locale.ROOT)) : null;
+            if (storeName != null && !storeName.isBlank() && store == null) {
+                return List.of();
+            }
+            long min = minPrice != null ? toCents(minPrice) : Long.MIN_VALUE;
+            long max = maxPrice != null ? toCents(maxPrice) : Long.MAX_VALUE;
+
+            // Bounded heap holding the best results seen so far, worst on top
+            Comparator<Integer> order = current.order(sort);
+            PriorityQueue<Integer> top = new PriorityQueue<>(Math.max(1, limit), order.reversed());
+            for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1)) {
+                if ((categoryId != null && current.categoryIds[doc] != categoryId)
+                        || (store != null && current.stores[doc] != store)
+                        || current.prices[doc] < min || current.prices[doc] > max) {
+                    continue;
+                }
+                top.offer(doc);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+
+            List<Integer> docs = new ArrayList<>(top);
+            docs.sort(order);
+            return docs.stream().map(doc -> current.productIds[doc]).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void reindex(Collection<Long> productIds) {
+        if (!enabled || productIds.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (building) {
+                pendingProductIds.addAll(productIds);
+                return;
+            }
+        }
+        if (!ready) {
+            return;
+        }
+        try {
+            List<Long> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                List<Long> chunkIds = ids.subList(from, Math.min(ids.size(), from + chunkSize));
+                // Read and apply under one lock: reads run after commit, so a later read is never older
+                synchronized (reindexLock) {
+                    Map<Long, Product> products = new HashMap<>();
+                    productRepository.findWithCategoryAndSellerByIdIn(chunkIds)
+                            .forEach(product -> products.put(product.getProductId(), product));
+
+                    lock.writeLock().lock();
+                    try {
+                        for (Long productId : chunkIds) {
+                            index.remove(productId);
+                            Product product = products.get(productId);
+                            if (product != null) {
+                                index.add(product);
+                            }
+                        }
+                        if (index.deletedCount > Math.max(1024, index.liveCount())) {
+                            index = index.compact();
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to update product search index for {} products: {}", productIds.size(), e.getMessage(), e);
+        }
+    }
+
+    private void notifyOtherNodes(Collection<Long> productIds) {
+        if (!enabled || productIds.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(CHANNEL, nodeIdentity.tag(productIds.stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(","))));
+        } catch (Exception e) {
+            // Other nodes keep the old entries until they restart or see a later change of the products
+            log.warn("Failed to notify other nodes of search index changes for {} products: {}", productIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Split text into lower-case words without diacritics; "Áo thun-Nam" gives [ao, thun, nam]
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .replace('đ', 'd')
+                .replace('Đ', 'D')
+                .toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(folded))
+                .filter(word -> !word.isEmpty())
+                .toList();
+    }
+
+    private static long toCents(BigDecimal price) {
+        return price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * Postings of one term: a sorted array while sparse, a bitmap once dense
+     */
+    private static class Postings {
+        private int[] docs = new int[2];
+        private int count;
+        private BitSet bits;
+
+        private void add(int doc, int size) {
+            if (bits != null) {
+                bits.set(doc);
+                count++;
+                return;
+            }
+            if (count == docs.length) {
+                if (count >= 64 && count > size / 32) {
+                    bits = new BitSet(size);
+                    for (int i = 0; i < count; i++) {
+                        bits.set(docs[i]);
+                    }
+                    bits.set(doc);
+                    docs = null;
+                    count++;
+                    return;
+                }
+                docs = Arrays.copyOf(docs, count * 2);
+            }
+            docs[count++] = doc;
+        }
+
+        private void orInto(BitSet target) {
+            if (bits != null) {
+                target.or(bits);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    target.set(docs[i]);
+                }
+            }
+        }
+
+        private Postings remap(int[] newDocs, int newSize) {
+            Postings remapped = new Postings();
+            if (bits != null) {
+                for (int doc = bits.nextSetBit(0); doc >= 0; doc = bits.nextSetBit(doc + 1)) {
+                    if (newDocs[doc] >= 0) {
+                        remapped.add(newDocs[doc], newSize);
+                    }
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    if (newDocs[docs[i]] >= 0) {
+                        remapped.add(newDocs[docs[i]], newSize);
+                    }
+                }
+            }
+            return remapped.count > 0 ? remapped : null;
+        }
+    }
+
+    private static class Index {
+        private final TreeMap<String, Postings> terms = new TreeMap<>();
+        private final Map<Long, Integer> docsByProduct = new HashMap<>();
+        private final Map<String, Integer> storeOrdinals = new HashMap<>();
+        private final BitSet deleted = new BitSet();
+        private int size;
+        private int deletedCount;
+
+        private long[] productIds = new long[1024];
+        private long[] categoryIds = new long[1024];
+        private int[] stores = new int[1024];
+        private long[] prices = new long[1024];
+        private int[] soldQuantities = new int[1024];
+        private long[] createdAt = new long[1024];
+
+        private void add(Product product) {
+            if (size == productIds.length) {
+                int capacity = size * 2;
+                productIds = Arrays.copyOf(productIds, capacity);
+                categoryIds = Arrays.copyOf(categoryIds, capacity);
+                stores = Arrays.copyOf(stores, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                soldQuantities = Arrays.copyOf(soldQuantities, capacity);
+                createdAt = Arrays.copyOf(createdAt, capacity);
+            }
+            int doc = size++;
+            String storeName = product.getStoreName() != null ? product.getStoreName().trim().toLowerCase(Locale.ROOT) : "";
+            productIds[doc] = product.getProductId();
+            categoryIds[doc] = product.getCategory() != null ? product.getCategory().getCategoryId() : -1;
+            stores[doc] = storeOrdinals.computeIfAbsent(storeName, name -> storeOrdinals.size());
+            prices[doc] = product.getPrice() != null ? toCents(product.getPrice()) : 0;
+            soldQuantities[doc] = product.getSoldQuantity() != null ? product.getSoldQuantity() : 0;
+            createdAt[doc] = product.getCreatedAt() != null ? product.getCreatedAt().toEpochSecond(ZoneOffset.UTC) : 0;
+            docsByProduct.put(product.getProductId(), doc);
+
+            Set<String> words = new HashSet<>();
+            words.addAll(tokenize(product.getName()));
+            words.addAll(tokenize(product.getBrand()));
+            words.addAll(tokenize(product.getStoreName()));
+            words.addAll(tokenize(product.getCategory() != null ? product.getCategory().getName() : null));
+            words.addAll(tokenize(product.getDescription()));
+            for (String word : words) {
+                terms.computeIfAbsent(word, term -> new Postings()).add(doc, size);
+            }
+        }
+
+        private void remove(Long productId) {
+            Integer doc = docsByProduct.remove(productId);
+            if (doc != null) {
+                deleted.set(doc);
+                deletedCount++;
+            }
+        }
+
+        private int liveCount() {
+            return size - deletedCount;
+        }
+
+        private BitSet prefixMatches(String prefix) {
+            BitSet matches = new BitSet(size);
+            for (Postings postings : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+                postings.orInto(matches);
+            }
+            return matches;
+        }
+
+        private Comparator<Integer> order(SortOrder sort) {
+            Comparator<Integer> primary = sort == SortOrder.RECENT
+                    ? Comparator.comparingLong((Integer doc) -> createdAt[doc]).reversed()
+                    : Comparator.comparingInt((Integer doc) -> soldQuantities[doc]).reversed();
+            return primary.thenComparing(Comparator.comparingLong((Integer doc) -> productIds[doc]).reversed());
+        }
+
+        // Copy without the deleted documents, renumbering the rest
+        private Index compact() {
+            Index compacted = new Index();
+            int[] newDocs = new int[size];
+            int next = 0;
+            for (int doc = 0; doc < size; doc++) {
+                newDocs[doc] = deleted.get(doc) ? -1 : next++;
+            }
+            int capacity = Math.max(1024, next);
+            compacted.productIds = new long[capacity];
+            compacted.categoryIds = new long[capacity];
+            compacted.stores = new int[capacity];
+            compacted.prices = new long[capacity];
+            compacted.soldQuantities = new int[capacity];
+            compacted.createdAt = new long[capacity];
+            for (int doc = 0; doc < size; doc++) {
+                int newDoc = newDocs[doc];
+                if (newDoc < 0) {
+                    continue;
+                }
+                compacted.productIds[newDoc] = productIds[doc];
+                compacted.categoryIds[newDoc] = categoryIds[doc];
+                compacted.stores[newDoc] = stores[doc];
+                compacted.prices[newDoc] = prices[doc];
+                compacted.soldQuantities[newDoc] = soldQuantities[doc];
+                compacted.createdAt[newDoc] = createdAt[doc];
+                compacted.docsByProduct.put(productIds[doc], newDoc);
+            }
+            compacted.size = next;
+            compacted.storeOrdinals.putAll(storeOrdinals);
+            for (Map.Entry<String, Postings> term : terms.entrySet()) {
+                Postings remapped = term.getValue().remap(newDocs, next);
+                if (remapped != null) {
+                    compacted.terms.put(term.getKey(), remapped);
+                }
+            }
+            log.info("Compacted product search index from {} to {} documents", size, next);
+            return compacted;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.TTECHT.service.search;
+
+import com.example.TTECHT.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Creates the search schema that Hibernate's schema update cannot express: the stored generated
+ * {@code search_document} tsvector column read by {@link ProductRepository#searchRankedIds}, a GIN
+ * index on it, and pg_trgm GIN indexes that let the {@code LOWER(x) LIKE '%...%'} name and store
+ * filters use an index.
+ *
+ * The column is added before the application serves requests, as search queries read it; adding it
+ * rewrites the product table once. The indexes are created once the application is ready and are
+ * idempotent. They are built CONCURRENTLY so writes to the product table are not blocked, and an
+ * index left invalid by an interrupted build is dropped and rebuilt. Postgres keeps the column and
+ * the indexes up to date from then on. Until the indexes exist, search works but scans the table.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class ProductSearchIndexes {
+
+    // Weighted full-text document of a product, stored so ranking does not recompute it per match
+    private static final String SEARCH_DOCUMENT =
+            "(setweight(to_tsvector('simple', coalesce(name, '')), 'A') || " +
+            "setweight(to_tsvector('simple', coalesce(brand, '')), 'B') || " +
+            "setweight(to_tsvector('simple', coalesce(description, '')), 'C'))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${product.search.create-indexes:true}")
+    private boolean createIndexes;
+
+    public ProductSearchIndexes(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Runs after Hibernate updated the schema, so the product table exists
+     */
+    @PostConstruct
+    public void addSearchDocumentColumn() {
+        Integer columns = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns " +
+                "WHERE table_name = 'product' AND column_name = 'search_document'",
+                Integer.class);
+        if (columns != null && columns > 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        jdbcTemplate.execute("ALTER TABLE product ADD COLUMN IF NOT EXISTS search_document tsvector " +
+                "GENERATED ALWAYS AS " + SEARCH_DOCUMENT + " STORED");
+        log.info("Added product search_document column in {} ms", System.currentTimeMillis() - start);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        if (!createIndexes) {
+            return;
+        }
+        createIndex("idx_product_search_vector", "product", "USING GIN (search_document)");
+        // Expression index used before the document was stored
+        dropIndex("idx_product_search_document");
+
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        } catch (Exception e) {
+            log.warn("pg_trgm is not available, substring search will scan the table: {}", e.getMessage());
+            return;
+        }
+        Map<String, String[]> trigramIndexes = new LinkedHashMap<>();
+        trigramIndexes.put("idx_product_name_trgm", new String[]{"product", "lower(name)"});
+        trigramIndexes.put("idx_product_store_name_trgm", new String[]{"product", "lower(store_name)"});
+        trigramIndexes.put("idx_category_name_trgm", new String[]{"category", "lower(name)"});
+        trigramIndexes.forEach((name, target) ->
+                createIndex(name, target[0], "USING GIN (" + target[1] + " gin_trgm_ops)"));
+    }
+
+    private void dropIndex(String name) {
+        try {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+        } catch (Exception e) {
+            log.warn("Failed to drop search index {}: {}", name, e.getMessage());
+        }
+    }
+
+    private void createIndex(String name, String table, String definition) {
+        try {
+            Boolean valid = jdbcTemplate.query(
+                    "SELECT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE c.relname = ?",
+                    rs -> rs.next() ? rs.getBoolean(1) : null, name);
+            if (Boolean.TRUE.equals(valid)) {
+                return;
+            }
+            if (Boolean.FALSE.equals(valid)) {
+                log.warn("Rebuilding invalid search index {}", name);
+                jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+            }
+            long start = System.currentTimeMillis();
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + name + " ON " + table + " " + definition);
+            log.info("Created search index {} in {} ms", name, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Failed to create search index {}: {}", name, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.TTECHT.service.search;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Turns storefront search input into the parameters of {@code ProductRepository.searchRankedIds}
+ */
+public final class ProductSearchQuery {
+
+    // Words longer than this are cut, very long inputs keep only the first words
+    private static final int MAX_WORD_LENGTH = 64;
+    private static final int MAX_WORDS = 8;
+
+    private ProductSearchQuery() {
+    }
+
+    /**
+     * Prefix full-text query matching every word of the input, so partly typed words match too
+     *
+     * @return e.g. "red:* & sho:*" for "Red sho", or null when the input has no letters or digits
+     */
+    public static String toPrefixTsQuery(String input) {
+        if (input == null) {
+            return null;
+        }
+        // Keep letters and digits only, so nothing in the input is read as tsquery syntax
+        String query = Arrays.stream(input.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .limit(MAX_WORDS)
+                .map(word -> (word.length() > MAX_WORD_LENGTH ? word.substring(0, MAX_WORD_LENGTH) : word) + ":*")
+                .collect(Collectors.joining(" & "));
+        return query.isEmpty() ? null : query;
+    }
+
+    /**
+     * Lower-case LIKE pattern matching the input anywhere, with LIKE wildcards in the input escaped
+     */
+    public static String containsPattern(String input) {
+        String escaped = input.trim().toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
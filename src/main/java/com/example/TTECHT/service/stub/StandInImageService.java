@@ -0,0 +1,239 @@
+package com.example.TTECHT.service.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stand-in for the Python image service and the Cloudinary upload service, for load and soak tests.
+ *
+ * Payloads are deterministic: the "watermarked" image is a small PNG derived from the hash of the
+ * original and watermark images, and extracting from an image this stand-in embedded returns the
+ * exact watermark that was embedded, so /detect matches it. Any other image extracts to noise and
+ * never matches. Latency and failures are injected per endpoint from
+ * {@code image-service-stub.<endpoint>.*} (falling back to {@code image-service-stub.*}):
+ * latency-distribution (fixed, uniform, exponential or lognormal), latency-ms, latency-spread,
+ * latency-max-ms and error-rate.
+ */
+@Service
+@Profile("image-service-stub")
+@Slf4j
+public class StandInImageService {
+
+    private static final String PREFIX = "image-service-stub";
+    private static final int IMAGE_SIZE = 32;
+
+    private final Environment environment;
+    private final ObjectMapper objectMapper;
+
+    // Image hash -> hash of the watermark embedded into it, and watermark hash -> watermark image
+    private final Map<String, String> embeddedWatermarks;
+    private final Map<String, String> watermarkImages;
+
+    public StandInImageService(Environment environment, ObjectMapper objectMapper) {
+        this.environment = environment;
+        this.objectMapper = objectMapper;
+        int maxImages = environment.getProperty(PREFIX + ".max-remembered-images", Integer.class, 100000);
+        this.embeddedWatermarks = boundedMap(maxImages);
+        this.watermarkImages = boundedMap(1000);
+    }
+
+    public ObjectNode embed(JsonNode request) {
+        String originalImage = request.path("original_image").asText("");
+        String watermarkImage = request.path("watermark_image").asText("");
+        String watermarkHash = sha256(watermarkImage);
+        String watermarkedImage = fakeImage(sha256(originalImage + "|" + watermarkHash));
+        synchronized (this) {
+            watermarkImages.put(watermarkHash, watermarkImage);
+            embeddedWatermarks.put(sha256(watermarkedImage), watermarkHash);
+        }
+
+        ObjectNode metadata = objectMapper.createObjectNode()
+                .put("unique_id", watermarkHash.substring(0, 16))
+                .put("alpha", request.path("alpha").asDouble(0.6))
+                .put("wavelet", "haar");
+        metadata.putArray("canonical_size").add(IMAGE_SIZE).add(IMAGE_SIZE);
+        ObjectNode data = objectMapper.createObjectNode().put("watermarked_image", watermarkedImage);
+        data.set("metadata", metadata);
+        return success("Watermark embedded", data);
+    }
+
+    public ObjectNode extract(JsonNode request) {
+        String suspectImage = request.path("suspect_image").asText("");
+        String watermarkImage;
+        synchronized (this) {
+            String watermarkHash = embeddedWatermarks.get(sha256(suspectImage));
+            watermarkImage = watermarkHash != null ? watermarkImages.get(watermarkHash) : null;
+        }
+        if (watermarkImage == null) {
+            watermarkImage = fakeImage(sha256(suspectImage + "|" + request.path("sideinfo_json_path")));
+        }
+
+        ObjectNode data = objectMapper.createObjectNode()
+                .put("extracted_watermark", watermarkImage)
+                .put("unique_id", request.path("sideinfo_json_path").path("unique_id").asText(null))
+                .put("alpha", request.path("sideinfo_json_path").path("alpha").asDouble(0.6))
+                .put("wavelet", "haar");
+        return success("Watermark extracted", data).put("status", "extracted");
+    }
+
+    public ObjectNode detect(JsonNode request) {
+        boolean match = request.path("extracted_watermark").asText("")
+                .equals(request.path("original_watermark").asText(null));
+        return success("Detection completed", detection(match));
+    }
+
+    public ObjectNode detectBatch(JsonNode request) {
+        String extractedWatermark = request.path("extracted_watermark").asText("");
+        ArrayNode results = objectMapper.createArrayNode();
+        for (JsonNode reference : request.path("references")) {
+            ObjectNode result = detection(extractedWatermark.equals(reference.path("original_watermark").asText(null)));
+            result.put("watermark_id", reference.path("watermark_id").asLong());
+            results.add(result);
+        }
+        ObjectNode data = objectMapper.createObjectNode();
+        data.set("results", results);
+        return success("Batch detection completed", data);
+    }
+
+    public ObjectNode upload(JsonNode request) {
+        String image = request.path("image").asText("");
+        String publicId = "stub_" + sha256(image).substring(0, 24);
+        ObjectNode data = objectMapper.createObjectNode()
+                .put("public_id", publicId)
+                .put("url", "https://stub.invalid/ttecht/" + publicId + ".png")
+                .put("format", "png")
+                .put("width", IMAGE_SIZE)
+                .put("height", IMAGE_SIZE)
+                .put("file_size", (long) image.length() * 3 / 4);
+        return success("Image uploaded", data);
+    }
+
+    /**
+     * Delay to apply to one call of the endpoint, drawn from its configured distribution
+     */
+    public long nextLatencyMs(String endpoint) {
+        String distribution = setting(endpoint, "latency-distribution", String.class, "fixed");
+        double latencyMs = setting(endpoint, "latency-ms", Double.class, 0.0);
+        double spread = setting(endpoint, "latency-spread", Double.class, 0.0);
+        long maxMs = setting(endpoint, "latency-max-ms", Long.class, 60000L);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        double delay = switch (distribution) {
+            // latency-ms +/- latency-spread
+            case "uniform" -> latencyMs + (random.nextDouble() * 2 - 1) * spread;
+            // latency-ms is the mean
+            case "exponential" -> -latencyMs * Math.log(1 - random.nextDouble());
+            // latency-ms is the median, latency-spread the sigma of the underlying normal
+            case "lognormal" -> latencyMs * Math.exp(spread * random.nextGaussian());
+            default -> latencyMs;
+        };
+        return Math.max(0, Math.min(maxMs, Math.round(delay)));
+    }
+
+    /**
+     * Whether this call of the endpoint should fail, according to its configured error rate
+     */
+    public boolean shouldFail(String endpoint) {
+        double errorRate = setting(endpoint, "error-rate", Double.class, 0.0);
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    public ObjectNode failure(String endpoint) {
+        return objectMapper.createObjectNode()
+                .put("success", false)
+                .put("message", "Injected failure of " + endpoint);
+    }
+
+    private ObjectNode success(String message, JsonNode data) {
+        ObjectNode response = objectMapper.createObjectNode()
+                .put("success", true)
+                .put("message", message);
+        response.set("data", data);
+        return response;
+    }
+
+    private ObjectNode detection(boolean match) {
+        double pcc = match ? 1.0 : 0.05;
+        ObjectNode metrics = objectMapper.createObjectNode()
+                .put("mse", match ? 0.0 : 0.25)
+                .put("pcc", pcc)
+                .put("pcc_abs", pcc)
+                .put("psnr", match ? 99.0 : 6.0)
+                .put("ssim", match ? 1.0 : 0.1);
+        ObjectNode data = objectMapper.createObjectNode();
+        data.set("comparison_results", metrics.deepCopy());
+        data.set("detection_result", objectMapper.createObjectNode()
+                .put("is_match", match)
+                .put("pcc_threshold", 0.7)
+                .put("used_absolute_pcc", true));
+        data.set("metrics", metrics);
+        return data;
+    }
+
+    private <T> T setting(String endpoint, String name, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(PREFIX + "." + endpoint + "." + name, type);
+        return value != null ? value : environment.getProperty(PREFIX + "." + name, type, defaultValue);
+    }
+
+    /**
+     * Small noise PNG seeded from the given hash, so the same input always gives the same image
+     */
+    private String fakeImage(String seedHash) {
+        Random random = new Random(Long.parseUnsignedLong(seedHash.substring(0, 15), 16));
+        BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < IMAGE_SIZE; y++) {
+            for (int x = 0; x < IMAGE_SIZE; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            // Written through an in-memory stream, a plain OutputStream makes ImageIO cache to a temp file
+            try (MemoryCacheImageOutputStream imageOut = new MemoryCacheImageOutputStream(out)) {
+                ImageIO.write(image, "png", imageOut);
+            }
+            return Base64.getEncoder().encodeToString(out.toByteArray());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode stand-in image", e);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static <K, V> Map<K, V> boundedMap(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.TTECHT.service.watermark;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Image sent as a base64 string (plain or data URL) in the JSON product payload
+ */
+public class Base64ImagePayload implements ImagePayload {
+
+    private final String imageBase64;
+
+    public Base64ImagePayload(String imageBase64) {
+        this.imageBase64 = imageBase64;
+    }
+
+    @Override
+    public InputStream openStream() {
+        String payload = imageBase64.trim();
+        int comma = payload.indexOf(',');
+        if (payload.startsWith("data:") && comma > 0) {
+            payload = payload.substring(comma + 1);
+        }
+        return new ByteArrayInputStream(Base64.getMimeDecoder().decode(payload));
+    }
+
+    @Override
+    public void writeBase64To(OutputStream out) throws IOException {
+        // Escaped because the text goes straight into a JSON string (e.g. MIME line breaks)
+        out.write(JsonStringEncoder.getInstance().quoteAsUTF8(imageBase64));
+    }
+
+    @Override
+    public String asBase64() {
+        return imageBase64;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return imageBase64 == null || imageBase64.trim().isEmpty();
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.TTECHT.service.watermark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Opt-in capture of watermark pipeline payloads (detect requests, extract responses) for debugging.
+ *
+ * Callers only enqueue a reference to the record; serialization and disk I/O happen on a single
+ * background writer thread. Records go through a fixed-size lock-free ring buffer and are dropped,
+ * never waited for, when it is full. The writer appends one JSON line per record to size-capped
+ * files under {@code debug.capture.dir} and keeps at most {@code debug.capture.max-files} of them.
+ *
+ * Queued records keep their payloads alive until written, so buffer-size bounds the extra memory.
+ */
+@Component
+@Slf4j
+public class DebugCapture {
+
+    private final ObjectMapper objectMapper;
+    private final Counter droppedCounter;
+    private final Counter writtenCounter;
+
+    @Value("${debug.capture.enabled:false}")
+    private boolean enabled;
+
+    @Value("${debug.capture.sample-rate:1.0}")
+    private double sampleRate;
+
+    @Value("${debug.capture.buffer-size:64}")
+    private int bufferSize;
+
+    @Value("${debug.capture.dir:debug_output}")
+    private String dir;
+
+    @Value("${debug.capture.max-file-bytes:10485760}")
+    private long maxFileBytes;
+
+    @Value("${debug.capture.max-files:10}")
+    private int maxFiles;
+
+    private AtomicReferenceArray<Record> slots;
+    private int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private Thread writer;
+    private volatile boolean running;
+
+    private OutputStream out;
+    private Path currentFile;
+    private long currentFileBytes;
+
+    public DebugCapture(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.droppedCounter = meterRegistry.counter("debug.capture.records", "result", "dropped");
+        this.writtenCounter = meterRegistry.counter("debug.capture.records", "result", "written");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        // Round up to a power of two so the slot index is a mask
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+        running = true;
+        writer = new Thread(this::drainLoop, "debug-capture-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Debug capture enabled: dir {}, sample rate {}, buffer {}", dir, sampleRate, capacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a record for writing, never blocks
+     *
+     * @param type Short label of the record, e.g. "detect"
+     * @param data Object serialized to JSON by the writer thread; must not be modified afterwards
+     */
+    public void capture(String type, Object data) {
+        if (!enabled || (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        Record record = new Record(Instant.now(), type, data);
+        while (true) {
+            long t = tail.get();
+            if (t - head.get() > mask) {
+                droppedCounter.increment();
+                return;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.set((int) (t & mask), record);
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        while (running || head.get() != tail.get()) {
+            Record record = poll();
+            if (record == null) {
+                if (!running) {
+                    // A producer claimed a slot but has not published it yet
+                    Thread.onSpinWait();
+                    continue;
+                }
+                flushQuietly();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                continue;
+            }
+            write(record);
+        }
+        closeQuietly();
+    }
+
+    private Record poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int index = (int) (h & mask);
+        Record record = slots.get(index);
+        if (record == null) {
+            return null;
+        }
+        // Free the slot before advancing head so a producer never overwrites an unread record
+        slots.set(index, null);
+        head.lazySet(h + 1);
+        return record;
+    }
+
+    private void write(Record record) {
+        try {
+            if (out == null || currentFileBytes >= maxFileBytes) {
+                rotate();
+            }
+            byte[] line = objectMapper.writeValueAsBytes(record);
+            out.write(line);
+            out.write('\n');
+            currentFileBytes += line.length + 1;
+            writtenCounter.increment();
+        } catch (Exception e) {
+            log.warn("Failed to write debug capture record {}: {}", record.type(), e.getMessage());
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeQuietly();
+        Path directory = Files.createDirectories(Path.of(dir));
+        currentFile = directory.resolve("capture_" + System.currentTimeMillis() + "_" + tail.get() + ".ndjson");
+        out = new BufferedOutputStream(Files.newOutputStream(currentFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        currentFileBytes = 0;
+        deleteOldFiles(directory);
+    }
+
+    private void deleteOldFiles(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                    .filter(path -> path.getFileName().toString().startsWith("capture_"))
+                    .sorted((a, b) -> Long.compare(lastModified(a), lastModified(b)))
+                    .toList();
+        }
+        for (int i = 0; i < files.size() - Math.max(1, maxFiles); i++) {
+            if (!files.get(i).equals(currentFile)) {
+                Files.deleteIfExists(files.get(i));
+            }
+        }
+    }
+
+    private long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void flushQuietly() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                log.warn("Failed to flush debug capture file: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Failed to close debug capture file: {}", e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    private record Record(Instant timestamp, String type, Object data) {
+    }
+}
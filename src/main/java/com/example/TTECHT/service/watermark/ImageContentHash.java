@@ -0,0 +1,46 @@
+package com.example.TTECHT.service.watermark;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 key identifying an uploaded image together with the store watermark it gets embedded with.
+ * Two uploads with the same key produce the same published image, so the stored result can be reused.
+ */
+@Slf4j
+public final class ImageContentHash {
+
+    private ImageContentHash() {
+    }
+
+    /**
+     * Hash the decoded image bytes followed by the watermark image
+     *
+     * @return the hex encoded hash, or null if the image cannot be read
+     */
+    public static String of(ImagePayload image, String watermarkImageBase64) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(image.openStream(), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            digest.update((byte) 0);
+            if (watermarkImageBase64 != null) {
+                digest.update(watermarkImageBase64.getBytes(StandardCharsets.US_ASCII));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } catch (Exception e) {
+            log.debug("Cannot hash image content: {}", e.getMessage());
+            return null;
+        }
+    }
+}
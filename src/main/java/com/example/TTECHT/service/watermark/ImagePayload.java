@@ -0,0 +1,41 @@
+package com.example.TTECHT.service.watermark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An uploaded product image on its way through the watermark pipeline.
+ *
+ * Images arrive either as base64 strings inside the JSON product payload or as multipart files
+ * spooled to disk. Spooled images are streamed to the image service without ever being held on
+ * the heap as a whole; {@link #asBase64()} is only used where a string is unavoidable.
+ */
+public interface ImagePayload {
+
+    /**
+     * Open the decoded image bytes
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Write the image as a base64 data URL (the format sent to the image service)
+     */
+    void writeBase64To(OutputStream out) throws IOException;
+
+    /**
+     * Materialize the image as a base64 data URL
+     */
+    String asBase64();
+
+    /**
+     * Whether the image has no content and should be skipped
+     */
+    boolean isEmpty();
+
+    /**
+     * Release any backing storage, safe to call more than once
+     */
+    default void discard() {
+    }
+}
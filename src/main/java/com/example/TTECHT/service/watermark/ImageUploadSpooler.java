@@ -0,0 +1,44 @@
+package com.example.TTECHT.service.watermark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves uploaded multipart images into temporary files that outlive the request,
+ * so the asynchronous pipeline can stream them to the image service later.
+ */
+@Component
+@Slf4j
+public class ImageUploadSpooler {
+
+    @Value("${product.image-upload.spool-dir:${java.io.tmpdir}/ttecht-image-spool}")
+    private String spoolDir;
+
+    public List<ImagePayload> spool(List<MultipartFile> files) {
+        List<ImagePayload> payloads = new ArrayList<>();
+        if (files == null) {
+            return payloads;
+        }
+        try {
+            Path dir = Files.createDirectories(Path.of(spoolDir));
+            for (MultipartFile file : files) {
+                Path target = Files.createTempFile(dir, "upload-", ".img");
+                payloads.add(new SpooledImagePayload(target, file.getContentType()));
+                file.transferTo(target);
+            }
+            return payloads;
+        } catch (IOException e) {
+            payloads.forEach(ImagePayload::discard);
+            log.error("Failed to spool uploaded images: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to store uploaded images: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.TTECHT.service.watermark;
+
+import com.example.TTECHT.entity.ProductImage;
+import com.example.TTECHT.repository.ProductImageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * In-memory BK-tree over the perceptual hashes of the stored product images.
+ *
+ * Used to shortlist the images that look like an uploaded image, so only their metadata is tried
+ * against the extract service. The tree is built from the database once the application is ready
+ * and kept up to date as images are saved and deleted, on this node or, through the
+ * {@link WatermarkCandidateSnapshot}, on another one.
+ *
+ * Deleted images are only marked removed in the tree; once they outnumber the live images the tree
+ * is rebuilt from the live entries. A rebuild from the database builds a new tree and swaps it in,
+ * replaying the changes made while it was loading, so no save or delete is lost.
+ */
+@Component
+@Slf4j
+public class PerceptualHashIndex {
+
+    // Removed entries tolerated before the tree is compacted, on top of the number of live entries
+    private static final int COMPACT_MIN_REMOVED = 1024;
+
+    private final ProductImageRepository productImageRepository;
+
+    private Tree tree = new Tree();
+    // Changes made while a rebuild is loading, replayed onto the new tree; null when not rebuilding
+    private List<Consumer<Tree>> pendingChanges;
+    private volatile boolean ready = false;
+
+    @Value("${watermark.phash.top-k:20}")
+    private int topK;
+
+    @Value("${watermark.phash.max-distance:12}")
+    private int maxDistance;
+
+    public PerceptualHashIndex(ProductImageRepository productImageRepository) {
+        this.productImageRepository = productImageRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (this) {
+            pendingChanges = new ArrayList<>();
+        }
+        Tree built = new Tree();
+        try {
+            for (Object[] row : productImageRepository.findPerceptualHashes()) {
+                built.insert(new Entry((Long) row[0], (Long) row[1], (Long) row[2]));
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendingChanges = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            pendingChanges.forEach(change -> change.accept(built));
+            pendingChanges = null;
+            tree = built;
+            ready = true;
+        }
+        log.info("Perceptual hash index built with {} images", built.live);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Add a saved image to the index once the surrounding transaction commits
+     */
+    public void add(ProductImage image) {
+        if (image.getPerceptualHash() == null || image.getImageId() == null) {
+            return;
+        }
+        Entry entry = new Entry(image.getImageId(), image.getProduct().getProductId(), image.getPerceptualHash());
+        AfterCommit.run(() -> apply(current -> current.insert(entry.copy())));
+    }
+
+    /**
+     * Drop all images of a product, called when its images are deleted
+     */
+    public void removeProduct(Long productId) {
+        AfterCommit.run(() -> apply(current -> current.removeProduct(productId)));
+    }
+
+    /**
+     * Drop a single deleted image
+     */
+    public void remove(ProductImage image) {
+        Long productId = image.getProduct().getProductId();
+        Long imageId = image.getImageId();
+        AfterCommit.run(() -> apply(current -> current.remove(productId, imageId)));
+    }
+
+    /**
+     * Replace the images of a product with the ones committed on another node
+     *
+     * @param hashesByImageId Perceptual hash of every hashed image the product has now
+     */
+    public void replaceProduct(Long productId, Map<Long, Long> hashesByImageId) {
+        apply(current -> {
+            current.removeProduct(productId);
+            hashesByImageId.forEach((imageId, hash) -> current.insert(new Entry(imageId, productId, hash)));
+        });
+    }
+
+    /**
+     * Find the IDs of the images most similar to the given hash
+     *
+     * @param hash Perceptual hash of the uploaded image
+     * @param excludedProductId Product whose own images are ignored
+     * @return up to top-k image IDs within the max distance, closest first
+     */
+    public synchronized List<Long> findSimilar(long hash, Long excludedProductId) {
+        List<Entry> matches = new ArrayList<>();
+        if (tree.root != null) {
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(tree.root);
+            while (!stack.isEmpty()) {
+                Node node = stack.pop();
+                int distance = PerceptualHasher.distance(hash, node.hash);
+                if (distance <= maxDistance) {
+                    for (Entry entry : node.entries) {
+                        if (!entry.removed && !entry.productId.equals(excludedProductId)) {
+                            entry.lastDistance = distance;
+                            matches.add(entry);
+                        }
+                    }
+                }
+                // Triangle inequality: only children within [d - r, d + r] can hold matches
+                for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                    if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                        stack.push(child.getValue());
+                    }
+                }
+            }
+        }
+
+        return matches.stream()
+                .sorted(Comparator.comparingInt((Entry entry) -> entry.lastDistance))
+                .limit(topK)
+                .map(entry -> entry.imageId)
+                .toList();
+    }
+
+    private synchronized void apply(Consumer<Tree> change) {
+        change.accept(tree);
+        if (pendingChanges != null) {
+            pendingChanges.add(change);
+        }
+        if (tree.removed > Math.max(COMPACT_MIN_REMOVED, tree.live)) {
+            int removed = tree.removed;
+            tree = tree.compact();
+            log.info("Compacted perceptual hash index, dropped {} removed images", removed);
+        }
+    }
+
+    private static class Tree {
+        private Node root;
+        private final Map<Long, List<Entry>> entriesByProduct = new HashMap<>();
+        private int live;
+        private int removed;
+
+        private void insert(Entry entry) {
+            List<Entry> productEntries = entriesByProduct.computeIfAbsent(entry.productId, id -> new ArrayList<>());
+            // A save can be both loaded by a rebuild and replayed after it
+            if (productEntries.stream().anyMatch(existing -> existing.imageId.equals(entry.imageId))) {
+                return;
+            }
+            productEntries.add(entry);
+            live++;
+            if (root == null) {
+                root = new Node(entry.hash);
+                root.entries.add(entry);
+                return;
+            }
+            Node node = root;
+            while (true) {
+                int distance = PerceptualHasher.distance(entry.hash, node.hash);
+                if (distance == 0) {
+                    node.entries.add(entry);
+                    return;
+                }
+                Node child = node.children.get(distance);
+                if (child == null) {
+                    Node created = new Node(entry.hash);
+                    created.entries.add(entry);
+                    node.children.put(distance, created);
+                    return;
+                }
+                node = child;
+            }
+        }
+
+        private void remove(Long productId, Long imageId) {
+            List<Entry> productEntries = entriesByProduct.get(productId);
+            if (productEntries == null) {
+                return;
+            }
+            productEntries.removeIf(entry -> {
+                if (entry.imageId.equals(imageId)) {
+                    markRemoved(entry);
+                    return true;
+                }
+                return false;
+            });
+            if (productEntries.isEmpty()) {
+                entriesByProduct.remove(productId);
+            }
+        }
+
+        private void removeProduct(Long productId) {
+            List<Entry> productEntries = entriesByProduct.remove(productId);
+            if (productEntries != null) {
+                productEntries.forEach(this::markRemoved);
+            }
+        }
+
+        private void markRemoved(Entry entry) {
+            entry.removed = true;
+            live--;
+            removed++;
+        }
+
+        // New tree holding only the live entries
+        private Tree compact() {
+            Tree compacted = new Tree();
+            entriesByProduct.values().forEach(entries -> entries.forEach(entry -> compacted.insert(entry.copy())));
+            return compacted;
+        }
+    }
+
+    private static class Node {
+        private final long hash;
+        private final List<Entry> entries = new ArrayList<>(1);
+        private final Map<Integer, Node> children = new HashMap<>();
+
+        private Node(long hash) {
+            this.hash = hash;
+        }
+    }
+
+    private static class Entry {
+        private final Long imageId;
+        private final Long productId;
+        private final long hash;
+        private boolean removed;
+        private int lastDistance;
+
+        private Entry(Long imageId, Long productId, long hash) {
+            this.imageId = imageId;
+            this.productId = productId;
+            this.hash = hash;
+        }
+
+        // Entries are owned by one tree, a replayed or compacted change gets its own copy
+        private Entry copy() {
+            return new Entry(imageId, productId, hash);
+        }
+    }
+}
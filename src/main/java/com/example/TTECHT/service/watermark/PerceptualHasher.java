@@ -0,0 +1,104 @@
+package com.example.TTECHT.service.watermark;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * Computes 64-bit difference hashes (dHash) of images.
+ *
+ * The image is reduced to a 9x8 grayscale grid and each bit records whether a pixel is brighter
+ * than its right neighbour, so re-encoding, resizing and watermarking only flip a few bits.
+ */
+@Slf4j
+public final class PerceptualHasher {
+
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+
+    private PerceptualHasher() {
+    }
+
+    /**
+     * Hash a base64 encoded image (plain base64 or data URL)
+     *
+     * @return the hash, or null if the image cannot be decoded
+     */
+    public static Long hashBase64(String imageBase64) {
+        if (imageBase64 == null || imageBase64.isBlank()) {
+            return null;
+        }
+        try {
+            String payload = imageBase64.trim();
+            int comma = payload.indexOf(',');
+            if (payload.startsWith("data:") && comma > 0) {
+                payload = payload.substring(comma + 1);
+            }
+            return hash(Base64.getMimeDecoder().decode(payload));
+        } catch (IllegalArgumentException e) {
+            log.debug("Cannot hash image, invalid base64: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Hash an uploaded image without materializing it as base64
+     *
+     * @return the hash, or null if the image cannot be decoded
+     */
+    public static Long hash(ImagePayload image) {
+        try (InputStream in = image.openStream()) {
+            BufferedImage decoded = ImageIO.read(in);
+            return decoded != null ? hash(decoded) : null;
+        } catch (Exception e) {
+            log.debug("Cannot hash image: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Hash raw image bytes
+     *
+     * @return the hash, or null if the image cannot be decoded
+     */
+    public static Long hash(byte[] imageBytes) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+            if (image == null) {
+                return null;
+            }
+            return hash(image);
+        } catch (Exception e) {
+            log.debug("Cannot hash image: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public static long hash(BufferedImage image) {
+        BufferedImage small = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = small.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, WIDTH, HEIGHT, null);
+        g.dispose();
+
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                int left = small.getRaster().getSample(x, y, 0);
+                int right = small.getRaster().getSample(x + 1, y, 0);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
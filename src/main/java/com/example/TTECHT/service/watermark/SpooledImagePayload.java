@@ -0,0 +1,106 @@
+package com.example.TTECHT.service.watermark;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+/**
+ * Image uploaded as a multipart file and spooled to a temporary file.
+ * The file is deleted by {@link #discard()} once the image has been processed.
+ */
+@Slf4j
+public class SpooledImagePayload implements ImagePayload {
+
+    private final Path file;
+    private final String contentType;
+
+    public SpooledImagePayload(Path file, String contentType) {
+        this.file = file;
+        this.contentType = contentType != null && contentType.startsWith("image/") ? contentType : "image/png";
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void writeBase64To(OutputStream out) throws IOException {
+        out.write(("data:" + contentType + ";base64,").getBytes(StandardCharsets.US_ASCII));
+        // The wrapping encoder must be closed to flush its padding, without closing the caller's stream
+        OutputStream encoder = Base64.getEncoder().wrap(new NonClosingOutputStream(out));
+        try (InputStream in = openStream()) {
+            in.transferTo(encoder);
+        }
+        encoder.close();
+    }
+
+    @Override
+    public String asBase64() {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeBase64To(out);
+            return out.toString(StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read spooled image " + file, e);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try {
+            return Files.size(file) == 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public void discard() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete spooled image {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static class NonClosingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+
+        private NonClosingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.flush();
+        }
+    }
+}
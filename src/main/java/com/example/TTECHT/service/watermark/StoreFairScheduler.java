@@ -0,0 +1,262 @@
+package com.example.TTECHT.service.watermark;
+
+import com.example.TTECHT.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fair admission of product image work across stores.
+ *
+ * Every store has its own FIFO queue. Queued work is handed to the ingestion pool in weighted round
+ * robin over the stores that have work waiting (a store dispatches up to its weight before the next
+ * store's turn), with at most {@code store-max-in-flight} tasks per store and {@code pool-size} in
+ * total running at once. One store bulk-uploading a catalog therefore only delays its own images.
+ *
+ * A slot is reserved while the upload request is still open, so a full queue is reported to the
+ * caller as 429 with a Retry-After estimated from the recent task duration.
+ */
+@Component
+@Slf4j
+public class StoreFairScheduler {
+
+    private final ThreadPoolTaskExecutor executor;
+    private final Environment environment;
+    private final Counter rejectedGlobalCounter;
+    private final Counter rejectedStoreCounter;
+
+    @Value("${product.image-ingestion.pool-size:4}")
+    private int maxInFlight;
+
+    @Value("${product.image-ingestion.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${product.image-ingestion.store-queue-capacity:20}")
+    private int storeQueueCapacity;
+
+    @Value("${product.image-ingestion.store-max-in-flight:2}")
+    private int storeMaxInFlight;
+
+    private final Map<String, StoreQueue> queues = new HashMap<>();
+    // Stores with queued work, in round-robin order
+    private final Deque<StoreQueue> active = new ArrayDeque<>();
+    private int reserved = 0;
+    private int queued = 0;
+    private int inFlight = 0;
+    // Moving average of the task duration, used for Retry-After
+    private volatile double averageTaskMs = 5000;
+
+    public StoreFairScheduler(@Qualifier("imageIngestionExecutor") ThreadPoolTaskExecutor executor,
+                              Environment environment,
+                              MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.environment = environment;
+        this.rejectedGlobalCounter = meterRegistry.counter("image.ingestion.rejected", "scope", "global");
+        this.rejectedStoreCounter = meterRegistry.counter("image.ingestion.rejected", "scope", "store");
+        Gauge.builder("image.ingestion.queue.depth", this, scheduler -> scheduler.queuedCount())
+                .description("Image tasks reserved or queued, not yet running")
+                .register(meterRegistry);
+        Gauge.builder("image.ingestion.in.flight", this, scheduler -> scheduler.inFlightCount())
+                .register(meterRegistry);
+        Gauge.builder("image.ingestion.stores.waiting", this, scheduler -> scheduler.waitingStoreCount())
+                .description("Stores with image tasks queued")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reserve a queue slot for a store, called before the upload is accepted
+     *
+     * @throws TooManyRequestsException when the store's or the global queue is full
+     */
+    public synchronized void reserve(String storeName) {
+        StoreQueue queue = queues.computeIfAbsent(storeName, StoreQueue::new);
+        Counter rejectedCounter = tryReserve(queue);
+        if (rejectedCounter == rejectedStoreCounter) {
+            rejectedStoreCounter.increment();
+            throw new TooManyRequestsException("Too many images of store " + storeName
+                    + " are waiting to be processed, please try again later", retryAfterSeconds(queue));
+        }
+        if (rejectedCounter == rejectedGlobalCounter) {
+            rejectedGlobalCounter.increment();
+            throw new TooManyRequestsException("Image processing is at capacity, please try again later",
+                    retryAfterSeconds(queue));
+        }
+    }
+
+    /**
+     * Reserve a queue slot for a store, waiting for one to free up; used by background producers
+     * such as bulk imports, which should be slowed down rather than rejected. Only a reservation that
+     * is still refused when the wait is over counts as rejected; a check without waiting is not counted.
+     *
+     * @param maxWaitMs How long to wait for a free slot
+     * @return false if no slot freed up in time
+     */
+    public synchronized boolean reserve(String storeName, long maxWaitMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        StoreQueue queue = queues.computeIfAbsent(storeName, StoreQueue::new);
+        while (true) {
+            Counter rejectedCounter = tryReserve(queue);
+            if (rejectedCounter == null) {
+                return true;
+            }
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                if (maxWaitMs > 0) {
+                    rejectedCounter.increment();
+                }
+                removeIfIdle(queue);
+                return false;
+            }
+            wait(remainingMs);
+            // The queue may have been dropped as idle while waiting
+            queue = queues.computeIfAbsent(storeName, StoreQueue::new);
+        }
+    }
+
+    /**
+     * Release a reservation whose upload was not accepted after all
+     */
+    public synchronized void release(String storeName) {
+        StoreQueue queue = queues.get(storeName);
+        if (queue != null && queue.reserved > 0) {
+            queue.reserved--;
+            reserved--;
+            removeIfIdle(queue);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Queue the work of a reserved slot; it runs on the ingestion pool when the store gets its turn
+     */
+    public synchronized void submit(String storeName, Runnable task) {
+        StoreQueue queue = queues.computeIfAbsent(storeName, StoreQueue::new);
+        if (queue.reserved > 0) {
+            queue.reserved--;
+            reserved--;
+        }
+        queue.tasks.add(task);
+        queued++;
+        if (!queue.active) {
+            queue.active = true;
+            active.addLast(queue);
+        }
+        dispatch();
+    }
+
+    // Takes a slot, or returns the counter of the limit that refused it
+    private Counter tryReserve(StoreQueue queue) {
+        if (queue.reserved + queue.tasks.size() >= storeQueueCapacity) {
+            return rejectedStoreCounter;
+        }
+        if (reserved + queued >= queueCapacity) {
+            return rejectedGlobalCounter;
+        }
+        queue.reserved++;
+        reserved++;
+        return null;
+    }
+
+    public synchronized int queuedCount() {
+        return reserved + queued;
+    }
+
+    public synchronized int inFlightCount() {
+        return inFlight;
+    }
+
+    public synchronized int waitingStoreCount() {
+        return active.size();
+    }
+
+    private void dispatch() {
+        int skipped = 0;
+        while (inFlight < maxInFlight && !active.isEmpty() && skipped < active.size()) {
+            StoreQueue queue = active.peekFirst();
+            if (queue.tasks.isEmpty()) {
+                active.pollFirst();
+                queue.active = false;
+                queue.dispatchedThisTurn = 0;
+                removeIfIdle(queue);
+                continue;
+            }
+            if (queue.inFlight >= storeMaxInFlight || queue.dispatchedThisTurn >= weight(queue.storeName)) {
+                // Turn over, move the store to the back
+                queue.dispatchedThisTurn = 0;
+                active.addLast(active.pollFirst());
+                skipped = queue.inFlight >= storeMaxInFlight ? skipped + 1 : 0;
+                continue;
+            }
+
+            Runnable task = queue.tasks.poll();
+            queued--;
+            queue.inFlight++;
+            queue.dispatchedThisTurn++;
+            inFlight++;
+            skipped = 0;
+            executor.execute(() -> run(queue, task));
+            // A queue slot freed up
+            notifyAll();
+        }
+    }
+
+    private void run(StoreQueue queue, Runnable task) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("Image task of store {} failed: {}", queue.storeName, e.getMessage(), e);
+        } finally {
+            double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+            averageTaskMs = averageTaskMs * 0.9 + elapsedMs * 0.1;
+            synchronized (this) {
+                queue.inFlight--;
+                inFlight--;
+                removeIfIdle(queue);
+                dispatch();
+            }
+        }
+    }
+
+    private long retryAfterSeconds(StoreQueue queue) {
+        // Time for the store's waiting work to drain at its concurrency limit
+        int ahead = queue.reserved + queue.tasks.size() + queue.inFlight;
+        int parallelism = Math.max(1, Math.min(storeMaxInFlight, maxInFlight));
+        return Math.max(1, (long) Math.ceil(averageTaskMs * (ahead + 1) / parallelism / 1000));
+    }
+
+    private int weight(String storeName) {
+        return Math.max(1, environment.getProperty("product.image-ingestion.store-weight." + storeName, Integer.class, 1));
+    }
+
+    private void removeIfIdle(StoreQueue queue) {
+        if (!queue.active && queue.reserved == 0 && queue.inFlight == 0 && queue.tasks.isEmpty()) {
+            queues.remove(queue.storeName);
+        }
+    }
+
+    private static class StoreQueue {
+        private final String storeName;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private int reserved;
+        private int inFlight;
+        private int dispatchedThisTurn;
+        private boolean active;
+
+        private StoreQueue(String storeName) {
+            this.storeName = storeName;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.TTECHT.service.watermark;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Lightweight view of a stored product image, enough to pick the metadata to try against an upload
+ */
+@Getter
+@AllArgsConstructor
+public class WatermarkCandidateImage {
+
+    private final Long imageId;
+    private final Long productId;
+
+    /**
+     * ID of the image's watermark_metadata row, null if it has none
+     */
+    private final Long metadataId;
+
+    private final Long perceptualHash;
+}
@@ -0,0 +1,268 @@
+package com.example.TTECHT.service.watermark;
+
+import com.example.TTECHT.entity.ProductImage;
+import com.example.TTECHT.repository.ProductImageRepository;
+import com.example.TTECHT.service.cluster.NodeIdentity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Shared in-memory snapshot of every stored product image as a {@link WatermarkCandidateImage}.
+ *
+ * Uploaded images are matched against this snapshot instead of loading the other products' images
+ * (and their JSONB) from the database for every upload. It is loaded once the application is ready
+ * and updated incrementally, after commit, as images are saved and deleted; it also keeps the
+ * perceptual hash index in step. Until it is loaded, candidates are read with one projection query.
+ *
+ * Other nodes are told over a Redis channel which products changed and reload those products' images.
+ * A load builds a new snapshot and swaps it in, replaying the changes made while it was loading.
+ */
+@Component
+@Slf4j
+public class WatermarkCandidateSnapshot implements MessageListener {
+
+    public static final String CHANNEL = "watermark-candidates:changed";
+
+    private final ProductImageRepository productImageRepository;
+    private final PerceptualHashIndex perceptualHashIndex;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final NodeIdentity nodeIdentity;
+    private volatile Images images = new Images();
+    // Changes made while a load is running, replayed onto the new snapshot; null when not loading
+    private List<Consumer<Images>> pendingChanges;
+    // Serializes refreshes from other nodes, so an older read never overwrites a newer one
+    private final Object refreshLock = new Object();
+    private volatile boolean ready = false;
+
+    public WatermarkCandidateSnapshot(ProductImageRepository productImageRepository,
+                                      PerceptualHashIndex perceptualHashIndex,
+                                      @Qualifier("regisTemplate") RedisTemplate<String, String> redisTemplate,
+                                      NodeIdentity nodeIdentity) {
+        this.productImageRepository = productImageRepository;
+        this.perceptualHashIndex = perceptualHashIndex;
+        this.redisTemplate = redisTemplate;
+        this.nodeIdentity = nodeIdentity;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        synchronized (this) {
+            pendingChanges = new ArrayList<>();
+        }
+        Images loaded = new Images();
+        try {
+            loadFromDatabase().forEach(loaded::put);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendingChanges = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            pendingChanges.forEach(change -> change.accept(loaded));
+            pendingChanges = null;
+            images = loaded;
+            ready = true;
+        }
+        log.info("Watermark candidate snapshot loaded with {} images", loaded.byId.size());
+    }
+
+    /**
+     * Find the stored images whose metadata is worth trying against an upload, most promising first
+     *
+     * @param productId Product the upload belongs to, its own images are excluded
+     * @param perceptualHash Perceptual hash of the upload, null if it could not be hashed
+     * @return visually similar images followed by the images that have no perceptual hash; every
+     *         image of the other products when no shortlist can be made
+     */
+    public List<WatermarkCandidateImage> findCandidates(Long productId, Long perceptualHash) {
+        Images current = images;
+        Map<Long, WatermarkCandidateImage> imagesById = ready ? current.byId : loadFromDatabase().stream()
+                .collect(Collectors.toMap(WatermarkCandidateImage::getImageId, image -> image));
+
+        if (perceptualHash == null || !perceptualHashIndex.isReady()) {
+            // Cannot shortlist - fall back to every image of the other products
+            return imagesById.values().stream()
+                    .filter(image -> !image.getProductId().equals(productId))
+                    .collect(Collectors.toList());
+        }
+
+        List<Long> similarImageIds = perceptualHashIndex.findSimilar(perceptualHash, productId);
+        List<WatermarkCandidateImage> candidates = similarImageIds.stream()
+                .map(imagesById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        // Images stored before hashing was introduced cannot be shortlisted, always include them
+        (ready ? current.unhashedById.values() : imagesById.values()).stream()
+                .filter(image -> image.getPerceptualHash() == null && !image.getProductId().equals(productId))
+                .forEach(candidates::add);
+
+        log.info("Perceptual hash shortlist: {} similar images, {} candidates in total", similarImageIds.size(), candidates.size());
+        return candidates;
+    }
+
+    /**
+     * Add a saved image once the surrounding transaction commits
+     */
+    public void add(ProductImage image) {
+        WatermarkCandidateImage candidate = new WatermarkCandidateImage(image.getImageId(),
+                image.getProduct().getProductId(),
+                image.getMetadata() != null ? image.getMetadata().getMetadataId() : null,
+                image.getPerceptualHash());
+        AfterCommit.run(() -> apply(current -> current.put(candidate)));
+        perceptualHashIndex.add(image);
+        notifyOtherNodes(candidate.getProductId());
+    }
+
+    /**
+     * Drop a single deleted image
+     */
+    public void remove(ProductImage image) {
+        Long imageId = image.getImageId();
+        AfterCommit.run(() -> apply(current -> current.remove(imageId)));
+        perceptualHashIndex.remove(image);
+        notifyOtherNodes(image.getProduct().getProductId());
+    }
+
+    /**
+     * Drop all images of a product, called when its images are deleted
+     */
+    public void removeProduct(Long productId) {
+        AfterCommit.run(() -> apply(current -> current.removeProduct(productId)));
+        perceptualHashIndex.removeProduct(productId);
+        notifyOtherNodes(productId);
+    }
+
+    /**
+     * Reload the products changed on another node; the body is the node ID and comma-separated product IDs
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String productIds = nodeIdentity.payloadFromOtherNode(message);
+        if (productIds == null) {
+            return;
+        }
+        try {
+            for (String productId : productIds.split(",")) {
+                refreshProduct(Long.valueOf(productId));
+            }
+        } catch (Exception e) {
+            log.warn("Failed to refresh watermark candidates {}: {}", productIds, e.getMessage());
+        }
+    }
+
+    private void refreshProduct(Long productId) {
+        synchronized (refreshLock) {
+            List<WatermarkCandidateImage> productImages = productImageRepository.findCandidateRowsByProductId(productId).stream()
+                    .map(WatermarkCandidateSnapshot::toCandidate)
+                    .toList();
+            apply(current -> {
+                current.removeProduct(productId);
+                productImages.forEach(current::put);
+            });
+            Map<Long, Long> hashesByImageId = new HashMap<>();
+            productImages.stream()
+                    .filter(image -> image.getPerceptualHash() != null)
+                    .forEach(image -> hashesByImageId.put(image.getImageId(), image.getPerceptualHash()));
+            perceptualHashIndex.replaceProduct(productId, hashesByImageId);
+        }
+    }
+
+    private synchronized void apply(Consumer<Images> change) {
+        change.accept(images);
+        if (pendingChanges != null) {
+            pendingChanges.add(change);
+        }
+    }
+
+    private List<WatermarkCandidateImage> loadFromDatabase() {
+        return productImageRepository.findCandidateRows().stream()
+                .map(WatermarkCandidateSnapshot::toCandidate)
+                .collect(Collectors.toList());
+    }
+
+    private static WatermarkCandidateImage toCandidate(Object[] row) {
+        return new WatermarkCandidateImage((Long) row[0], (Long) row[1], (Long) row[2], (Long) row[3]);
+    }
+
+    // Collects the products changed in the current transaction and publishes them once it commits
+    @SuppressWarnings("unchecked")
+    private void notifyOtherNodes(Long productId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(List.of(productId));
+            return;
+        }
+        Set<Long> changed = (Set<Long>) TransactionSynchronizationManager.getResource(this);
+        if (changed == null) {
+            Set<Long> productIds = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, productIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(productIds);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(WatermarkCandidateSnapshot.this);
+                }
+            });
+            changed = productIds;
+        }
+        changed.add(productId);
+    }
+
+    private void publish(Collection<Long> productIds) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, nodeIdentity.tag(productIds.stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(","))));
+        } catch (Exception e) {
+            // Other nodes keep their copy until they restart or see a later change of the product
+            log.warn("Failed to notify other nodes of image changes for products {}: {}", productIds, e.getMessage());
+        }
+    }
+
+    private static class Images {
+        private final Map<Long, WatermarkCandidateImage> byId = new ConcurrentHashMap<>();
+        private final Map<Long, WatermarkCandidateImage> unhashedById = new ConcurrentHashMap<>();
+
+        private void put(WatermarkCandidateImage image) {
+            byId.put(image.getImageId(), image);
+            if (image.getPerceptualHash() == null) {
+                unhashedById.put(image.getImageId(), image);
+            }
+        }
+
+        private void remove(Long imageId) {
+            byId.remove(imageId);
+            unhashedById.remove(imageId);
+        }
+
+        private void removeProduct(Long productId) {
+            byId.values().removeIf(image -> image.getProductId().equals(productId));
+            unhashedById.values().removeIf(image -> image.getProductId().equals(productId));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.TTECHT.service.watermark;
+
+import com.example.TTECHT.dto.watermark.WatermarkDetectionResponseDTO;
+import com.example.TTECHT.entity.watermark.Watermark;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of /detect responses, keyed by the fingerprint of the extracted watermark and the
+ * compared store watermark.
+ *
+ * The detector is deterministic, so a re-upload of an image that was checked before (the typical
+ * pirated copy) is resolved without calling the image service. A short digest of the watermark image
+ * (which can be a whole base64 image rather than a URL) is part of the key, and the entries of a
+ * watermark are also dropped when the {@link WatermarkRegistry} sees it change. Only successful
+ * responses are cached.
+ */
+@Component
+@Slf4j
+public class WatermarkDetectionCache {
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Digest of each watermark's image, recomputed only when the registry hands out a new image string
+    private final Map<Long, ImageDigest> imageDigests = new HashMap<>();
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    @Value("${watermark.detect-cache.max-entries:10000}")
+    private int maxEntries;
+
+    public WatermarkDetectionCache(MeterRegistry meterRegistry) {
+        this.hitCounter = meterRegistry.counter("watermark.detect.cache", "result", "hit");
+        this.missCounter = meterRegistry.counter("watermark.detect.cache", "result", "miss");
+    }
+
+    /**
+     * SHA-256 fingerprint of an extracted watermark, computed once per detection run
+     */
+    public String fingerprint(String extractedWatermark) {
+        return sha256(extractedWatermark);
+    }
+
+    /**
+     * Get the cached detection response of an extracted watermark against a store watermark
+     *
+     * @return the response, or null when it has not been cached
+     */
+    public synchronized WatermarkDetectionResponseDTO get(String fingerprint, Watermark watermark) {
+        Entry entry = entries.get(key(fingerprint, watermark));
+        if (entry == null) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+        return entry.response;
+    }
+
+    public synchronized void put(String fingerprint, Watermark watermark, WatermarkDetectionResponseDTO response) {
+        if (response == null || !response.isSuccess()) {
+            return;
+        }
+        entries.put(key(fingerprint, watermark), new Entry(watermark.getWatermarkId(), response));
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Drop every cached response of a watermark, called when the watermark is updated or deleted
+     */
+    public synchronized void invalidate(Long watermarkId) {
+        entries.values().removeIf(entry -> entry.watermarkId.equals(watermarkId));
+        imageDigests.remove(watermarkId);
+        log.info("Invalidated cached detection results for watermark ID {}", watermarkId);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        imageDigests.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private String key(String fingerprint, Watermark watermark) {
+        return fingerprint + "|" + watermark.getWatermarkId() + "|" + imageDigest(watermark);
+    }
+
+    private String imageDigest(Watermark watermark) {
+        String image = watermark.getWatermarkUrlImage();
+        if (image == null) {
+            return "";
+        }
+        ImageDigest cached = imageDigests.get(watermark.getWatermarkId());
+        // The registry shares one image string per watermark version, so identity is enough
+        if (cached == null || cached.image != image) {
+            cached = new ImageDigest(image, sha256(image).substring(0, 16));
+            imageDigests.put(watermark.getWatermarkId(), cached);
+        }
+        return cached.digest;
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static class ImageDigest {
+        private final String image;
+        private final String digest;
+
+        private ImageDigest(String image, String digest) {
+            this.image = image;
+            this.digest = digest;
+        }
+    }
+
+    private static class Entry {
+        private final Long watermarkId;
+        private final WatermarkDetectionResponseDTO response;
+
+        private Entry(Long watermarkId, WatermarkDetectionResponseDTO response) {
+            this.watermarkId = watermarkId;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.TTECHT.service.watermark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Holds the outcome of comparing an extracted watermark against the registered store watermarks
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WatermarkDetectionResult {
+    private String watermarkId;
+    private JsonNode detectionResponse;
+    private String detectStatus;
+    private String watermarkBase64;
+}
@@ -0,0 +1,112 @@
+package com.example.TTECHT.service.watermark;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * LRU cache of the already encoded (data URL base64) store watermark images.
+ *
+ * Entries are keyed by watermark ID and image URL, so a watermark whose URL changes never serves
+ * the old image. The cache is bounded both by entry count and by the total encoded size.
+ */
+@Component
+@Slf4j
+public class WatermarkImageCache {
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    @Value("${watermark.image-cache.max-entries:256}")
+    private int maxEntries;
+
+    @Value("${watermark.image-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    /**
+     * Get the encoded watermark image, downloading it with the loader on a miss
+     *
+     * @param watermarkId ID of the watermark the image belongs to
+     * @param imageUrl URL of the watermark image
+     * @param loader Downloads and encodes the image for the given URL
+     * @return Base64 data URL of the image
+     */
+    public String get(Long watermarkId, String imageUrl, Function<String, String> loader) {
+        String key = key(watermarkId, imageUrl);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry.encodedImage;
+            }
+        }
+
+        // Download outside the lock so one slow URL does not block the other watermarks
+        String encoded = loader.apply(imageUrl);
+        if (encoded == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(watermarkId, encoded));
+            if (previous != null) {
+                totalBytes -= previous.encodedImage.length();
+            }
+            totalBytes += encoded.length();
+            evict();
+        }
+        return encoded;
+    }
+
+    /**
+     * Drop every cached image of a watermark, called when the watermark is updated or deleted
+     */
+    public synchronized void invalidate(Long watermarkId) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.watermarkId != null && entry.watermarkId.equals(watermarkId)) {
+                totalBytes -= entry.encodedImage.length();
+                it.remove();
+            }
+        }
+        log.info("Invalidated cached images for watermark ID {}", watermarkId);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        // Keep at least the most recent entry even if it alone exceeds the byte budget
+        while (entries.size() > 1 && (entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            totalBytes -= eldest.encodedImage.length();
+            it.remove();
+        }
+    }
+
+    private static String key(Long watermarkId, String imageUrl) {
+        return watermarkId + "|" + imageUrl;
+    }
+
+    private static class Entry {
+        private final Long watermarkId;
+        private final String encodedImage;
+
+        private Entry(Long watermarkId, String encodedImage) {
+            this.watermarkId = watermarkId;
+            this.encodedImage = encodedImage;
+        }
+    }
+}
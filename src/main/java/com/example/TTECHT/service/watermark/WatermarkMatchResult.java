@@ -0,0 +1,33 @@
+package com.example.TTECHT.service.watermark;
+
+import com.example.TTECHT.dto.watermark.WatermarkExtractResponseDTO;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of matching an uploaded image against the known embedding metadata
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WatermarkMatchResult {
+
+    /**
+     * Candidate whose metadata produced the extracted watermark
+     */
+    private WatermarkMetadataCandidate candidate;
+
+    private WatermarkExtractResponseDTO extractResponse;
+
+    private String extractedWatermark;
+
+    /**
+     * Set when the extracted watermark matches a registered store watermark, null otherwise
+     */
+    private WatermarkDetectionResult detectionResult;
+
+    public boolean isDetected() {
+        return detectionResult != null;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.TTECHT.service.watermark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Embedding metadata (side info) that may have been used to watermark an uploaded image
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WatermarkMetadataCandidate {
+
+    /**
+     * ID of the watermark_metadata row (used for logging only)
+     */
+    private Long sourceId;
+
+    /**
+     * Side info passed to the extract endpoint
+     */
+    private JsonNode metadata;
+}
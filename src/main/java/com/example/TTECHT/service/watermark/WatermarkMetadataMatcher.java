@@ -0,0 +1,172 @@
+package com.example.TTECHT.service.watermark;
+
+import com.example.TTECHT.dto.watermark.WatermarkExtractResponseDTO;
+import com.example.TTECHT.service.external.WatermarkService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Tries the known embedding metadata against an uploaded image.
+ *
+ * Extract calls are fanned out over the shared matching pool with at most
+ * {@code watermark.matching.concurrency} calls in flight per image. Each successful extraction is
+ * verified on the calling thread, and the remaining calls are cancelled as soon as one of them is
+ * confirmed as a registered store watermark.
+ */
+@Component
+@Slf4j
+public class WatermarkMetadataMatcher {
+
+    private final WatermarkService watermarkService;
+    private final ThreadPoolTaskExecutor executor;
+
+    @Value("${watermark.matching.concurrency:8}")
+    private int concurrency;
+
+    @Value("${watermark.matching.max-candidates:0}")
+    private int maxCandidates;
+
+    @Value("${watermark.matching.timeout-ms:120000}")
+    private long timeoutMs;
+
+    public WatermarkMetadataMatcher(WatermarkService watermarkService,
+                                    @Qualifier("watermarkMatchingExecutor") ThreadPoolTaskExecutor executor) {
+        this.watermarkService = watermarkService;
+        this.executor = executor;
+    }
+
+    /**
+     * Find the metadata that fits the uploaded image
+     *
+     * @param image Uploaded image
+     * @param candidates Metadata to try, in priority order
+     * @param verifier Checks an extracted watermark against the registered watermarks, returns null when nothing matches
+     * @return the confirmed detection if any, otherwise the first candidate (in priority order) that extracted
+     *         successfully, or null when no candidate could be used
+     */
+    public WatermarkMatchResult findMatch(ImagePayload image, List<WatermarkMetadataCandidate> candidates,
+                                          Function<String, WatermarkDetectionResult> verifier) {
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+
+        List<WatermarkMetadataCandidate> limited = maxCandidates > 0 && candidates.size() > maxCandidates
+                ? candidates.subList(0, maxCandidates)
+                : candidates;
+        if (limited.size() < candidates.size()) {
+            log.info("Limiting metadata matching to {} of {} candidates", limited.size(), candidates.size());
+        }
+
+        ExecutorCompletionService<Extraction> completionService =
+                new ExecutorCompletionService<>(executor.getThreadPoolExecutor());
+        List<Future<Extraction>> futures = new ArrayList<>();
+        Iterator<WatermarkMetadataCandidate> pending = limited.iterator();
+        int nextIndex = 0;
+        int running = 0;
+        int window = Math.max(1, concurrency);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Extraction firstExtraction = null;
+
+        try {
+            while (running < window && pending.hasNext()) {
+                futures.add(completionService.submit(extractTask(image, pending.next(), nextIndex++)));
+                running++;
+            }
+
+            while (running > 0) {
+                long remaining = deadline - System.nanoTime();
+                Future<Extraction> done = remaining > 0 ? completionService.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (done == null) {
+                    log.warn("Metadata matching timed out after {} ms with {} calls still running", timeoutMs, running);
+                    break;
+                }
+                running--;
+
+                if (pending.hasNext()) {
+                    futures.add(completionService.submit(extractTask(image, pending.next(), nextIndex++)));
+                    running++;
+                }
+
+                Extraction extraction = getQuietly(done);
+                if (extraction == null) {
+                    continue;
+                }
+
+                WatermarkDetectionResult detection = verifier.apply(extraction.extractedWatermark);
+                if (detection != null) {
+                    log.info("Watermark confirmed using metadata ID {}, cancelling {} outstanding calls",
+                            extraction.candidate.getSourceId(), running);
+                    return new WatermarkMatchResult(extraction.candidate, extraction.response,
+                            extraction.extractedWatermark, detection);
+                }
+
+                if (firstExtraction == null || extraction.index < firstExtraction.index) {
+                    firstExtraction = extraction;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Metadata matching interrupted");
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        return firstExtraction == null ? null : new WatermarkMatchResult(firstExtraction.candidate,
+                firstExtraction.response, firstExtraction.extractedWatermark, null);
+    }
+
+    private Callable<Extraction> extractTask(ImagePayload image, WatermarkMetadataCandidate candidate, int index) {
+        return () -> {
+            try {
+                WatermarkExtractResponseDTO response = watermarkService.extractWatermark(image, candidate.getMetadata());
+                if (response != null && response.isSuccess() && response.getData() != null
+                        && response.getData().getExtractedWatermark() != null) {
+                    return new Extraction(candidate, index, response, response.getData().getExtractedWatermark());
+                }
+            } catch (Exception e) {
+                // Extraction failed with this metadata, the other candidates are still tried
+                log.debug("Extraction failed with metadata ID {}: {}", candidate.getSourceId(), e.getMessage());
+            }
+            return null;
+        };
+    }
+
+    private Extraction getQuietly(Future<Extraction> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private static class Extraction {
+        private final WatermarkMetadataCandidate candidate;
+        private final int index;
+        private final WatermarkExtractResponseDTO response;
+        private final String extractedWatermark;
+
+        private Extraction(WatermarkMetadataCandidate candidate, int index,
+                           WatermarkExtractResponseDTO response, String extractedWatermark) {
+            this.candidate = candidate;
+            this.index = index;
+            this.response = response;
+            this.extractedWatermark = extractedWatermark;
+        }
+    }
+}
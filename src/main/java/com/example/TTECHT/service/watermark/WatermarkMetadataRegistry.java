@@ -0,0 +1,185 @@
+package com.example.TTECHT.service.watermark;
+
+import com.example.TTECHT.entity.WatermarkMetadata;
+import com.example.TTECHT.repository.WatermarkMetadataRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns embedding metadata, so every distinct jsonImage is stored once in watermark_metadata and
+ * product images only reference it.
+ */
+@Component
+@Slf4j
+public class WatermarkMetadataRegistry {
+
+    private static final int BACKFILL_BATCH_SIZE = 200;
+
+    private final WatermarkMetadataRepository watermarkMetadataRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate requiresNew;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper canonicalMapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    // Metadata hash -> ID, the set of distinct metadata is small
+    private final Map<String, Long> idsByHash = new ConcurrentHashMap<>();
+    private final Map<Long, WatermarkMetadata> metadataById = new ConcurrentHashMap<>();
+
+    public WatermarkMetadataRegistry(WatermarkMetadataRepository watermarkMetadataRepository,
+                                     JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager) {
+        this.watermarkMetadataRepository = watermarkMetadataRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Get the stored metadata equal to the given JSON, storing it if it is new
+     *
+     * @param jsonImage Metadata returned by the embed call
+     * @return the shared metadata row, or null for null/empty JSON
+     */
+    public WatermarkMetadata intern(JsonNode jsonImage) {
+        if (jsonImage == null || jsonImage.isNull()) {
+            return null;
+        }
+        String hash = hash(jsonImage);
+        Long cachedId = idsByHash.get(hash);
+        if (cachedId != null) {
+            return watermarkMetadataRepository.getReferenceById(cachedId);
+        }
+
+        WatermarkMetadata metadata = watermarkMetadataRepository.findByMetadataHash(hash)
+                .orElseGet(() -> insert(hash, jsonImage));
+        idsByHash.put(hash, metadata.getMetadataId());
+        return metadata;
+    }
+
+    /**
+     * Load metadata by ID; rows never change once stored, so they are kept in memory after the first load
+     *
+     * @return the metadata found, keyed by ID
+     */
+    public Map<Long, WatermarkMetadata> findAllById(Collection<Long> metadataIds) {
+        Map<Long, WatermarkMetadata> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long metadataId : metadataIds) {
+            WatermarkMetadata metadata = metadataById.get(metadataId);
+            if (metadata != null) {
+                found.put(metadataId, metadata);
+            } else {
+                missing.add(metadataId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (WatermarkMetadata metadata : watermarkMetadataRepository.findAllById(missing)) {
+                metadataById.put(metadata.getMetadataId(), metadata);
+                found.put(metadata.getMetadataId(), metadata);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Canonical hash of the metadata JSON: object keys sorted at every level
+     */
+    public String hash(JsonNode jsonImage) {
+        try {
+            Object tree = canonicalMapper.treeToValue(jsonImage, Object.class);
+            byte[] canonical = canonicalMapper.writeValueAsBytes(tree);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to hash watermark metadata: " + e.getMessage(), e);
+        }
+    }
+
+    private WatermarkMetadata insert(String hash, JsonNode jsonImage) {
+        try {
+            // Own transaction, so losing an insert race does not roll back the caller
+            return requiresNew.execute(status -> watermarkMetadataRepository.save(WatermarkMetadata.builder()
+                    .metadataHash(hash)
+                    .jsonImage(jsonImage)
+                    .build()));
+        } catch (DataIntegrityViolationException e) {
+            return watermarkMetadataRepository.findByMetadataHash(hash)
+                    .orElseThrow(() -> new RuntimeException("Failed to store watermark metadata " + hash, e));
+        }
+    }
+
+    /**
+     * Move metadata still stored inline on product images (written before the registry existed)
+     * into watermark_metadata. A row that cannot be interned is logged and left as it is, so it is
+     * retried on the next start without holding up the rows after it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void internLegacyMetadata() {
+        try {
+            Integer legacyColumns = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.columns " +
+                    "WHERE table_name = 'product_image' AND column_name = 'json_image'",
+                    Integer.class);
+            if (legacyColumns == null || legacyColumns == 0) {
+                return;
+            }
+
+            int migrated = 0;
+            int skipped = 0;
+            long lastImageId = 0;
+            List<Map<String, Object>> rows;
+            do {
+                // Keyset on image_id, so skipped rows are not read again
+                rows = jdbcTemplate.queryForList(
+                        "SELECT image_id, CAST(json_image AS TEXT) AS json_image FROM product_image " +
+                        "WHERE json_image IS NOT NULL AND image_id > ? ORDER BY image_id LIMIT " + BACKFILL_BATCH_SIZE,
+                        lastImageId);
+                for (Map<String, Object> row : rows) {
+                    Object imageId = row.get("image_id");
+                    lastImageId = ((Number) imageId).longValue();
+                    try {
+                        WatermarkMetadata metadata = intern(objectMapper.readTree((String) row.get("json_image")));
+                        jdbcTemplate.update(
+                                "UPDATE product_image SET metadata_id = COALESCE(metadata_id, ?), json_image = NULL WHERE image_id = ?",
+                                metadata != null ? metadata.getMetadataId() : null, imageId);
+                        migrated++;
+                    } catch (Exception e) {
+                        log.warn("Skipped legacy metadata of product image {}: {}", imageId, e.getMessage());
+                        skipped++;
+                    }
+                }
+            } while (rows.size() == BACKFILL_BATCH_SIZE);
+
+            if (migrated > 0) {
+                log.info("Interned metadata of {} product images into {} distinct entries", migrated, idsByHash.size());
+            }
+            if (skipped > 0) {
+                log.warn("Left the legacy metadata of {} product images that could not be interned", skipped);
+            }
+        } catch (Exception e) {
+            log.error("Failed to intern legacy product image metadata: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.TTECHT.service.watermark;
+
+import com.example.TTECHT.entity.watermark.Watermark;
+import com.example.TTECHT.event.WatermarkChangedEvent;
+import com.example.TTECHT.repository.watermark.WatermarkRepository;
+import com.example.TTECHT.service.cluster.NodeIdentity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In-memory copy of every store watermark, so the watermark pipeline never reads the watermarks table.
+ *
+ * Loaded once the application is ready and refreshed per store from {@link WatermarkChangedEvent}s
+ * after commit. Other nodes are told over a Redis channel to refresh the same store; encoded
+ * watermark images are kept in the {@link WatermarkImageCache} and dropped along with the watermark,
+ * as are its cached detection results.
+ */
+@Component
+@Slf4j
+public class WatermarkRegistry implements MessageListener {
+
+    public static final String CHANNEL = "watermark-registry:changed";
+
+    private final WatermarkRepository watermarkRepository;
+    private final WatermarkImageCache watermarkImageCache;
+    private final WatermarkDetectionCache watermarkDetectionCache;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final NodeIdentity nodeIdentity;
+    private final Map<String, Watermark> watermarksByStore = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    public WatermarkRegistry(WatermarkRepository watermarkRepository,
+                             WatermarkImageCache watermarkImageCache,
+                             WatermarkDetectionCache watermarkDetectionCache,
+                             @Qualifier("regisTemplate") RedisTemplate<String, String> redisTemplate,
+                             NodeIdentity nodeIdentity) {
+        this.watermarkRepository = watermarkRepository;
+        this.watermarkImageCache = watermarkImageCache;
+        this.watermarkDetectionCache = watermarkDetectionCache;
+        this.redisTemplate = redisTemplate;
+        this.nodeIdentity = nodeIdentity;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        List<Watermark> watermarks = watermarkRepository.findAll();
+        watermarksByStore.clear();
+        watermarks.forEach(watermark -> watermarksByStore.put(watermark.getStoreName(), copyOf(watermark)));
+        ready = true;
+        log.info("Watermark registry loaded with {} watermarks", watermarks.size());
+    }
+
+    /**
+     * Get the watermark of a store
+     */
+    public Optional<Watermark> findByStoreName(String storeName) {
+        if (!ready) {
+            return watermarkRepository.findByStoreName(storeName).map(WatermarkRegistry::copyOf);
+        }
+        return Optional.ofNullable(watermarksByStore.get(storeName));
+    }
+
+    public boolean existsByStoreName(String storeName) {
+        return findByStoreName(storeName).isPresent();
+    }
+
+    /**
+     * Get every store watermark; the returned objects are shared and must not be modified
+     */
+    public Collection<Watermark> findAll() {
+        if (!ready) {
+            return watermarkRepository.findAll().stream().map(WatermarkRegistry::copyOf).toList();
+        }
+        return List.copyOf(watermarksByStore.values());
+    }
+
+    /**
+     * Get the encoded image of a watermark, loading it with the loader on a miss
+     */
+    public String getImage(Watermark watermark, Function<String, String> loader) {
+        return watermarkImageCache.get(watermark.getWatermarkId(), watermark.getWatermarkUrlImage(), loader);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onWatermarkChanged(WatermarkChangedEvent event) {
+        refresh(event.getWatermarkId(), event.getStoreName());
+        try {
+            redisTemplate.convertAndSend(CHANNEL, nodeIdentity.tag(event.getWatermarkId() + "|" + event.getStoreName()));
+        } catch (Exception e) {
+            // Other nodes keep their copy until they restart or see a later change of the store
+            log.warn("Failed to notify other nodes of watermark change for store {}: {}", event.getStoreName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Refresh a store changed on another node
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String payload = nodeIdentity.payloadFromOtherNode(message);
+        String[] parts = payload != null ? payload.split("\\|", 2) : new String[0];
+        if (parts.length < 2) {
+            return;
+        }
+        try {
+            refresh(Long.valueOf(parts[0]), parts[1]);
+        } catch (Exception e) {
+            log.warn("Failed to refresh watermark of store {}: {}", parts[1], e.getMessage());
+        }
+    }
+
+    private void refresh(Long watermarkId, String storeName) {
+        watermarkImageCache.invalidate(watermarkId);
+        watermarkDetectionCache.invalidate(watermarkId);
+        Optional<Watermark> watermark = watermarkRepository.findByStoreName(storeName);
+        if (watermark.isPresent()) {
+            watermarksByStore.put(storeName, copyOf(watermark.get()));
+        } else {
+            watermarksByStore.remove(storeName);
+        }
+        log.info("Watermark registry refreshed store {}", storeName);
+    }
+
+    // Detached copy, so cached watermarks are never tied to a persistence context
+    private static Watermark copyOf(Watermark watermark) {
+        return Watermark.builder()
+                .watermarkId(watermark.getWatermarkId())
+                .storeName(watermark.getStoreName())
+                .watermarkUrlImage(watermark.getWatermarkUrlImage())
+                .build();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.TTECHT.service.external;
+
+import com.example.TTECHT.config.HttpClientConfig;
+import com.example.TTECHT.dto.watermark.WatermarkEmbedResponseDTO;
+import com.example.TTECHT.service.watermark.DebugCapture;
+import com.example.TTECHT.service.watermark.ImagePayload;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Image bodies must reach the image service while they are still being written, so an upload is
+ * never held on the heap as a whole. The fake image below writes its first part and then waits
+ * until the server has received bytes; with a buffered body nothing is sent before it finishes.
+ */
+class WatermarkServiceStreamingTest {
+
+    private static final int PART_SIZE = 1024 * 1024;
+    private static final int PARTS = 64;
+
+    private HttpServer server;
+    private HttpClientConfig httpClientConfig;
+    private final CountDownLatch bodyStarted = new CountDownLatch(1);
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/images/embed", exchange -> {
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = exchange.getRequestBody()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    bytesReceived.addAndGet(read);
+                    bodyStarted.countDown();
+                }
+            }
+            byte[] response = "{\"success\":true,\"message\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        httpClientConfig.closeClients();
+    }
+
+    @Test
+    void embedStreamsTheImageWhileItIsWritten() {
+        httpClientConfig = new HttpClientConfig(new MockEnvironment(), new SimpleMeterRegistry());
+        RestTemplate restTemplate = httpClientConfig.imageServiceRestTemplate(new RestTemplateBuilder());
+        WatermarkService watermarkService = new WatermarkService(restTemplate, restTemplate, mock(DebugCapture.class));
+        ReflectionTestUtils.setField(watermarkService, "imageServiceUrl",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/api/images");
+
+        WatermarkEmbedResponseDTO response = watermarkService.embedWatermark(new LargeImage(), "watermark", 0.6);
+
+        assertTrue(response.isSuccess());
+        assertTrue(bytesReceived.get() > (long) PART_SIZE * PARTS);
+    }
+
+    /**
+     * 64 MB of base64 produced part by part, never held in memory as a whole
+     */
+    private class LargeImage implements ImagePayload {
+
+        @Override
+        public void writeBase64To(OutputStream out) throws IOException {
+            byte[] part = new byte[PART_SIZE];
+            Arrays.fill(part, (byte) 'A');
+            out.write(part);
+            try {
+                assertTrue(bodyStarted.await(10, TimeUnit.SECONDS),
+                        "The image service received nothing while the image was being written");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            for (int i = 1; i < PARTS; i++) {
+                out.write(part);
+            }
+        }
+
+        @Override
+        public InputStream openStream() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String asBase64() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+    }
+}
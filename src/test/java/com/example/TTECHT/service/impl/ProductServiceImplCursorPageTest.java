@@ -0,0 +1,188 @@
+package com.example.TTECHT.service.impl;
+
+import com.example.TTECHT.controller.ProductController;
+import com.example.TTECHT.dto.ProductDTO;
+import com.example.TTECHT.dto.repsonse.CursorPageResponse;
+import com.example.TTECHT.entity.Category;
+import com.example.TTECHT.entity.Product;
+import com.example.TTECHT.entity.user.User;
+import com.example.TTECHT.exception.GlobalExceptionHandler;
+import com.example.TTECHT.repository.ProductColorRepository;
+import com.example.TTECHT.repository.ProductImageRepository;
+import com.example.TTECHT.repository.ProductRepository;
+import com.example.TTECHT.repository.ProductSizeRepository;
+import com.example.TTECHT.service.ProductImageIngestionService;
+import com.example.TTECHT.service.ProductImportService;
+import com.example.TTECHT.service.external.WatermarkService;
+import com.example.TTECHT.service.search.ProductListingCursor;
+import com.example.TTECHT.service.search.ProductListingCursor.Order;
+import com.example.TTECHT.service.watermark.ImageUploadSpooler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Keyset pages of the product listing: the next cursor must lead to the query for the rows strictly
+ * after the last product returned, in the order it was made for, and bad cursors are rejected.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ProductServiceImplCursorPageTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 5, 17, 9, 30, 15, 123456000);
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductColorRepository productColorRepository;
+
+    @Mock
+    private ProductSizeRepository productSizeRepository;
+
+    @Mock
+    private ProductImageRepository productImageRepository;
+
+    @InjectMocks
+    private ProductServiceImpl productService;
+
+    @ParameterizedTest
+    @EnumSource(Order.class)
+    void cursorRoundTripsForEveryOrder(Order order) {
+        Product last = product(42L, 7, new BigDecimal("19.90"), CREATED_AT);
+
+        ProductListingCursor cursor = ProductListingCursor.decode(order, ProductListingCursor.encode(order, last));
+
+        assertEquals(order, cursor.getOrder());
+        assertEquals(42L, cursor.getProductId());
+        switch (order) {
+            case NEWEST -> assertEquals(CREATED_AT, cursor.getCreatedAt());
+            case BEST_SELLING -> assertEquals(7, cursor.getSoldQuantity());
+            case PRICE_ASC, PRICE_DESC -> assertEquals(new BigDecimal("19.90"), cursor.getPrice());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Order.class)
+    void nextCursorContinuesAfterTheLastProductOfThePage(Order order) {
+        // Every product has the same sort value, so only the ID tells the pages apart
+        List<Product> firstPage = List.of(
+                product(30L, 5, BigDecimal.TEN, CREATED_AT),
+                product(20L, 5, BigDecimal.TEN, CREATED_AT),
+                product(10L, 5, BigDecimal.TEN, CREATED_AT));
+        givenFirstPage(order, firstPage);
+
+        CursorPageResponse<ProductDTO> page = productService.getProductsPage(null, null, null, order, null, 2, false);
+
+        assertTrue(page.isHasMore());
+        assertEquals(List.of(30L, 20L), page.getItems().stream().map(ProductDTO::getProductId).toList());
+
+        productService.getProductsPage(null, null, null, order, page.getNextCursor(), 2, false);
+
+        Limit fetchLimit = Limit.of(3);
+        switch (order) {
+            case NEWEST -> verify(productRepository).findNewestPageAfter(isNull(), isNull(), isNull(),
+                    eq(CREATED_AT), eq(20L), eq(fetchLimit));
+            case BEST_SELLING -> verify(productRepository).findBestSellingPageAfter(isNull(), isNull(), isNull(),
+                    eq(5), eq(20L), eq(fetchLimit));
+            case PRICE_ASC -> verify(productRepository).findCheapestPageAfter(isNull(), isNull(), isNull(),
+                    eq(BigDecimal.TEN), eq(20L), eq(fetchLimit));
+            case PRICE_DESC -> verify(productRepository).findPriciestPageAfter(isNull(), isNull(), isNull(),
+                    eq(BigDecimal.TEN), eq(20L), eq(fetchLimit));
+        }
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        givenFirstPage(Order.NEWEST, List.of(product(10L, 5, BigDecimal.TEN, CREATED_AT)));
+
+        CursorPageResponse<ProductDTO> page = productService.getProductsPage(null, null, null, Order.NEWEST, null, 2, false);
+
+        assertFalse(page.isHasMore());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void cursorOfAnotherOrderIsRejected() {
+        String cursor = ProductListingCursor.encode(Order.PRICE_ASC, product(10L, 5, BigDecimal.TEN, CREATED_AT));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> productService.getProductsPage(null, null, null, Order.PRICE_DESC, cursor, 2, false));
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void malformedCursorIsABadRequest() throws Exception {
+        ProductController controller = new ProductController(productService, mock(WatermarkService.class),
+                mock(ProductImageIngestionService.class), mock(ImageUploadSpooler.class),
+                mock(ProductImportService.class), new ObjectMapper(),
+                mock(ThreadPoolTaskExecutor.class));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        mockMvc.perform(get("/api/products/scroll").param("sort", "newest").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid cursor"));
+        verifyNoInteractions(productRepository);
+    }
+
+    private void givenFirstPage(Order order, List<Product> products) {
+        List<Product> rows = new ArrayList<>(products);
+        switch (order) {
+            case NEWEST -> when(productRepository.findNewestPage(any(), any(), any(), any())).thenReturn(rows);
+            case BEST_SELLING -> when(productRepository.findBestSellingPage(any(), any(), any(), any())).thenReturn(rows);
+            case PRICE_ASC -> when(productRepository.findCheapestPage(any(), any(), any(), any())).thenReturn(rows);
+            case PRICE_DESC -> when(productRepository.findPriciestPage(any(), any(), any(), any())).thenReturn(rows);
+        }
+    }
+
+    private static Product product(Long id, int soldQuantity, BigDecimal price, LocalDateTime createdAt) {
+        Category category = new Category();
+        category.setCategoryId(1L);
+        category.setName("Category");
+        Product product = new Product();
+        product.setProductId(id);
+        product.setName("product " + id);
+        product.setStoreName("store");
+        product.setCategory(category);
+        product.setSeller(User.builder().id(1L).username("seller").build());
+        product.setPrice(price);
+        product.setStockQuantity(1);
+        product.setSoldQuantity(soldQuantity);
+        product.setCreatedAt(createdAt);
+        return product;
+    }
+}
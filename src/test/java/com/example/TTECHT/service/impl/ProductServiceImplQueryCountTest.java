@@ -0,0 +1,222 @@
+package com.example.TTECHT.service.impl;
+
+import com.example.TTECHT.dto.ProductDTO;
+import com.example.TTECHT.entity.Category;
+import com.example.TTECHT.entity.Product;
+import com.example.TTECHT.entity.user.User;
+import com.example.TTECHT.repository.ProductColorRepository;
+import com.example.TTECHT.repository.ProductImageRepository;
+import com.example.TTECHT.repository.ProductRepository;
+import com.example.TTECHT.repository.ProductSizeRepository;
+import com.example.TTECHT.service.cache.ProductDetailCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Guards the product listings against N+1 queries: however many products are listed, each listing
+ * runs one product query (fetching category and seller) plus one query each for colors, sizes and images.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class ProductServiceImplQueryCountTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ProductColorRepository productColorRepository;
+
+    @Mock
+    private ProductSizeRepository productSizeRepository;
+
+    @Mock
+    private ProductImageRepository productImageRepository;
+
+    @Mock
+    private ProductDetailCache productDetailCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private ProductServiceImpl productService;
+
+    private List<Product> products;
+
+    @BeforeEach
+    void setUp() {
+        products = new ArrayList<>();
+        ReflectionTestUtils.setField(productService, "exportChunkSize", 500);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 50})
+    void listingsRunConstantQueries(int productCount) {
+        givenProducts(productCount);
+
+        assertListing(productCount, () -> productService.getProductsByCategory(1L));
+        assertListing(productCount, () -> productService.searchProductsByName("product"));
+        assertListing(productCount, () -> productService.getProductsByPriceRange(BigDecimal.ONE, BigDecimal.TEN));
+        assertListing(productCount, () -> productService.getProductsByStore("store"));
+        assertListing(productCount, () -> productService.getBestSellerProducts(productCount));
+        assertListing(productCount, () -> productService.getBestSellerProductsByCategory(1L, productCount));
+        assertListing(productCount, () -> productService.getNewArrivalProducts(productCount));
+        assertListing(productCount, () -> productService.getNewArrivalProductsByCategory(1L, productCount));
+        assertListing(productCount, () -> {
+            List<ProductDTO> exported = new ArrayList<>();
+            productService.exportAllProducts(exported::addAll);
+            return exported;
+        });
+        assertListing(productCount, () -> productService.getProductsByUserId(1L));
+        assertListing(productCount, () -> productService.getAllProducts(PageRequest.of(0, 50)).getContent());
+        assertListing(productCount, () -> productService.searchProducts("product", 1L, "store", PageRequest.of(0, 50), false).getContent());
+    }
+
+    @Test
+    void getProductByIdRunsConstantQueries() {
+        givenProducts(1);
+        when(productDetailCache.get(anyLong(), any())).thenAnswer(invocation ->
+                invocation.<Function<Long, ProductDTO>>getArgument(1).apply(invocation.getArgument(0)));
+
+        ProductDTO product = productService.getProductById(1L);
+
+        assertNotNull(product);
+        assertEquals(List.of("Red", "Blue"), product.getColors());
+        verify(productRepository).findWithCategoryAndSellerById(1L);
+        verifyChildQueries();
+    }
+
+    @Test
+    void listingQueriesFetchCategoryAndSeller() throws NoSuchMethodException {
+        List<Method> listingQueries = List.of(
+                ProductRepository.class.getMethod("findAll"),
+                ProductRepository.class.getMethod("findAll", Pageable.class),
+                ProductRepository.class.getMethod("findWithCategoryAndSellerById", Long.class),
+                ProductRepository.class.getMethod("findWithCategoryAndSellerByIdIn", Collection.class),
+                ProductRepository.class.getMethod("findChunkAfter", Long.class, Pageable.class),
+                ProductRepository.class.getMethod("findByCategoryCategoryId", Long.class),
+                ProductRepository.class.getMethod("findByNameContaining", String.class),
+                ProductRepository.class.getMethod("findByFilters", String.class, Long.class, String.class, Pageable.class),
+                ProductRepository.class.getMethod("findByPriceBetween", BigDecimal.class, BigDecimal.class),
+                ProductRepository.class.getMethod("findByStoreName", String.class),
+                ProductRepository.class.getMethod("findBySellerIdOrderByCreatedAtDesc", Long.class),
+                ProductRepository.class.getMethod("findBestSellerProducts", Pageable.class),
+                ProductRepository.class.getMethod("findBestSellerProductsByCategory", Long.class, Pageable.class),
+                ProductRepository.class.getMethod("findNewArrivalProducts", Pageable.class),
+                ProductRepository.class.getMethod("findNewArrivalProductsByCategory", Long.class, Pageable.class));
+
+        for (Method query : listingQueries) {
+            EntityGraph graph = query.getAnnotation(EntityGraph.class);
+            assertNotNull(graph, query.getName() + " must fetch category and seller");
+            assertTrue(Arrays.asList(graph.attributePaths()).containsAll(List.of("category", "seller")),
+                    query.getName() + " must fetch category and seller");
+        }
+    }
+
+    private void assertListing(int productCount, Supplier<List<ProductDTO>> listing) {
+        clearInvocations(productRepository, productColorRepository, productSizeRepository, productImageRepository);
+
+        List<ProductDTO> result = listing.get();
+
+        assertEquals(productCount, result.size());
+        assertEquals(List.of("Red", "Blue"), result.get(productCount - 1).getColors());
+        assertEquals(List.of("M"), result.get(productCount - 1).getSizes());
+        verifyChildQueries();
+    }
+
+    private void verifyChildQueries() {
+        verify(productColorRepository, times(1)).findColorRowsByProductIds(any());
+        verify(productSizeRepository, times(1)).findSizeRowsByProductIds(any());
+        verify(productImageRepository, times(1)).findImageUrlRowsByProductIds(any());
+        verifyNoMoreInteractions(productColorRepository, productSizeRepository, productImageRepository);
+    }
+
+    private void givenProducts(int productCount) {
+        Category category = new Category();
+        category.setCategoryId(1L);
+        category.setName("Category");
+        User seller = User.builder().id(1L).username("seller").firstName("Seller").lastName("One").build();
+
+        List<Object[]> colorRows = new ArrayList<>();
+        List<Object[]> sizeRows = new ArrayList<>();
+        List<Object[]> imageRows = new ArrayList<>();
+        for (long id = 1; id <= productCount; id++) {
+            Product product = new Product();
+            product.setProductId(id);
+            product.setName("product " + id);
+            product.setStoreName("store");
+            product.setCategory(category);
+            product.setSeller(seller);
+            product.setPrice(BigDecimal.ONE);
+            product.setStockQuantity(1);
+            product.setSoldQuantity((int) id);
+            product.setCreatedAt(LocalDateTime.now());
+            products.add(product);
+            colorRows.add(new Object[]{id, "Red"});
+            colorRows.add(new Object[]{id, "Blue"});
+            sizeRows.add(new Object[]{id, "M"});
+            imageRows.add(new Object[]{id, "https://images.example.com/" + id + ".png"});
+        }
+
+        when(productRepository.findAll()).thenReturn(products);
+        when(productRepository.findAll(any(Pageable.class))).thenReturn(new PageImpl<>(products));
+        when(productRepository.findWithCategoryAndSellerById(anyLong())).thenReturn(Optional.of(products.get(0)));
+        when(productRepository.findChunkAfter(eq(0L), any(Pageable.class))).thenReturn(products);
+        when(productRepository.findByCategoryCategoryId(anyLong())).thenReturn(products);
+        when(productRepository.findByNameContaining(anyString())).thenReturn(products);
+        when(productRepository.findByFilters(any(), any(), any(), any(Pageable.class))).thenReturn(new PageImpl<>(products));
+        when(productRepository.searchRankedIds(anyString(), anyString(), any(), any(), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(products.stream().map(Product::getProductId).toList(), PageRequest.of(0, 50), false));
+        when(productRepository.findWithCategoryAndSellerByIdIn(any())).thenReturn(products);
+        when(productRepository.findByPriceBetween(any(), any())).thenReturn(products);
+        when(productRepository.findByStoreName(anyString())).thenReturn(products);
+        when(productRepository.findBySellerIdOrderByCreatedAtDesc(anyLong())).thenReturn(products);
+        when(productRepository.findBestSellerProducts(any(Pageable.class))).thenReturn(products);
+        when(productRepository.findBestSellerProductsByCategory(anyLong(), any(Pageable.class))).thenReturn(products);
+        when(productRepository.findNewArrivalProducts(any(Pageable.class))).thenReturn(products);
+        when(productRepository.findNewArrivalProductsByCategory(anyLong(), any(Pageable.class))).thenReturn(products);
+
+        when(productColorRepository.findColorRowsByProductIds(any())).thenReturn(colorRows);
+        when(productSizeRepository.findSizeRowsByProductIds(any())).thenReturn(sizeRows);
+        when(productImageRepository.findImageUrlRowsByProductIds(any())).thenReturn(imageRows);
+    }
+}